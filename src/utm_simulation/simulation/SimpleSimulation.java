@@ -2,38 +2,262 @@ package utm_simulation.simulation;
 
 
 import utm_simulation.simulation.automata.TagSystem;
+import utm_simulation.simulation.automata.TapeRenderer;
 import utm_simulation.simulation.automata.TuringMachine;
+import utm_simulation.simulation.encoder.EncodedProgram;
 import utm_simulation.simulation.encoder.Encoder;
+import utm_simulation.simulation.encoder.CostEstimate;
+import utm_simulation.simulation.encoder.Utm55Encoding;
+import utm_simulation.simulation.encoder.Utm55Predictor;
+import utm_simulation.simulation.encoder.UtmEncoding;
+import utm_simulation.simulation.encoder.Utms;
+import utm_simulation.simulation.monitor.RunRecording;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Runs simple simulation of utm(5,5) where it prints the content of the tape
  * for each time stamp.
  *
+ * <p>Usage: {@code SimpleSimulation <utm.xml> <tagsystem.xml> [options]} where options are</p>
+ * <ul>
+ *     <li>{@code --every N} prints every N-th configuration, 1 by default</li>
+ *     <li>{@code --state-change} prints a configuration only when the state changed since the last one printed</li>
+ *     <li>{@code --final} prints only the final configuration</li>
+ *     <li>{@code --window K} prints only K cells on each side of the head</li>
+ *     <li>{@code --compress R} prints runs of at least R equal cells as symbol^length</li>
+ *     <li>{@code --predict} prints the final configuration and the number of steps predicted by
+ *     {@link Utm55Predictor} without running the machine, or only the cost predicted by its {@link UtmEncoding} for
+ *     another machine registered in {@link Utms} with the given config</li>
+ *     <li>{@code --tag-steps N} stops the prediction after N tag steps</li>
+ * </ul>
+ *
+ * <p>Given {@value #AUTO} instead of utm.xml, the universal Turing machine registered in {@link Utms} predicted to
+ * simulate the tag system the cheapest is run, and its predicted cost is printed next to the actual one. Runs which
+ * are not predicted to halt are not started. With {@code --predict} the cost predicted by every machine is
+ * printed.</p>
  */
 public class SimpleSimulation {
 
+    public enum OutputMode {EVERY, STATE_CHANGE, FINAL}
+
+    /** First argument choosing the universal Turing machine from its predicted cost. */
+    public static final String AUTO = "auto";
+
+    private static final int BUFFER_SIZE = 1 << 16;
 
+    /** Configurations printed further apart than this many steps are flushed right away. */
+    private static final long FLUSH_DISTANCE = 1024;
+    /** Mask of the steps between two flight recorder samples. */
+    private static final long SAMPLE_MASK = (1 << 16) - 1;
 
     public static void main(String[] args){
-        TuringMachine machine = TuringMachine.buildMachine(args[0]);
-        TagSystem tagsystem = TagSystem.buildMachine(args[1]);
+        OutputMode mode = OutputMode.EVERY;
+        long interval = 1;
+        int window = TapeRenderer.WHOLE_TAPE;
+        int minRun = 0;
+        boolean predict = false;
+        long tagSteps = Long.MAX_VALUE;
 
-        String input = Encoder.utm5_5_encode(tagsystem);
+        for(int i = 2; i < args.length; i++){
+            switch(args[i]){
+                case "--every":
+                    mode = OutputMode.EVERY;
+                    interval = Long.parseLong(args[++i]);break;
+                case "--state-change":
+                    mode = OutputMode.STATE_CHANGE;break;
+                case "--final":
+                    mode = OutputMode.FINAL;break;
+                case "--window":
+                    window = Integer.parseInt(args[++i]);break;
+                case "--compress":
+                    minRun = Integer.parseInt(args[++i]);break;
+                case "--predict":
+                    predict = true;break;
+                case "--tag-steps":
+                    tagSteps = Long.parseLong(args[++i]);break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(-1);
+            }
+        }
+        if(interval <= 0){
+            System.err.println("Invalid interval: " + interval);
+            System.exit(-1);
+        }
 
-        int headIndex = -1;
+        TagSystem tagsystem = TagSystem.buildMachine(args[1]);
+        if(args[0].equals(AUTO)){
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+            try{
+                select(tagsystem, new TapeRenderer(window, minRun), mode, interval, predict, tagSteps, out);
+                out.flush();
+            }catch(IllegalArgumentException e){
+                System.err.println(e.getMessage());
+                System.exit(-1);
+            }catch(IOException e){
+                System.err.println("Failed to write the simulation: " + e.getMessage());
+                System.exit(-1);
+            }
+            return;
+        }
+        TuringMachine machine = TuringMachine.buildMachine(args[0]);
 
-        for(int i = input.length() - 1; i >= 0 && headIndex < 0; i--){
-            if(input.startsWith("bbb", i)){
-                headIndex = i + 3;
+        if(predict){
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+            try{
+                UtmEncoding encoding = Utms.forConfig(args[0]);
+                if(encoding.getName().equals(Utm55Encoding.NAME)){
+                    predict(new Utm55Predictor(tagsystem), new TapeRenderer(window, minRun), tagSteps, out);
+                }else{
+                    CostEstimate estimate = encoding.estimate(tagsystem, tagsystem.getInput_tape().toString(),
+                            tagSteps);
+                    out.write(encoding.getName() + " " + estimate + "\n");
+                }
+                out.flush();
+            }catch(IllegalArgumentException e){
+                System.err.println(e.getMessage());
+                System.exit(-1);
+            }catch(IOException e){
+                System.err.println("Failed to write the prediction: " + e.getMessage());
+                System.exit(-1);
             }
+            return;
         }
 
-        machine.reset(input, headIndex);
+        EncodedProgram program = Encoder.utm5_5_program(tagsystem);
+        machine.reset(program.encode(tagsystem.getInput_tape().toString()), program.getHeadIndex());
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+        try{
+            run(machine, new TapeRenderer(window, minRun), mode, interval, out);
+            out.flush();
+        }catch(IOException e){
+            System.err.println("Failed to write the simulation: " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Runs given machine until it halts, writing its configurations selected by the mode
+     * @param machine the machine to run
+     * @param renderer renders the configurations
+     * @param mode selects the configurations to write
+     * @param interval number of steps between two configurations written in {@link OutputMode#EVERY} mode
+     * @param out receives the configurations, one per line
+     * @throws IOException if the configurations cannot be written
+     */
+    public static void run(TuringMachine machine, TapeRenderer renderer, OutputMode mode, long interval, Writer out) throws IOException {
+        RunRecording recording = RunRecording.isEnabled()
+                ? new RunRecording(machine.compile(), "simple", machine.getInput_tape().length()) : null;
+        String outcome = RunRecording.STOPPED;
+        try{
+            run(machine, renderer, mode, interval, out, recording);
+            outcome = RunRecording.HALTED;
+        }catch(UnsupportedOperationException e){
+            outcome = RunRecording.UNDEFINED;
+            throw e;
+        }finally{
+            if(recording != null)
+                recording.end(machine.getStepCount(), outcome);
+        }
+    }
+
+    /**
+     * Predicts the run of utm(5,5) on a tag system and writes the predicted configuration it ends in
+     * @param predictor the predictor of the run
+     * @param renderer renders the configuration
+     * @param maxTagSteps maximum number of tag steps to predict
+     * @param out receives the configuration followed by the number of steps
+     * @throws IOException if the prediction cannot be written
+     */
+    public static void predict(Utm55Predictor predictor, TapeRenderer renderer, long maxTagSteps, Writer out)
+            throws IOException {
+        predictor.run(maxTagSteps);
+        renderer.render(predictor.getTape(), predictor.getState(), out);
+        out.write('\n');
+        out.write(predictor.getOutcome() + " after " + predictor.getSteps() + " steps and "
+                + predictor.getTagSteps() + " tag steps\n");
+        if(predictor.getDivergence() >= 0)
+            out.write("the word of the machine differs from the tag system after tag step "
+                    + predictor.getDivergence() + "\n");
+    }
+
+    /**
+     * Runs the universal Turing machine predicted to simulate the tag system on its current tape the cheapest, and
+     * writes its predicted cost next to the actual one
+     * @param tagsystem the tag system to simulate
+     * @param renderer renders the configurations
+     * @param mode selects the configurations to write
+     * @param interval number of steps between two configurations written in {@link OutputMode#EVERY} mode
+     * @param predictOnly whether to write the cost predicted by every machine instead of running one
+     * @param maxTagSteps maximum number of tag steps to predict
+     * @param out receives the configurations and the costs
+     * @throws IOException if the simulation cannot be written
+     * @throws IllegalArgumentException if no registered machine supports the tag system
+     */
+    public static void select(TagSystem tagsystem, TapeRenderer renderer, OutputMode mode, long interval,
+                              boolean predictOnly, long maxTagSteps, Writer out) throws IOException {
+        String input = tagsystem.getInput_tape().toString();
+        if(predictOnly){
+            for(Utms.Choice choice : Utms.estimate(tagsystem, input, maxTagSteps))
+                out.write(choice + "\n");
+            out.write("selected " + Utms.select(tagsystem, input, maxTagSteps).getEncoding().getName() + "\n");
+            return;
+        }
+
+        Utms.Choice choice = Utms.select(tagsystem, input, maxTagSteps);
+        UtmEncoding encoding = choice.getEncoding();
+        CostEstimate estimate = choice.getEstimate();
+        if(estimate.getOutcome() != CostEstimate.Outcome.HALTS){
+            out.write(encoding.getName() + " predicted: " + estimate + ", not run\n");
+            return;
+        }
+        TuringMachine machine = TuringMachine.buildMachine(encoding.getConfig());
+        machine.reset(encoding.encode(tagsystem, input), encoding.getHeadIndex(tagsystem));
+        run(machine, renderer, mode, interval, out);
+        out.write(encoding.getName() + " predicted: " + estimate + "\n");
+        out.write(encoding.getName() + " actual: halts after " + machine.getStepCount() + " steps on "
+                + machine.getInput_tape().length() + " cells\n");
+    }
+
+    private static void run(TuringMachine machine, TapeRenderer renderer, OutputMode mode, long interval, Writer out,
+                            RunRecording recording) throws IOException {
+        int printedState = Integer.MIN_VALUE;
+        long printedStep = 0;
+        long step = 0;
 
         do {
-            System.out.println(machine.toString());
+            boolean print;
+            switch(mode){
+                case EVERY:
+                    print = step % interval == 0;break;
+                case STATE_CHANGE:
+                    print = machine.getCurrentState() != printedState;break;
+                default:
+                    print = false;
+            }
+            if(print){
+                renderer.render(machine.getInput_tape(), machine.getCurrentState(), out);
+                out.write('\n');
+                if(step - printedStep > FLUSH_DISTANCE)
+                    out.flush();
+                printedState = machine.getCurrentState();
+                printedStep = step;
+            }
             machine.execute();
+            step++;
+            if(recording != null && (step & SAMPLE_MASK) == 0)
+                recording.sample(step, machine.getInput_tape().length(), machine.getInput_tape().getFootprint());
         }while(machine.getCurrentState() != -1);
+
+        if(mode == OutputMode.FINAL){
+            renderer.render(machine.getInput_tape(), machine.getCurrentState(), out);
+            out.write('\n');
+        }
     }
 
-}
\ No newline at end of file
+}
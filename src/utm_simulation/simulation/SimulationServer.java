@@ -0,0 +1,30 @@
+package utm_simulation.simulation;
+
+
+import utm_simulation.simulation.server.SimulationService;
+
+import java.io.IOException;
+
+/**
+ * Runs the simulator as a local service, accepting jobs from clients connecting to a loopback socket.
+ * See {@link SimulationService} for the protocol.
+ *
+ */
+public class SimulationServer {
+
+
+
+    public static void main(String[] args){
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SimulationService.DEFAULT_PORT;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        try(SimulationService service = new SimulationService(port, workers)){
+            System.out.println("Listening on port " + service.getPort());
+            service.serve();
+        }catch(IOException e){
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+}
@@ -1,5 +1,12 @@
 package utm_simulation.simulation.automata;
 
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.automata.engine.Engine;
+import utm_simulation.simulation.automata.engine.Engines;
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.MachineFormatException;
+import utm_simulation.simulation.monitor.StepObserver;
+
 import java.util.Arrays;
 
 public abstract class Machine{
@@ -30,6 +37,8 @@ public abstract class Machine{
 
     private final char[] symbols;
     private Tape input_tape;
+    private long stepCount;
+    private StepObserver observer;
 
     /**
      * Creates a machine with given information
@@ -69,10 +78,97 @@ public abstract class Machine{
      */
     public void reset(String input){
         setInput_tape(new Tape(getInput_tape().getBLANK(), input));
+        stepCount = 0;
     }
 
     public void reset(String input, int headIndex){
         setInput_tape(new Tape(getInput_tape().getBLANK(), headIndex, input));
+        stepCount = 0;
+    }
+
+    /**
+     * Resets the machine with a word of symbol indices, such as one read from an
+     * {@link utm_simulation.simulation.compiled.InputFile}, without building a String of it
+     * @param word new input given as indices into {@link #getSymbols()}
+     * @param headIndex initial position of the head
+     */
+    public void reset(byte[] word, int headIndex){
+        setInput_tape(new Tape(getInput_tape().getBLANK(), symbols, headIndex, word));
+        stepCount = 0;
+    }
+
+    /**
+     * Returns the number of steps executed since the machine was created or reset, including the halting step
+     * @return the number of steps executed
+     */
+    public long getStepCount(){
+        return stepCount;
+    }
+
+    /**
+     * Sets the observer notified after every step, on the thread executing the machine.
+     * Use a {@link utm_simulation.simulation.monitor.StepRing} to observe the machine from other threads.
+     * @param observer the observer, or null to stop observing
+     */
+    public void setObserver(StepObserver observer){
+        this.observer = observer;
+    }
+
+    /**
+     * Counts a step and notifies the observer. Called by the subclasses after every step.
+     * @param state state of the machine after the step
+     * @param read symbol read by the step
+     * @param written symbol written by the step
+     * @param move movement of the head
+     */
+    protected void stepped(int state, char read, char written, int move){
+        stepCount++;
+        if(observer != null)
+            observer.onStep(stepCount, state, read, written, move);
+    }
+
+    /**
+     * Uncounts the last step, after a subclass reverted it. Observers are not notified.
+     */
+    protected void unstepped(){
+        stepCount--;
+    }
+
+    /**
+     * Returns the canonical configuration of the machine, as reported by {@link Engine#inspect()}
+     * @return the canonical configuration of the machine
+     */
+    public abstract Configuration getConfiguration();
+
+    /**
+     * Compiles the machine with its current tape as the input
+     * @return the compiled machine
+     * @throws MachineFormatException if the machine is non-deterministic or cannot be compiled
+     */
+    public abstract CompiledMachine compile() throws MachineFormatException;
+
+    /**
+     * Creates an engine of given name, starting from the current configuration of this machine.
+     * The machine itself is not modified by running the engine.
+     * @param name name of the engine registered in {@link Engines}
+     * @return a new engine
+     * @throws MachineFormatException if the machine cannot be compiled
+     * @throws IllegalArgumentException if no engine of that name supports this machine
+     */
+    public Engine createEngine(String name) throws MachineFormatException{
+        Engine engine = Engines.create(name, compile());
+        engine.restore(getConfiguration(), 0);
+        return engine;
+    }
+
+    /**
+     * Creates the engine selected by the {@value Engines#ENGINE_PROPERTY} system property,
+     * starting from the current configuration of this machine.
+     * @return a new engine
+     * @throws MachineFormatException if the machine cannot be compiled
+     */
+    public Engine createEngine() throws MachineFormatException{
+        return createEngine(Engines.defaultName());
     }
 
     /**
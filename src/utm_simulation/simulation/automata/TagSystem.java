@@ -1,5 +1,12 @@
 package utm_simulation.simulation.automata;
 
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+import utm_simulation.simulation.compiled.InputFile;
+import utm_simulation.simulation.compiled.MachineCompiler;
+import utm_simulation.simulation.compiled.MachineFormatException;
+import utm_simulation.simulation.monitor.PhaseEvent;
+
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.XMLEvent;
 import javax.xml.stream.events.StartElement;
@@ -9,6 +16,7 @@ import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamException;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -124,6 +132,22 @@ public class TagSystem extends Machine{
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getConfiguration(){
+        return Configuration.tag(isHalted(), getInput_tape().toString().substring(getInput_tape().headIndex()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompiledTagSystem compile() throws MachineFormatException{
+        return MachineCompiler.compile(this);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -163,6 +187,7 @@ public class TagSystem extends Machine{
     }
 
     protected void execute(TagSystemTransition t){
+        char read = getInput_tape().read();
         switch (t.getType()) {
             case APPEND:
                 getInput_tape().append(t.getAppend());
@@ -172,9 +197,12 @@ public class TagSystem extends Machine{
                     getInput_tape().shift(1);
                     delete--;
                 }
+                getInput_tape().trimFront();
+                stepped(0, read, getInput_tape().getBLANK(), t.getAppend().length());
                 break;
             case HALT:
                 halt();
+                stepped(-1, read, getInput_tape().getBLANK(), 0);
                 break;
             default:
                 System.err.println("Fatal error when generating this tagsystem");
@@ -191,6 +219,15 @@ public class TagSystem extends Machine{
         halted = false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset(byte[] word, int headIndex){
+        super.reset(word, headIndex);
+        halted = false;
+    }
+
     /**
      * Method used to generate a TagSystem instance with given path to config file.
      * This method is the only way to generate TagSystem instance in this library.
@@ -199,11 +236,46 @@ public class TagSystem extends Machine{
      * @return the TagSystem instance defined by given config file.
      */
     public static TagSystem buildMachine(String config){
+        return buildMachine(config, true);
+    }
+
+    /**
+     * Generates a TagSystem instance with given path to config file, optionally leaving out the word of an
+     * {@link InputFile} so that it can be streamed elsewhere, such as into a compiled tag system.
+     *
+     * @param config path to the config xml file.
+     * @param readInputFile whether the word of an input file referred to by the config file is loaded
+     * @return the TagSystem instance defined by given config file, with an empty word if the input file is left out.
+     */
+    public static TagSystem buildMachine(String config, boolean readInputFile){
+        try{
+            return parseMachine(config, readInputFile);
+        }catch(MachineFormatException e){
+            System.err.println(e.getMessage());
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Generates a TagSystem instance with given path to config file like {@link #buildMachine(String, boolean)},
+     * but reports a malformed config by throwing instead of terminating the process, for callers which must survive
+     * bad configs, such as a server.
+     *
+     * @param config path to the config xml file.
+     * @param readInputFile whether the word of an input file referred to by the config file is loaded
+     * @return the TagSystem instance defined by given config file, with an empty word if the input file is left out.
+     * @throws MachineFormatException if the config file is missing or does not define a valid tag system
+     */
+    public static TagSystem parseMachine(String config, boolean readInputFile) throws MachineFormatException {
+        PhaseEvent phase = new PhaseEvent();
+        phase.begin();
 
         //Declaring variables to parse
         char[] symbols = null;
         LinkedList<TagSystemTransition> transitions = new LinkedList<>();
         String input = "";
+        InputFile inputFile = null;
         char blank = (char) -1;
         int deletionNumber = 2;
 
@@ -213,8 +285,7 @@ public class TagSystem extends Machine{
         try {
             in = new FileInputStream(config);
         } catch (FileNotFoundException e) {
-            System.err.println("Given config file is not found.");
-            System.exit(-1);
+            throw new MachineFormatException("Given config file is not found.");
         }
         Iterator<Attribute> attributes;
         Attribute attribute;
@@ -232,16 +303,14 @@ public class TagSystem extends Machine{
                             if(attributes.hasNext()){
                                 attribute = attributes.next();
                                 if(attribute.getName().toString().equals(TYPE) && reader.nextEvent().asCharacters().getData().equals("non-universal")) {
-                                    System.err.println("Invalid tag for Tagsystem simulation");
-                                    System.exit(-1);
+                                    throw new MachineFormatException("Invalid tag for Tagsystem simulation");
                                 }
                             }break;
 
                         case CLASS: //check whether the xml is valid TagSystem configuration.
                             event = reader.nextEvent();
                             if(!event.asCharacters().getData().equals("TagSystem")){
-                                System.err.println("Invalid class value for tagsystem simulation");
-                                System.exit(-1);
+                                throw new MachineFormatException("Invalid class value for tagsystem simulation");
                             }break;
 
                         case DELETIONNUMBER:
@@ -271,8 +340,7 @@ public class TagSystem extends Machine{
                                 else if(attribute.getName().toString().equals(SYMBOL))
                                     symbol = attribute.getValue().charAt(0);
                                 else{
-                                    System.err.printf("Unexpected tag in transition definition: %s\n", attribute.getName().toString());
-                                    System.exit(-1);
+                                    throw new MachineFormatException(String.format("Unexpected tag in transition definition: %s", attribute.getName().toString()));
                                 }
                             }
                             if(type.equals(APPEND)){
@@ -283,11 +351,13 @@ public class TagSystem extends Machine{
                             }else if(type.equals(HALT)){
                                 transitions.add(new TagSystemTransition(TransitionType.HALT, symbol, ""));
                             }else{
-                                System.err.printf("Unexpected transition type for tagsystem: %s\n", type);
-                                System.exit(-1);
+                                throw new MachineFormatException(String.format("Unexpected transition type for tagsystem: %s", type));
                             }break;
 
                         case INPUT:
+                            inputFile = InputFile.fromElement(config, element);
+                            if(inputFile != null)
+                                break;
                             event = reader.nextEvent();
                             input = event.asCharacters().getData();break;
                     }
@@ -302,9 +372,18 @@ public class TagSystem extends Machine{
                 }
             }
         } catch (XMLStreamException e) {
-            System.err.println("Invalid xml file.");
-            System.exit(-1);
+            throw new MachineFormatException("Invalid xml file.", e);
+        } catch (RuntimeException e) {
+            throw new MachineFormatException("Malformed config " + config + ": " + e, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing was written
+            }
         }
+        if(symbols == null)
+            throw new MachineFormatException("No symbols defined in " + config);
 
         HashMap<Character, ArrayList<TagSystemTransition>> transitionsFinal = new HashMap<>();
         HashMap<Character, LinkedList<TagSystemTransition>> tempTransitions = new HashMap<>();
@@ -327,6 +406,40 @@ public class TagSystem extends Machine{
 
         TagSystem machine  = new TagSystem(deletionNumber, blank, symbols, input);
         machine.setTransitions(transitionsFinal);
+        if(inputFile != null && readInputFile){
+            try{
+                machine.reset(inputFile.read(symbols), 0);
+            }catch(IOException e){
+                throw new MachineFormatException("Error reading the input file: " + e.getMessage(), e);
+            }
+        }
+        phase.commit("buildMachine", config, transitions.size());
+        return machine;
+    }
+
+    /**
+     * Generates a TagSystem instance from a compiled tag system without parsing any xml.
+     * @param compiled the compiled tag system, usually loaded by {@link utm_simulation.simulation.compiled.MachineFile}
+     * @return the TagSystem instance defined by given compiled tag system.
+     */
+    public static TagSystem buildMachine(CompiledTagSystem compiled){
+        char[] symbols = compiled.getSymbols();
+        HashMap<Character, ArrayList<TagSystemTransition>> transitionsFinal = new HashMap<>();
+
+        for(int i = 0; i < symbols.length; i++){
+            ArrayList<TagSystemTransition> list = new ArrayList<>(1);
+            if(compiled.getType(i) == CompiledTagSystem.APPEND){
+                byte[] production = compiled.getProduction(i);
+                list.add(new TagSystemTransition(TransitionType.APPEND, symbols[i], compiled.decode(production, 0, production.length)));
+            }else if(compiled.getType(i) == CompiledTagSystem.HALT){
+                list.add(new TagSystemTransition(TransitionType.HALT, symbols[i], ""));
+            }
+            transitionsFinal.put(symbols[i], list);
+        }
+
+        TagSystem machine = new TagSystem(compiled.getDeletionNumber(), compiled.getBlank(), symbols, "");
+        machine.setTransitions(transitionsFinal);
+        machine.reset(compiled.getInput(), 0);
         return machine;
     }
 }
\ No newline at end of file
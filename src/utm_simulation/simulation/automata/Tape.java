@@ -1,5 +1,7 @@
 package utm_simulation.simulation.automata;
 
+import utm_simulation.simulation.automata.engine.QuotaExceededException;
+
 import java.util.Iterator;
 
 /**
@@ -61,10 +63,16 @@ public class Tape implements Iterable<Character> {
 
     /*Fields*/
 
+    /** Estimated heap size of a cell: object header, symbol and two references. */
+    private static final int CELL_BYTES = 24;
+
     private final char BLANK;
     private Cell current;
     private Cell front;
     private Cell end;
+    private int headIndex;
+    private int length;
+    private int cellLimit = Integer.MAX_VALUE;
 
     /*Constructors*/
 
@@ -93,6 +101,7 @@ public class Tape implements Iterable<Character> {
             current = new Cell(BLANK, null, null);
             front = current;
             end = current;
+            length = 1;
             return;
         }else if(head_index < 0 || head_index >= input.length()){
             throw new StringIndexOutOfBoundsException("head_index: " + head_index + " is out of bounds");
@@ -109,6 +118,40 @@ public class Tape implements Iterable<Character> {
             if(i == head_index) // setting the current with given head_index
                 current = end;
         }
+        headIndex = head_index;
+        length = input.length();
+    }
+
+    /**
+     * Initializes a Tape from symbol indices, without building a String of the content first.
+     * @param blank blank symbol of the tape.
+     * @param symbols the symbols of the machine, the index of a symbol being its value
+     * @param head_index the location of current cell
+     * @param word the initial content of the tape as symbol indices
+     * @throws StringIndexOutOfBoundsException if the head is out of the word
+     */
+    public Tape(char blank, char[] symbols, int head_index, byte[] word){
+        BLANK = blank;
+        if(word.length == 0){
+            current = new Cell(BLANK, null, null);
+            front = current;
+            end = current;
+            length = 1;
+            return;
+        }else if(head_index < 0 || head_index >= word.length){
+            throw new StringIndexOutOfBoundsException("head_index: " + head_index + " is out of bounds");
+        }
+
+        this.front = new Cell(symbols[word[0] & 0xFF], null, null);
+        this.current = front;
+        this.end = front;
+        for(int i = 1; i < word.length; i++){
+            this.end = new Cell(symbols[word[i] & 0xFF], this.end, null);
+            if(i == head_index)
+                current = end;
+        }
+        headIndex = head_index;
+        length = word.length;
     }
 
     /*getter methods*/
@@ -128,7 +171,28 @@ public class Tape implements Iterable<Character> {
         return end;
     }
 
+    /**
+     * Returns the maximum number of cells of the tape
+     * @return the maximum number of cells of the tape
+     */
+    public int getCellLimit(){
+        return cellLimit;
+    }
+
     /*setter methods*/
+
+    /**
+     * Limits the number of cells of the tape, so that a run growing its tape without bound fails
+     * instead of exhausting the heap shared with other runs
+     * @param cellLimit maximum number of cells of the tape
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void setCellLimit(int cellLimit){
+        if(cellLimit <= 0)
+            throw new IllegalArgumentException("Invalid cell limit: " + cellLimit);
+        this.cellLimit = cellLimit;
+    }
+
     protected void setCurrent(Cell current){
         this.current = current;
     }
@@ -181,8 +245,12 @@ public class Tape implements Iterable<Character> {
     private void shiftToLeft(){
         Cell temp = getCurrent().getPrevious();
         if(temp == null){
+            grow(1);
             temp = new Cell(BLANK, null, getFront());
             setFront(temp);
+            length++;
+        }else{
+            headIndex--;
         }
         setCurrent(temp);
     }
@@ -190,17 +258,22 @@ public class Tape implements Iterable<Character> {
     private void shiftToRight(){
         Cell temp = getCurrent().getNext();
         if(temp == null){
+            grow(1);
             temp = new Cell(BLANK, getEnd(), null);
             setEnd(temp);
+            length++;
         }
         setCurrent(temp);
+        headIndex++;
     }
 
     /**
-     * Appends given word to the end of the tape
+     * Appends given word to the end of the tape. Appending an empty word does not change the tape.
      * @param word the String to add to the end of the tape
      */
     public void append(String word){
+        if(word.isEmpty())
+            return;
         Tape other = new Tape(BLANK, 0, word);
         append(other);
     }
@@ -211,8 +284,35 @@ public class Tape implements Iterable<Character> {
      * @throws NullPointerException if given tape is null
      */
     protected void append(Tape other){
+        grow(other.length);
         getEnd().setNext(other.getFront());
         setEnd(other.getEnd());
+        length += other.length;
+    }
+
+    /**
+     * Checks that the tape can take given number of new cells
+     * @throws QuotaExceededException if the tape would exceed its cell limit
+     */
+    private void grow(int cells){
+        if(cells > cellLimit - length)
+            throw new QuotaExceededException("Tape is limited to " + cellLimit + " cells", getFootprint(),
+                    (long) cellLimit * CELL_BYTES, false);
+    }
+
+    /**
+     * Removes the cells on the left of the head, such as the symbols a tag system has already read,
+     * so that they can be garbage collected. The head becomes the first cell.
+     */
+    public void trimFront(){
+        Cell previous = getCurrent().getPrevious();
+        if(previous == null)
+            return;
+        previous.setNext(null);
+        getCurrent().setPrevious(null);
+        setFront(getCurrent());
+        length -= headIndex;
+        headIndex = 0;
     }
 
     /**
@@ -290,19 +390,51 @@ public class Tape implements Iterable<Character> {
      * returns the position of the head on the tape
      *
      * <p>Warning: This method is for gui purpose only and it will not trim the leading blank symbols.</p>
+     * <p>The position is kept up to date as the head moves, so this takes constant time.</p>
      *
      * @return the position of the head on the tape
      */
     public int headIndex(){
-        return headIndexRecurse(0, getFront());
+        return headIndex;
+    }
+
+    /**
+     * Returns the number of cells on the tape, including the blank cells added as the head moved past either end
+     * @return the number of cells on the tape
+     */
+    public int length(){
+        return length;
     }
 
+    /**
+     * Returns an estimate of the memory held by the cells of the tape in bytes
+     * @return the estimated memory held by the tape
+     */
+    public long getFootprint(){
+        return (long) length * CELL_BYTES;
+    }
 
-    private int headIndexRecurse(int current, Cell ptr){
-        if(ptr != getCurrent())
-            return headIndexRecurse(++current, ptr.getNext());
-        else
-            return current;
+    /**
+     * Reads the cells around the head without traversing the rest of the tape.
+     * Cells beyond either end of the tape are read as blank.
+     * @param cells receives the content of the cells from position headIndex() - offset on
+     * @param offset number of cells to read on the left of the head
+     */
+    public void readWindow(char[] cells, int offset){
+        Cell ptr = getCurrent();
+        int position = 0;
+        while(position < offset && ptr.getPrevious() != null){
+            ptr = ptr.getPrevious();
+            position++;
+        }
+        int i = 0;
+        for(; i < offset - position && i < cells.length; i++)
+            cells[i] = BLANK;
+        for(; i < cells.length; i++){
+            cells[i] = ptr == null ? BLANK : ptr.getAlphabet();
+            if(ptr != null)
+                ptr = ptr.getNext();
+        }
     }
 
     /**
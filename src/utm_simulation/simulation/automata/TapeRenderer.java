@@ -0,0 +1,164 @@
+package utm_simulation.simulation.automata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Renders the configuration of a machine as text, starting from the head of its tape.
+ *
+ * <p>Only the cells within the radius of the head are visited, so rendering takes time proportional to the radius
+ * rather than to the length of the tape. Cut off ends of the tape are shown as "...".</p>
+ *
+ * <p>When compression is enabled, runs of at least minRun equal cells are written as the symbol followed by '^' and
+ * the length of the run, and every run or cell is separated by a space, for example {@code 1^4096 b c (q2, 1) b^3}.</p>
+ */
+public class TapeRenderer {
+
+    /** Radius rendering the whole tape. */
+    public static final int WHOLE_TAPE = Integer.MAX_VALUE;
+
+    private final int radius;
+    private final int minRun;
+
+    /**
+     * Creates a renderer showing the whole tape without compression, as {@link TuringMachine#toString()} does.
+     */
+    public TapeRenderer(){
+        this(WHOLE_TAPE, 0);
+    }
+
+    /**
+     * Creates a renderer
+     * @param radius number of cells shown on each side of the head
+     * @param minRun minimum length of the runs to compress, 0 to disable compression
+     * @throws IllegalArgumentException if the radius is negative or minRun is 1
+     */
+    public TapeRenderer(int radius, int minRun){
+        if(radius < 0)
+            throw new IllegalArgumentException("Invalid radius: " + radius);
+        if(minRun < 0 || minRun == 1)
+            throw new IllegalArgumentException("Invalid minimum run: " + minRun);
+        this.radius = radius;
+        this.minRun = minRun;
+    }
+
+    public int getRadius(){
+        return radius;
+    }
+
+    public int getMinRun(){
+        return minRun;
+    }
+
+    /**
+     * Renders the configuration of given Turing machine
+     * @param machine the machine to render
+     * @return the rendered configuration
+     */
+    public String render(TuringMachine machine){
+        return render(machine.getInput_tape(), machine.getCurrentState());
+    }
+
+    /**
+     * Renders a tape with its head in given state
+     * @param tape the tape to render
+     * @param state the state shown at the head
+     * @return the rendered configuration
+     */
+    public String render(Tape tape, int state){
+        StringBuilder builder = new StringBuilder();
+        try{
+            render(tape, state, builder);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Renders a tape with its head in given state without building an intermediate String
+     * @param tape the tape to render
+     * @param state the state shown at the head
+     * @param out receives the rendered configuration
+     * @throws IOException if out fails to accept the text
+     */
+    public void render(Tape tape, int state, Appendable out) throws IOException {
+        int head = tape.headIndex();
+        int left = Math.min(radius, head);
+        int right = (int) Math.min(radius, (long) tape.length() - head - 1);
+
+        Tape.Cell cell = tape.getCurrent();
+        for(int i = 0; i < left; i++)
+            cell = cell.getPrevious();
+
+        Run run = new Run(out);
+        if(left < head)
+            run.token("...");
+        for(int i = 0; i < left; i++){
+            run.add(cell.getAlphabet());
+            cell = cell.getNext();
+        }
+        run.token("(q" + state + ", " + cell.getAlphabet() + ")");
+        cell = cell.getNext();
+        for(int i = 0; i < right; i++){
+            run.add(cell.getAlphabet());
+            cell = cell.getNext();
+        }
+        if(cell != null)
+            run.token("...");
+        run.flush();
+    }
+
+    /**
+     * Groups equal cells into runs while writing them out
+     */
+    private final class Run {
+        private final Appendable out;
+        private char symbol;
+        private int length;
+        private boolean first = true;
+
+        private Run(Appendable out){
+            this.out = out;
+        }
+
+        private void add(char alphabet) throws IOException {
+            if(minRun == 0){
+                out.append(alphabet);
+                first = false;
+                return;
+            }
+            if(length > 0 && alphabet != symbol)
+                flush();
+            symbol = alphabet;
+            length++;
+        }
+
+        private void token(String text) throws IOException {
+            flush();
+            separate();
+            out.append(text);
+        }
+
+        private void flush() throws IOException {
+            if(length == 0)
+                return;
+            if(length >= minRun){
+                separate();
+                out.append(symbol).append('^').append(Integer.toString(length));
+            }else{
+                for(int i = 0; i < length; i++){
+                    separate();
+                    out.append(symbol);
+                }
+            }
+            length = 0;
+        }
+
+        private void separate() throws IOException {
+            if(!first && minRun > 0)
+                out.append(' ');
+            first = false;
+        }
+    }
+}
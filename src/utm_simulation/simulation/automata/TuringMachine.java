@@ -1,5 +1,12 @@
 package utm_simulation.simulation.automata;
 
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+import utm_simulation.simulation.compiled.InputFile;
+import utm_simulation.simulation.compiled.MachineCompiler;
+import utm_simulation.simulation.compiled.MachineFormatException;
+import utm_simulation.simulation.monitor.PhaseEvent;
+
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
@@ -10,6 +17,7 @@ import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -18,6 +26,8 @@ import java.util.LinkedList;
 
 public class TuringMachine extends Machine{
 
+    private static final TapeRenderer RENDERER = new TapeRenderer();
+
     public static final class StateSymbolPair{
         private final int state;
         private final char symbol;
@@ -145,6 +155,43 @@ public class TuringMachine extends Machine{
         setCurrentState(1);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset(byte[] word, int headIndex){
+        super.reset(word, headIndex);
+        setCurrentState(1);
+    }
+
+    /**
+     * Resets the machine with new input, head position and state.
+     * @param input new input given.
+     * @param headIndex the location of the head in the input
+     * @param state the new state of the machine, -1 for the halt state
+     * @throws IllegalArgumentException if given state does not exist.
+     */
+    public void reset(String input, int headIndex, int state){
+        reset(input, headIndex);
+        setCurrentState(state);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getConfiguration(){
+        return Configuration.turing(getCurrentState(), getInput_tape().toString(), getInput_tape().headIndex(), getInput_tape().getBLANK());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompiledTuringMachine compile() throws MachineFormatException{
+        return MachineCompiler.compile(this);
+    }
+
     /**
      * Returns whether the next transition is a deterministic one
      *
@@ -192,15 +239,31 @@ public class TuringMachine extends Machine{
         execute(t);
     }
 
+    /**
+     * Reverts the last step, given what it changed
+     * @param previousState the state before the step
+     * @param overwritten the symbol under the head before the step
+     * @param move the movement of the head during the step
+     */
+    protected void revert(int previousState, char overwritten, int move){
+        getInput_tape().shift(-move);
+        getInput_tape().write(overwritten);
+        setCurrentState(previousState);
+        unstepped();
+    }
+
     private void execute(TuringTransition t){
+        char read = getInput_tape().read();
         switch (t.getType()) {
             case STATE_TRANSITION:
                 getInput_tape().write(t.getNextSymbol());
                 getInput_tape().shift(t.getShift());
                 setCurrentState(t.getNextState());
+                stepped(t.getNextState(), read, t.getNextSymbol(), t.getShift());
                 break;
             case HALT:
                 setCurrentState(-1);
+                stepped(-1, read, read, 0);
                 break;
             default:
                 System.err.println("Fatal error when generating this machine");
@@ -208,37 +271,53 @@ public class TuringMachine extends Machine{
         }
     }
 
+    /**
+     * Renders the whole tape with the head shown as (q&lt;state&gt;, &lt;symbol&gt;).
+     * Use a {@link TapeRenderer} to render only the cells around the head.
+     * @return String representation of the configuration
+     */
     public String toString(){
-        Iterator<Character> beforeHead = getInput_tape().reverseIterator(getInput_tape().headIndex());
-        Iterator<Character> afterHead = getInput_tape().iterator(getInput_tape().headIndex());
-
-        StringBuilder builder = new StringBuilder();
-        while(beforeHead.hasNext()){
-            builder.append(beforeHead.next());
-        }
-
-        builder.reverse();
-
-        if(builder.length() != 0){
-            builder.deleteCharAt(builder.length() - 1);
-            builder.append("(q").append(getCurrentState()).append(", ").append(getInput_tape().read()).append(")");
-        }
+        return RENDERER.render(this);
+    }
 
-        if(afterHead.hasNext())
-            afterHead.next();
+    public static TuringMachine buildMachine(String config){
+        return buildMachine(config, true);
+    }
 
-        while(afterHead.hasNext()){
-            builder.append(afterHead.next());
+    /**
+     * Generates a TuringMachine instance with given path to config file, optionally leaving out the tape of an
+     * {@link InputFile} so that it can be streamed elsewhere, such as into a compiled machine.
+     * @param config path to the config xml file.
+     * @param readInputFile whether the tape of an input file referred to by the config file is loaded
+     * @return the TuringMachine instance defined by given config file, with a blank tape if the input file is left out.
+     */
+    public static TuringMachine buildMachine(String config, boolean readInputFile){
+        try{
+            return parseMachine(config, readInputFile);
+        }catch(MachineFormatException e){
+            System.err.println(e.getMessage());
+            System.exit(-1);
+            return null;
         }
-
-        return builder.toString();
     }
 
-    public static TuringMachine buildMachine(String config){
+    /**
+     * Generates a TuringMachine instance with given path to config file like {@link #buildMachine(String, boolean)},
+     * but reports a malformed config by throwing instead of terminating the process, for callers which must survive
+     * bad configs, such as a server.
+     * @param config path to the config xml file.
+     * @param readInputFile whether the tape of an input file referred to by the config file is loaded
+     * @return the TuringMachine instance defined by given config file, with a blank tape if the input file is left out.
+     * @throws MachineFormatException if the config file is missing or does not define a valid Turing machine
+     */
+    public static TuringMachine parseMachine(String config, boolean readInputFile) throws MachineFormatException {
+        PhaseEvent phase = new PhaseEvent();
+        phase.begin();
 
         char[] symbols = null;
         char blank = (char) -1;
         String input = "";
+        InputFile inputFile = null;
         int numStates = 0;
         LinkedList<TuringTransition> transitions = new LinkedList<>();
 
@@ -249,8 +328,7 @@ public class TuringMachine extends Machine{
         try{
             in = new FileInputStream(config);
         }catch (FileNotFoundException e) {
-            System.err.println("Given config file is not found.");
-            System.exit(-1);
+            throw new MachineFormatException("Given config file is not found.");
         }
 
         Iterator<Attribute> attributes;
@@ -270,8 +348,7 @@ public class TuringMachine extends Machine{
                         case CLASS:
                             event = reader.nextEvent();
                             if(!event.asCharacters().getData().equals("TuringMachine")){
-                                System.err.println("Invalid class value for Turing machine");
-                                System.exit(-1);
+                                throw new MachineFormatException("Invalid class value for Turing machine");
                             }break;
 
                         case SYMBOL:
@@ -302,11 +379,13 @@ public class TuringMachine extends Machine{
                             }else if(ttype.equals(HALT)){
                                 transitions.add(new TuringTransition(state, symbol, -1, ' ', TransitionType.HALT, 0));
                             }else{
-                                System.err.printf("Undefined xml attribute value: %s\n", ttype);
-                                System.exit(-1);
+                                throw new MachineFormatException(String.format("Undefined xml attribute value: %s", ttype));
                             }
                             break;
                         case INPUT:
+                            inputFile = InputFile.fromElement(config, element);
+                            if(inputFile != null)
+                                break;
                             event = reader.nextEvent();
                             input = event.asCharacters().getData();
                     }
@@ -321,9 +400,18 @@ public class TuringMachine extends Machine{
                 }
             }
         }catch(XMLStreamException e){
-            System.err.println("Error parsing the XML file");
-            System.exit(-1);
+            throw new MachineFormatException("Error parsing the XML file", e);
+        }catch(RuntimeException e){
+            throw new MachineFormatException("Malformed config " + config + ": " + e, e);
+        }finally{
+            try{
+                in.close();
+            }catch(IOException e){
+                // nothing was written
+            }
         }
+        if(symbols == null)
+            throw new MachineFormatException("No symbols defined in " + config);
 
         HashMap<StateSymbolPair, ArrayList<TuringTransition>> transitionsFinal = new HashMap<>();
         HashMap<StateSymbolPair, LinkedList<TuringTransition>> tempTransitions = new HashMap<>();
@@ -339,8 +427,7 @@ public class TuringMachine extends Machine{
             if(tempTransitions.containsKey(pair)){
                 tempTransitions.get(pair).add(t);
             }else{
-                System.err.printf("Undefined state or symbol used in transition: (%d, %s)\n", pair.getState(), pair.getSymbol());
-                System.exit(-1);
+                throw new MachineFormatException(String.format("Undefined state or symbol used in transition: (%d, %s)", pair.getState(), pair.getSymbol()));
             }
         }
 
@@ -352,7 +439,47 @@ public class TuringMachine extends Machine{
         }
 
         TuringMachine machine = new TuringMachine(blank, symbols, numStates, input);
+        if(inputFile != null && readInputFile){
+            try{
+                machine.reset(inputFile.read(symbols), 0);
+            }catch(IOException e){
+                throw new MachineFormatException("Error reading the input file: " + e.getMessage(), e);
+            }
+        }
+        phase.commit("buildMachine", config, transitions.size());
+        machine.setTransitions(transitionsFinal);
+
+        return machine;
+    }
+
+    /**
+     * Generates a TuringMachine instance from a compiled machine without parsing any xml.
+     * @param compiled the compiled machine, usually loaded by {@link utm_simulation.simulation.compiled.MachineFile}
+     * @return the TuringMachine instance defined by given compiled machine.
+     */
+    public static TuringMachine buildMachine(CompiledTuringMachine compiled){
+        char[] symbols = compiled.getSymbols();
+        int numStates = compiled.getNumStates();
+        HashMap<StateSymbolPair, ArrayList<TuringTransition>> transitionsFinal = new HashMap<>();
+
+        for(int s = 1; s < numStates + 1; s++){
+            for(int i = 0; i < symbols.length; i++){
+                int entry = compiled.entry(s, i);
+                ArrayList<TuringTransition> list = new ArrayList<>(1);
+                int nextState = compiled.getNextState(entry);
+                if(nextState == CompiledTuringMachine.HALT){
+                    list.add(new TuringTransition(s, symbols[i], -1, ' ', TransitionType.HALT, 0));
+                }else if(nextState != CompiledTuringMachine.UNDEFINED){
+                    list.add(new TuringTransition(s, symbols[i], nextState, symbols[compiled.getNextSymbol(entry)],
+                            TransitionType.STATE_TRANSITION, compiled.getShift(entry)));
+                }
+                transitionsFinal.put(new StateSymbolPair(s, symbols[i]), list);
+            }
+        }
+
+        TuringMachine machine = new TuringMachine(compiled.getBlank(), symbols, numStates, "");
         machine.setTransitions(transitionsFinal);
+        machine.reset(compiled.getInput(), compiled.getHeadIndex());
 
         return machine;
     }
@@ -0,0 +1,239 @@
+package utm_simulation.simulation.automata;
+
+import utm_simulation.simulation.monitor.StepObserver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the steps of a Turing machine so that they can be reverted.
+ *
+ * <p>A step is reverted from the state before it, the symbol it wrote over and the movement of the head. These are
+ * packed into as few bytes as the machine allows, one byte for UTM(5,5), and kept in a fixed size buffer. When the
+ * buffer is full, its older half is appended to a spill file, or discarded if there is none, and it is read back when
+ * the steps after it have been reverted.</p>
+ *
+ * <p>The log attaches itself as the observer of the machine; other observers can be chained after it with
+ * {@link StepObserver#andThen}. It must be cleared when the machine is reset.</p>
+ */
+public class UndoLog implements StepObserver, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 24;
+
+    private final TuringMachine machine;
+    private final char[] symbols;
+    private final int[] symbolIndex;
+    private final int symbolBits;
+    private final int width;
+    private final byte[] buffer;
+    private final int capacity;
+    private final Path spillFile;
+    private final FileChannel spill;
+
+    private int start;
+    private int count;
+    private long spilled;
+    private int lastState;
+
+    /**
+     * Creates a log keeping every step in memory up to the default capacity
+     * @param machine the machine to record
+     */
+    public UndoLog(TuringMachine machine){
+        this(machine, DEFAULT_CAPACITY, null);
+    }
+
+    /**
+     * Creates a log and attaches it to the machine
+     * @param machine the machine to record
+     * @param capacity number of steps kept in memory, at least 2
+     * @param spillFile file older steps are spilled to, or null to discard them
+     * @throws UncheckedIOException if the spill file cannot be created
+     * @throws IllegalArgumentException if capacity is too small or the machine has too many states or symbols
+     */
+    public UndoLog(TuringMachine machine, int capacity, Path spillFile) {
+        if(capacity < 2)
+            throw new IllegalArgumentException("capacity must be at least 2");
+        char[] symbols = machine.getSymbols();
+        int maxSymbol = 0;
+        for(char symbol : symbols)
+            maxSymbol = Math.max(maxSymbol, symbol);
+        this.machine = machine;
+        this.symbols = symbols;
+        this.symbolIndex = new int[maxSymbol + 1];
+        for(int i = 0; i < symbols.length; i++)
+            symbolIndex[symbols[i]] = i;
+        this.symbolBits = bits(symbols.length - 1);
+        int stateBits = bits(machine.getNumStates());
+        if(stateBits + symbolBits + 2 > 32)
+            throw new IllegalArgumentException("Too many states and symbols");
+        this.width = (stateBits + symbolBits + 2 + 7) / 8;
+        this.capacity = capacity;
+        this.buffer = new byte[capacity * width];
+        this.spillFile = spillFile;
+        try{
+            this.spill = spillFile == null ? null : FileChannel.open(spillFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        this.lastState = machine.getCurrentState();
+        machine.setObserver(this);
+    }
+
+    private static int bits(int max){
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+    }
+
+    /**
+     * Records a step of the machine
+     */
+    @Override
+    public void onStep(long step, int state, char read, char written, int move){
+        int entry = (lastState << (symbolBits + 2)) | (symbolIndex[read] << 2) | (move + 1);
+        lastState = state;
+        if(count == capacity)
+            evict();
+        int position = (start + count) % capacity * width;
+        for(int i = width - 1; i >= 0; i--){
+            buffer[position + i] = (byte) entry;
+            entry >>>= 8;
+        }
+        count++;
+    }
+
+    /**
+     * Moves the older half of the buffer to the spill file, or discards it
+     */
+    private void evict(){
+        int half = capacity / 2;
+        if(spill != null){
+            try{
+                int first = Math.min(half, capacity - start);
+                spill.write(ByteBuffer.wrap(buffer, start * width, first * width), spilled * width);
+                if(first < half)
+                    spill.write(ByteBuffer.wrap(buffer, 0, (half - first) * width), (spilled + first) * width);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+            spilled += half;
+        }
+        start = (start + half) % capacity;
+        count -= half;
+    }
+
+    /**
+     * Reads the most recently spilled steps back into the empty buffer
+     */
+    private void reload(){
+        int loaded = (int) Math.min(capacity / 2, spilled);
+        spilled -= loaded;
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, loaded * width);
+        try{
+            while(target.hasRemaining()){
+                if(spill.read(target, spilled * width + target.position()) < 0)
+                    throw new IOException("Spill file " + spillFile + " is truncated");
+            }
+            spill.truncate(spilled * width);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        start = 0;
+        count = loaded;
+    }
+
+    /**
+     * Returns the number of steps which can be reverted
+     * @return the number of steps which can be reverted
+     */
+    public long size(){
+        return spilled + count;
+    }
+
+    /**
+     * Returns the earliest step the machine can be rewound to
+     * @return the earliest reachable step
+     */
+    public long getOldestStep(){
+        return machine.getStepCount() - size();
+    }
+
+    /**
+     * Returns the number of recorded bytes per step
+     * @return the size of an entry in bytes
+     */
+    public int getEntrySize(){
+        return width;
+    }
+
+    /**
+     * Reverts the last steps of the machine
+     * @param steps number of steps to revert
+     * @return the number of steps reverted, lower than asked if the log runs out
+     */
+    public long stepBack(long steps){
+        long done = 0;
+        while(done < steps){
+            if(count == 0){
+                if(spilled == 0)
+                    break;
+                reload();
+            }
+            count--;
+            int position = (start + count) % capacity * width;
+            int entry = 0;
+            for(int i = 0; i < width; i++)
+                entry = (entry << 8) | (buffer[position + i] & 0xFF);
+            machine.revert(entry >>> (symbolBits + 2), symbols[(entry >>> 2) & ((1 << symbolBits) - 1)], (entry & 3) - 1);
+            done++;
+        }
+        lastState = machine.getCurrentState();
+        return done;
+    }
+
+    /**
+     * Reverts steps until the machine is back at given step
+     * @param step the step count to go back to
+     * @throws IllegalArgumentException if the step is in the future or older than the log
+     */
+    public void runBackTo(long step){
+        if(step > machine.getStepCount() || step < getOldestStep())
+            throw new IllegalArgumentException("Step " + step + " is not between " + getOldestStep() + " and " + machine.getStepCount());
+        stepBack(machine.getStepCount() - step);
+    }
+
+    /**
+     * Forgets every recorded step, for example after the machine is reset
+     */
+    public void clear(){
+        start = 0;
+        count = 0;
+        spilled = 0;
+        lastState = machine.getCurrentState();
+        if(spill != null){
+            try{
+                spill.truncate(0);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Detaches the log from the machine and deletes the spill file
+     * @throws IOException if the spill file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException{
+        machine.setObserver(null);
+        if(spill != null){
+            spill.close();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
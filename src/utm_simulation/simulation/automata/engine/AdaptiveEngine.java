@@ -0,0 +1,291 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.monitor.EngineSwitchEvent;
+import utm_simulation.simulation.monitor.RunRecording;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Engine which runs a machine in slices on another engine and migrates the run to a better suited engine
+ * whenever the statistics sampled after a slice say so.
+ *
+ * <p>For Turing machines the run starts on the "array" engine. It moves to the "rle" engine when the tape around the
+ * head is made of long runs of equal symbols and the head travels far, as in unary sweeps, and moves back when the
+ * sweeps stop paying off. For tag systems the run starts on the "array" engine, moves to the "memoized" engine once
+ * the word is long enough to be processed in blocks, and back when its cache hit rate drops.</p>
+ *
+ * <p>A migration copies the {@link Configuration} and the step count into the new engine, so no step is lost.
+ * Every migration is recorded with the statistics that triggered it, and reported as an {@link EngineSwitchEvent}
+ * while a flight recording is running, so it shows up in the metrics even when the engine is wrapped by
+ * {@link Engines#create(String, CompiledMachine)}.</p>
+ */
+public class AdaptiveEngine implements Engine {
+
+    /**
+     * A migration decided by the engine
+     */
+    public static final class Switch{
+        private final long step;
+        private final String from;
+        private final String to;
+        private final String reason;
+
+        private Switch(long step, String from, String to, String reason){
+            this.step = step;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+        }
+
+        /**
+         * Returns the step count at which the run was migrated
+         * @return the step count at which the run was migrated
+         */
+        public long getStep(){
+            return step;
+        }
+
+        public String getFrom(){
+            return from;
+        }
+
+        public String getTo(){
+            return to;
+        }
+
+        public String getReason(){
+            return reason;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("step %d: %s -> %s (%s)", step, from, to, reason);
+        }
+    }
+
+    public static final long DEFAULT_SLICE = 1 << 16;
+
+    /* Thresholds of the switching decisions */
+    private static final int RUN_SAMPLE_RADIUS = 512;
+    private static final double RLE_MIN_RUN_LENGTH = 6;
+    private static final double RLE_MIN_TRAVEL = 0.05;
+    private static final double RLE_MIN_CELLS_PER_TRANSITION = 2;
+    private static final int MEMO_MIN_WORD = 256;
+    private static final double MEMO_MIN_HIT_RATE = 0.5;
+    private static final int COOLDOWN_SLICES = 4;
+
+    private final CompiledMachine program;
+    private final long slice;
+    private final List<Switch> switches = new ArrayList<>();
+    private final Map<String, Long> stepsPerEngine = new LinkedHashMap<>();
+
+    private Engine current;
+    /** Step count at which the run moved to the current engine. */
+    private long enteredAt;
+    /** Digest of the machine reported with the switch events, computed on the first one. */
+    private String digest;
+    private int cooldown;
+    private long transitionsMark;
+    private long hitsMark;
+    private long missesMark;
+
+    public AdaptiveEngine(CompiledMachine program){
+        this(program, DEFAULT_SLICE);
+    }
+
+    /**
+     * Creates an adaptive engine
+     * @param program the machine to run
+     * @param slice number of steps between two samples of the statistics
+     * @throws IllegalArgumentException if slice is not positive
+     */
+    public AdaptiveEngine(CompiledMachine program, long slice){
+        if(slice <= 0)
+            throw new IllegalArgumentException("Slice must be positive");
+        this.program = program;
+        this.slice = slice;
+        this.current = Engines.createUnrecorded("array", program);
+    }
+
+    @Override
+    public String getName(){
+        return "adaptive";
+    }
+
+    @Override
+    public CompiledMachine getProgram(){
+        return program;
+    }
+
+    /**
+     * Returns the engine currently running the machine
+     * @return the engine currently running the machine
+     */
+    public Engine getCurrent(){
+        return current;
+    }
+
+    /**
+     * Returns every migration decided so far, in order
+     * @return every migration decided so far
+     */
+    public List<Switch> getSwitches(){
+        return Collections.unmodifiableList(switches);
+    }
+
+    /**
+     * Returns how many steps were executed by each engine
+     * @return number of steps executed by each engine, by engine name
+     */
+    public Map<String, Long> getStepsPerEngine(){
+        return Collections.unmodifiableMap(stepsPerEngine);
+    }
+
+    @Override
+    public boolean isHalted(){
+        return current.isHalted();
+    }
+
+    @Override
+    public long getStepCount(){
+        return current.getStepCount();
+    }
+
+    @Override
+    public long getCellCount(){
+        return current.getCellCount();
+    }
+
+    @Override
+    public long getFootprint(){
+        return current.getFootprint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        current.step();
+        stepsPerEngine.merge(current.getName(), 1L, Long::sum);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(!current.isHalted() && done < maxSteps){
+            long start = current.getStepCount();
+            long position = headPosition();
+            long executed;
+            try{
+                executed = current.run(Math.min(slice, maxSteps - done));
+            }finally{
+                stepsPerEngine.merge(current.getName(), current.getStepCount() - start, Long::sum);
+            }
+            done += executed;
+            if(executed == slice && !current.isHalted())
+                adapt(executed, Math.abs(headPosition() - position));
+        }
+        return done;
+    }
+
+    /**
+     * Decides whether to migrate after a full slice of given number of steps
+     */
+    private void adapt(long executed, long travel){
+        if(cooldown > 0){
+            cooldown--;
+            markCounters();
+            return;
+        }
+        if(current instanceof ArrayTuringEngine){
+            double runLength = ((ArrayTuringEngine) current).sampleRunLength(RUN_SAMPLE_RADIUS);
+            double travelRate = (double) travel / executed;
+            if(runLength >= RLE_MIN_RUN_LENGTH && travelRate >= RLE_MIN_TRAVEL)
+                migrate("rle", String.format("average run %.1f, travel %.3f per step", runLength, travelRate));
+        }else if(current instanceof RleTuringEngine){
+            RleTuringEngine rle = (RleTuringEngine) current;
+            long transitions = rle.getTransitions() - transitionsMark;
+            double cellsPerTransition = transitions == 0 ? 0 : (double) executed / transitions;
+            if(cellsPerTransition < RLE_MIN_CELLS_PER_TRANSITION)
+                migrate("array", String.format("%.2f cells per transition", cellsPerTransition));
+        }else if(current instanceof ArrayTagEngine){
+            long length = ((ArrayTagEngine) current).getWordLength();
+            if(length >= MEMO_MIN_WORD)
+                migrate("memoized", "word length " + length);
+        }else if(current instanceof MemoizedTagEngine){
+            MemoizedTagEngine memoized = (MemoizedTagEngine) current;
+            long hits = memoized.getCacheHits() - hitsMark;
+            long misses = memoized.getCacheMisses() - missesMark;
+            double hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+            if(hitRate < MEMO_MIN_HIT_RATE || memoized.getWordLength() < MEMO_MIN_WORD / 2)
+                migrate("array", String.format("cache hit rate %.2f, word length %d", hitRate, memoized.getWordLength()));
+        }
+        markCounters();
+    }
+
+    /**
+     * Moves the run to the engine of given name
+     */
+    private void migrate(String name, String reason){
+        Engine next = Engines.createUnrecorded(name, program);
+        long step = current.getStepCount();
+        next.restore(current.inspect(), step);
+        current.close();
+        switches.add(new Switch(step, current.getName(), name, reason));
+        EngineSwitchEvent event = new EngineSwitchEvent();
+        if(event.isEnabled()){
+            if(digest == null)
+                digest = RunRecording.digest(program);
+            event.commit(digest, step, current.getName(), name, reason, step - enteredAt);
+        }
+        current = next;
+        enteredAt = step;
+        cooldown = COOLDOWN_SLICES;
+    }
+
+    private void markCounters(){
+        if(current instanceof RleTuringEngine){
+            transitionsMark = ((RleTuringEngine) current).getTransitions();
+        }else if(current instanceof MemoizedTagEngine){
+            hitsMark = ((MemoizedTagEngine) current).getCacheHits();
+            missesMark = ((MemoizedTagEngine) current).getCacheMisses();
+        }
+    }
+
+    private long headPosition(){
+        if(current instanceof ArrayTuringEngine)
+            return ((ArrayTuringEngine) current).getHeadPosition();
+        if(current instanceof RleTuringEngine)
+            return ((RleTuringEngine) current).getHeadPosition();
+        return 0;
+    }
+
+    @Override
+    public Configuration inspect(){
+        return current.inspect();
+    }
+
+    @Override
+    public void close(){
+        current.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        current.restore(configuration, stepCount);
+        enteredAt = stepCount;
+        markCounters();
+    }
+}
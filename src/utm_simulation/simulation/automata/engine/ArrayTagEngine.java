@@ -0,0 +1,158 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Engine running a compiled tag system one step at a time on a {@link TagWord}.
+ * The "array" engine keeps the word in a {@link SymbolQueue} and the "mapped" engine in a {@link MappedTagWord}.
+ */
+public class ArrayTagEngine implements Engine {
+
+    private final CompiledTagSystem program;
+    private final int deletionNumber;
+    private final int blank;
+    private final byte[] types;
+    private final int[] offsets;
+    private final byte[] productions;
+
+    private final String name;
+    private final TagWord word;
+    private boolean halted;
+    private long steps;
+
+    public ArrayTagEngine(CompiledTagSystem program){
+        this(program, "array", new SymbolQueue());
+    }
+
+    /**
+     * Creates an engine storing the word in given storage
+     * @param program tag system to run
+     * @param name name of the engine
+     * @param word empty storage for the word
+     */
+    public ArrayTagEngine(CompiledTagSystem program, String name, TagWord word){
+        this.program = program;
+        this.name = name;
+        this.word = word;
+        this.deletionNumber = program.getDeletionNumber();
+        this.blank = program.getBlankIndex();
+        this.types = program.getTypes();
+        this.offsets = program.getOffsets();
+        this.productions = program.getProductions();
+        load(program.getInputBuffer(), false);
+    }
+
+    @Override
+    public String getName(){
+        return name;
+    }
+
+    @Override
+    public CompiledTagSystem getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return halted;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(halted)
+            throw new IllegalStateException("The machine has already terminated.");
+        run(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(!halted && done < maxSteps){
+            int symbol = word.get(0);
+            byte type = types[symbol];
+            if(type == CompiledTagSystem.HALT){
+                halted = true;
+            }else if(type == CompiledTagSystem.APPEND){
+                word.append(productions, offsets[symbol], offsets[symbol + 1] - offsets[symbol]);
+                word.drop(deletionNumber);
+                if(word.isEmpty())
+                    word.append(blank);
+            }else{
+                throw new UnsupportedOperationException("The machine currently requires a choice to proceed");
+            }
+            steps++;
+            done++;
+        }
+        return done;
+    }
+
+    /**
+     * Returns the number of symbols in the current word
+     * @return the number of symbols in the current word
+     */
+    public long getWordLength(){
+        return word.length();
+    }
+
+    @Override
+    public long getCellCount(){
+        return word.length();
+    }
+
+    @Override
+    public long getFootprint(){
+        return word.getFootprint();
+    }
+
+    @Override
+    public Configuration inspect(){
+        byte[] content = word.toArray();
+        return Configuration.tag(halted, program.decode(content, 0, content.length));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TAG_SYSTEM)
+            throw new IllegalArgumentException("Not a tag system configuration");
+        load(ByteBuffer.wrap(program.encode(configuration.getCells())), configuration.isHalted());
+        steps = stepCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close(){
+        if(word instanceof AutoCloseable){
+            try{
+                ((AutoCloseable) word).close();
+            }catch(Exception e){
+                throw new IllegalStateException("Cannot release the word storage", e);
+            }
+        }
+    }
+
+    private void load(ByteBuffer input, boolean halted){
+        word.clear();
+        word.append(input);
+        if(word.isEmpty())
+            word.append(blank);
+        this.halted = halted;
+    }
+}
@@ -0,0 +1,190 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Engine running a compiled Turing machine on a byte array tape with a dense transition table.
+ * The tape doubles in size whenever the head leaves it.
+ */
+public class ArrayTuringEngine implements Engine {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private final CompiledTuringMachine program;
+    private final int numSymbols;
+    private final byte blank;
+    private final int[] nextStates;
+    private final byte[] nextSymbols;
+    private final byte[] shifts;
+
+    private byte[] tape;
+    private int head;
+    private int origin;
+    private int state;
+    private long steps;
+
+    public ArrayTuringEngine(CompiledTuringMachine program){
+        this.program = program;
+        this.numSymbols = program.getNumSymbols();
+        this.blank = (byte) program.getBlankIndex();
+        this.nextStates = program.getNextStates();
+        this.nextSymbols = program.getNextSymbols();
+        this.shifts = program.getShifts();
+        load(program.getInputBuffer(), program.getHeadIndex(), 1);
+    }
+
+    @Override
+    public String getName(){
+        return "array";
+    }
+
+    @Override
+    public CompiledTuringMachine getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return state == CompiledTuringMachine.HALT;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    /**
+     * Returns the current state of the machine, -1 once halted
+     * @return the current state of the machine
+     */
+    public int getState(){
+        return state;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(isHalted())
+            throw new IllegalStateException("The machine has already halted");
+        run(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        int state = this.state;
+        int head = this.head;
+        byte[] tape = this.tape;
+        try{
+            while(state != CompiledTuringMachine.HALT && done < maxSteps){
+                int entry = (state - 1) * numSymbols + (tape[head] & 0xFF);
+                int next = nextStates[entry];
+                if(next == CompiledTuringMachine.UNDEFINED)
+                    throw new UnsupportedOperationException("Current operation requires a choice");
+                done++;
+                if(next == CompiledTuringMachine.HALT){
+                    state = next;
+                    break;
+                }
+                tape[head] = nextSymbols[entry];
+                head += shifts[entry];
+                state = next;
+                if(head < 0 || head >= tape.length){
+                    this.head = head;
+                    grow();
+                    head = this.head;
+                    tape = this.tape;
+                }
+            }
+        }finally{
+            this.state = state;
+            this.head = head;
+            this.steps += done;
+        }
+        return done;
+    }
+
+    /**
+     * Doubles the tape, keeping the head inside of it.
+     */
+    private void grow(){
+        byte[] grown = new byte[tape.length * 2];
+        int offset = head < 0 ? tape.length : 0;
+        Arrays.fill(grown, blank);
+        System.arraycopy(tape, 0, grown, offset, tape.length);
+        tape = grown;
+        head += offset;
+        origin += offset;
+    }
+
+    @Override
+    public long getCellCount(){
+        return tape.length;
+    }
+
+    @Override
+    public long getFootprint(){
+        return tape.length;
+    }
+
+    /**
+     * Returns the position of the head relative to the first cell of the input or restored configuration
+     * @return the position of the head
+     */
+    public long getHeadPosition(){
+        return head - origin;
+    }
+
+    /**
+     * Returns the average length of the runs of equal symbols within given distance of the head.
+     * Only the window is scanned, so this is cheap enough to be sampled during a run.
+     * @param radius number of cells scanned on each side of the head
+     * @return the average run length in the window
+     */
+    public double sampleRunLength(int radius){
+        int from = Math.max(0, head - radius);
+        int to = Math.min(tape.length, head + radius + 1);
+        int runs = 1;
+        for(int i = from + 1; i < to; i++){
+            if(tape[i] != tape[i - 1])
+                runs++;
+        }
+        return (double) (to - from) / runs;
+    }
+
+    @Override
+    public Configuration inspect(){
+        return Configuration.turing(state, program.decode(tape, 0, tape.length), head, program.getBlank());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TURING_MACHINE)
+            throw new IllegalArgumentException("Not a Turing machine configuration");
+        load(ByteBuffer.wrap(program.encode(configuration.getCells())), configuration.getHead(), configuration.getState());
+        steps = stepCount;
+    }
+
+    private void load(ByteBuffer cells, int head, int state){
+        int length = cells.remaining();
+        int capacity = Math.max(MIN_CAPACITY, length * 2);
+        int offset = (capacity - length) / 2;
+        tape = new byte[capacity];
+        Arrays.fill(tape, blank);
+        cells.get(tape, offset, length);
+        this.head = offset + head;
+        this.origin = offset;
+        this.state = state;
+    }
+}
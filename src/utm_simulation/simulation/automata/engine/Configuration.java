@@ -0,0 +1,134 @@
+package utm_simulation.simulation.automata.engine;
+
+import java.util.Objects;
+
+/**
+ * An engine independent snapshot of a machine configuration, used to compare and migrate runs between engines.
+ *
+ * <p>Configurations are canonical: two engines in the same configuration produce equal instances
+ * regardless of how much blank tape they allocated.</p>
+ * <ul>
+ *     <li>Turing machine: the current state (-1 once halted), the tape without leading and trailing blanks
+ *     except the cell under the head, and the index of the head in it.</li>
+ *     <li>Tag system: 0 while running or -1 once halted, the unread word, and a head index of 0.</li>
+ * </ul>
+ */
+public final class Configuration {
+
+    /**
+     * Represents the kind of machine the configuration belongs to.
+     */
+    public enum Kind{TURING_MACHINE, TAG_SYSTEM}
+
+    public static final int HALTED = -1;
+
+    private final Kind kind;
+    private final int state;
+    private final int head;
+    private final String cells;
+
+    private Configuration(Kind kind, int state, int head, String cells){
+        this.kind = kind;
+        this.state = state;
+        this.head = head;
+        this.cells = cells;
+    }
+
+    /**
+     * Creates the canonical configuration of a Turing machine.
+     * @param state current state of the machine, -1 if it halted
+     * @param cells content of the tape
+     * @param head index of the head in cells
+     * @param blank the blank symbol, trimmed from both ends of the tape
+     * @return the canonical configuration
+     * @throws IndexOutOfBoundsException if head is not an index of cells
+     */
+    public static Configuration turing(int state, CharSequence cells, int head, char blank){
+        if(head < 0 || head >= cells.length())
+            throw new IndexOutOfBoundsException("head: " + head + " is out of bounds");
+        int from = 0;
+        while(from < head && cells.charAt(from) == blank)
+            from++;
+        int to = cells.length();
+        while(to > head + 1 && cells.charAt(to - 1) == blank)
+            to--;
+        return new Configuration(Kind.TURING_MACHINE, state, head - from, cells.subSequence(from, to).toString());
+    }
+
+    /**
+     * Creates the configuration of a tag system.
+     * @param halted whether the tag system halted
+     * @param word the unread word
+     * @return the configuration
+     */
+    public static Configuration tag(boolean halted, CharSequence word){
+        return new Configuration(Kind.TAG_SYSTEM, halted ? HALTED : 0, 0, word.toString());
+    }
+
+    public Kind getKind(){
+        return kind;
+    }
+
+    /**
+     * Returns the state of the machine. -1 indicates the halt state.
+     * @return the state of the machine
+     */
+    public int getState(){
+        return state;
+    }
+
+    public boolean isHalted(){
+        return state == HALTED;
+    }
+
+    /**
+     * Returns the index of the head in {@link #getCells()}
+     * @return the index of the head
+     */
+    public int getHead(){
+        return head;
+    }
+
+    /**
+     * Returns the content of the tape, or the word of a tag system
+     * @return the content of the tape
+     */
+    public String getCells(){
+        return cells;
+    }
+
+    /**
+     * Returns the symbol under the head
+     * @return the symbol under the head
+     */
+    public char read(){
+        return cells.charAt(head);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj){
+        if(obj instanceof Configuration){
+            Configuration other = (Configuration) obj;
+            return other.kind == kind && other.state == state && other.head == head && other.cells.equals(cells);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode(){
+        return Objects.hash(kind, state, head, cells);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString(){
+        if(kind == Kind.TAG_SYSTEM)
+            return (isHalted() ? "halted " : "") + cells;
+        return cells.substring(0, head) + "(q" + state + ", " + read() + ")" + cells.substring(head + 1);
+    }
+}
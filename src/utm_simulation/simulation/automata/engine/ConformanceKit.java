@@ -0,0 +1,463 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.automata.TagSystem;
+import utm_simulation.simulation.automata.Tape;
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+import utm_simulation.simulation.compiled.MachineCompiler;
+import utm_simulation.simulation.compiled.MachineFormatException;
+import utm_simulation.simulation.encoder.CostEstimate;
+import utm_simulation.simulation.encoder.EncodedProgram;
+import utm_simulation.simulation.encoder.Encoder;
+import utm_simulation.simulation.encoder.Utm55Predictor;
+import utm_simulation.simulation.encoder.UtmEncoding;
+import utm_simulation.simulation.encoder.Utms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs every engine supporting a machine side by side and reports the first step where they disagree.
+ *
+ * <p>Engines are advanced by the same number of steps between checkpoints and compared on their step count,
+ * their {@link Configuration} and whether they failed. With an interval of 1 the engines run in lockstep.
+ * When a checkpoint disagrees, both engines are restored to the last agreed configuration and stepped one at a time
+ * to find the exact diverging step.</p>
+ *
+ * <p>The predictions of {@link Utm55Predictor} are checked the same way against a run of utm(5,5), at the start of
+ * every cycle and when the machine halts, and the costs predicted by every machine registered in {@link Utms} against
+ * a run of that machine.</p>
+ *
+ * <p>Usage: ConformanceKit [--steps N] [--interval K] [--random R] [--predictor P] [--seed S] &lt;utm config&gt;
+ * &lt;tagsystem config&gt;</p>
+ * <p>The Turing machine is run on the utm(5,5) encoding of the tag system, and R random Turing machines and
+ * tag systems are checked in addition. With P, the predictions for the tag system and for P random tag systems
+ * encodable for utm(5,5) are checked too, on utm(5,5) and on every registered machine supporting them. The exit
+ * status is non zero if any divergence is found.</p>
+ */
+public class ConformanceKit {
+
+    /**
+     * Describes the first disagreement between an engine and the reference engine.
+     */
+    public static final class Divergence{
+        private final String reference;
+        private final String engine;
+        private final long step;
+        private final String expected;
+        private final String actual;
+
+        private Divergence(String reference, String engine, long step, String expected, String actual){
+            this.reference = reference;
+            this.engine = engine;
+            this.step = step;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public String getEngine(){
+            return engine;
+        }
+
+        /**
+         * Returns the number of steps after which the engines disagree
+         * @return the number of steps after which the engines disagree
+         */
+        public long getStep(){
+            return step;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("engine %s diverges from %s after step %d%n  expected: %s%n  actual:   %s",
+                    engine, reference, step, abbreviate(expected), abbreviate(actual));
+        }
+    }
+
+    /**
+     * The observable result of advancing an engine
+     */
+    private static final class Checkpoint{
+        private final long steps;
+        private final Configuration configuration;
+        private final String failure;
+
+        private Checkpoint(Engine engine, String failure){
+            this.steps = engine.getStepCount();
+            this.configuration = engine.inspect();
+            this.failure = failure;
+        }
+
+        private boolean matches(Checkpoint other){
+            return steps == other.steps && configuration.equals(other.configuration)
+                    && (failure == null ? other.failure == null : failure.equals(other.failure));
+        }
+
+        @Override
+        public String toString(){
+            return "step " + steps + (failure == null ? "" : " failed with " + failure) + ": " + configuration;
+        }
+    }
+
+    private static final int ABBREVIATION = 200;
+
+    private final long maxSteps;
+    private final long interval;
+
+    /**
+     * Creates a conformance kit
+     * @param maxSteps maximum number of steps to run each machine for
+     * @param interval number of steps between two comparisons, 1 for lockstep
+     * @throws IllegalArgumentException if either value is not positive
+     */
+    public ConformanceKit(long maxSteps, long interval){
+        if(maxSteps <= 0 || interval <= 0)
+            throw new IllegalArgumentException("Steps and interval must be positive");
+        this.maxSteps = maxSteps;
+        this.interval = interval;
+    }
+
+    /**
+     * Runs every registered engine supporting given machine and compares them to the first one, the reference engine.
+     * @param program the machine to run
+     * @return the first divergence, or null if every engine agrees
+     */
+    public Divergence check(CompiledMachine program){
+        List<EngineProvider> providers = Engines.providers(program);
+        List<Engine> engines = new ArrayList<>();
+        for(EngineProvider provider : providers)
+            engines.add(provider.create(program));
+        if(engines.size() < 2)
+            return null;
+
+        try{
+            return compare(providers, engines, program);
+        }finally{
+            for(Engine engine : engines)
+                engine.close();
+        }
+    }
+
+    /**
+     * Runs utm(5,5) on the encoding of a tag system with the "array" engine and compares it to the predictions of
+     * {@link Utm55Predictor} at the start of every cycle and when the machine halts. A predicted runaway must not halt
+     * within the maximum number of steps.
+     * @param utm utm(5,5), as compiled from config/utm_5_5.xml
+     * @param tagsystem the tag system simulated by utm(5,5)
+     * @param input the input word of the tag system
+     * @return the first divergence, or null if every prediction up to the maximum number of steps matches the run
+     * @throws IllegalArgumentException if the input is empty or holds a symbol of no tag system
+     */
+    public Divergence checkPredictor(CompiledTuringMachine utm, TagSystem tagsystem, String input){
+        EncodedProgram program = Encoder.utm5_5_program(tagsystem);
+        Utm55Predictor predictor = new Utm55Predictor(tagsystem, input);
+        try(Engine engine = Engines.create("array", utm.withInput(program.encode(input), program.getHeadIndex()))){
+            while(true){
+                if(predictor.getSteps() > maxSteps)
+                    return null;
+                engine.run(predictor.getSteps() - engine.getStepCount());
+                Checkpoint actual = new Checkpoint(engine, null);
+                String expected = "step " + predictor.getSteps() + ": " + predicted(predictor);
+                if(actual.steps != predictor.getSteps() || engine.isHalted() != (predictor.getState() == -1)
+                        || !actual.configuration.equals(predicted(predictor)))
+                    return new Divergence("predictor", "array", predictor.getSteps(), expected, actual.toString());
+                if(predictor.getOutcome() == Utm55Predictor.Outcome.HALTED)
+                    return null;
+                if(predictor.getOutcome() == Utm55Predictor.Outcome.RUNAWAY){
+                    engine.run(maxSteps - engine.getStepCount());
+                    return engine.isHalted() ? new Divergence("predictor", "array", engine.getStepCount(),
+                            "a runaway", new Checkpoint(engine, null).toString()) : null;
+                }
+                try{
+                    predictor.step();
+                }catch(ArithmeticException e){
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a universal Turing machine registered in {@link Utms} on its encoding of a tag system with the "array"
+     * engine and compares it to the cost the machine predicts. A predicted halt within the maximum number of steps must
+     * happen, after exactly the predicted number of steps if the estimate is exact, and no other run may halt before
+     * the predicted number of steps or the maximum number of steps.
+     * @param utm the machine, as compiled from {@link UtmEncoding#getConfig()}
+     * @param encoding the encoding of tag systems for the machine
+     * @param tagsystem the tag system simulated by the machine
+     * @param input the input word of the tag system
+     * @return the divergence, or null if the run matches the predicted cost
+     * @throws IllegalArgumentException if the machine does not support the tag system, or the input holds an undefined
+     *                                  symbol
+     */
+    public Divergence checkEstimate(CompiledTuringMachine utm, UtmEncoding encoding, TagSystem tagsystem, String input){
+        CostEstimate estimate = encoding.estimate(tagsystem, input, maxSteps);
+        boolean halts = estimate.getOutcome() == CostEstimate.Outcome.HALTS && estimate.getSteps() <= maxSteps;
+        long steps = estimate.getOutcome() == CostEstimate.Outcome.RUNS_AWAY ? maxSteps
+                : Math.min(estimate.getSteps(), maxSteps);
+        try(Engine engine = Engines.create("array", utm.withInput(encoding.encode(tagsystem, input),
+                encoding.getHeadIndex(tagsystem)))){
+            engine.run(steps);
+            boolean matches = halts ? engine.isHalted()
+                    && (!estimate.isExact() || engine.getStepCount() == estimate.getSteps()) : !engine.isHalted();
+            return matches ? null : new Divergence(encoding.getName() + " estimate", "array", engine.getStepCount(),
+                    estimate.toString(), new Checkpoint(engine, null).toString());
+        }
+    }
+
+    private static Configuration predicted(Utm55Predictor predictor){
+        Tape tape = predictor.getTape();
+        return Configuration.turing(predictor.getState(), tape.toString(), tape.headIndex(), tape.getBLANK());
+    }
+
+    private Divergence compare(List<EngineProvider> providers, List<Engine> engines, CompiledMachine program){
+        Engine reference = engines.get(0);
+        Checkpoint agreed = new Checkpoint(reference, null);
+        while(true){
+            List<Checkpoint> checkpoints = new ArrayList<>();
+            for(Engine engine : engines)
+                checkpoints.add(advance(engine, interval));
+
+            Checkpoint expected = checkpoints.get(0);
+            for(int i = 1; i < engines.size(); i++){
+                if(!expected.matches(checkpoints.get(i)))
+                    return locate(providers.get(0), providers.get(i), program, agreed);
+            }
+            if(expected.failure != null || reference.isHalted() || expected.steps >= maxSteps)
+                return null;
+            agreed = expected;
+        }
+    }
+
+    /**
+     * Replays the interval after the last agreed checkpoint one step at a time
+     */
+    private Divergence locate(EngineProvider referenceProvider, EngineProvider provider, CompiledMachine program, Checkpoint agreed){
+        try(Engine reference = referenceProvider.create(program); Engine engine = provider.create(program)){
+            return replay(referenceProvider.getName(), reference, provider.getName(), engine, agreed);
+        }
+    }
+
+    private Divergence replay(String referenceName, Engine reference, String name, Engine engine, Checkpoint agreed){
+        reference.restore(agreed.configuration, agreed.steps);
+        engine.restore(agreed.configuration, agreed.steps);
+        Checkpoint expected = agreed;
+        Checkpoint actual = new Checkpoint(engine, null);
+        for(long i = 0; i < interval && expected.matches(actual); i++){
+            expected = advance(reference, 1);
+            actual = advance(engine, 1);
+        }
+        if(expected.matches(actual)){
+            // the engines only disagree when run by larger amounts of steps at once
+            return new Divergence(referenceName, name, agreed.steps + interval,
+                    "the same configuration when stepped one at a time", "a different configuration when run " + interval + " steps at once");
+        }
+        return new Divergence(referenceName, name, expected.steps, expected.toString(), actual.toString());
+    }
+
+    private static Checkpoint advance(Engine engine, long steps){
+        try{
+            if(!engine.isHalted())
+                engine.run(steps);
+            return new Checkpoint(engine, null);
+        }catch(RuntimeException e){
+            return new Checkpoint(engine, e.getClass().getSimpleName());
+        }
+    }
+
+    private static String abbreviate(String text){
+        return text.length() <= ABBREVIATION ? text : text.substring(0, ABBREVIATION) + "... (" + text.length() + " chars)";
+    }
+
+    /**
+     * Generates a random deterministic Turing machine. A few transitions halt or are left undefined.
+     * @param random source of randomness
+     * @param numStates number of states
+     * @param numSymbols number of symbols, at most 26
+     * @return a random Turing machine on a short random input
+     */
+    public static CompiledTuringMachine randomTuringMachine(Random random, int numStates, int numSymbols){
+        char[] symbols = new char[numSymbols];
+        for(int i = 0; i < numSymbols; i++)
+            symbols[i] = (char) ('a' + i);
+        int size = numStates * numSymbols;
+        int[] nextStates = new int[size];
+        byte[] nextSymbols = new byte[size];
+        byte[] shifts = new byte[size];
+        for(int e = 0; e < size; e++){
+            int roll = random.nextInt(40);
+            if(roll == 0){
+                nextStates[e] = CompiledTuringMachine.UNDEFINED;
+            }else if(roll < 3){
+                nextStates[e] = CompiledTuringMachine.HALT;
+            }else{
+                nextStates[e] = 1 + random.nextInt(numStates);
+                nextSymbols[e] = (byte) random.nextInt(numSymbols);
+                shifts[e] = (byte) (random.nextBoolean() ? 1 : -1);
+            }
+        }
+        byte[] input = new byte[random.nextInt(8)];
+        for(int i = 0; i < input.length; i++)
+            input[i] = (byte) random.nextInt(numSymbols);
+        int head = input.length == 0 ? 0 : random.nextInt(input.length);
+        return new CompiledTuringMachine(symbols, symbols[0], numStates, nextStates, nextSymbols, shifts, input, head);
+    }
+
+    /**
+     * Generates a random deterministic tag system. A few symbols halt.
+     * @param random source of randomness
+     * @param numSymbols number of symbols, at most 26
+     * @param deletionNumber the deletion number
+     * @return a random tag system on a short random word
+     */
+    public static CompiledTagSystem randomTagSystem(Random random, int numSymbols, int deletionNumber){
+        char[] symbols = new char[numSymbols];
+        for(int i = 0; i < numSymbols; i++)
+            symbols[i] = (char) ('a' + i);
+        byte[] types = new byte[numSymbols];
+        int[] offsets = new int[numSymbols + 1];
+        byte[] productions = new byte[numSymbols * (deletionNumber + 2)];
+        for(int s = 0; s < numSymbols; s++){
+            int length = 0;
+            if(random.nextInt(8) == 0){
+                types[s] = CompiledTagSystem.HALT;
+            }else{
+                types[s] = CompiledTagSystem.APPEND;
+                length = random.nextInt(deletionNumber + 3);
+                for(int i = 0; i < length; i++)
+                    productions[offsets[s] + i] = (byte) random.nextInt(numSymbols);
+            }
+            offsets[s + 1] = offsets[s] + length;
+        }
+        byte[] used = new byte[offsets[numSymbols]];
+        System.arraycopy(productions, 0, used, 0, used.length);
+        byte[] input = new byte[1 + random.nextInt(10)];
+        for(int i = 0; i < input.length; i++)
+            input[i] = (byte) random.nextInt(numSymbols);
+        return new CompiledTagSystem(symbols, symbols[0], deletionNumber, types, offsets, used, input);
+    }
+
+    /**
+     * Generates a random tag system encodable for utm(5,5): deletion number 2, symbols '1', '2', ... besides a and
+     * the blank b, which append nothing. A few symbols halt.
+     * @param random source of randomness
+     * @param numSymbols number of symbols besides a and b, at most 9
+     * @return a random tag system on a short random word of at least two symbols
+     */
+    public static CompiledTagSystem randomUtm55TagSystem(Random random, int numSymbols){
+        char[] symbols = new char[numSymbols + 2];
+        for(int i = 0; i < numSymbols; i++)
+            symbols[i] = (char) ('1' + i);
+        symbols[numSymbols] = 'a';
+        symbols[numSymbols + 1] = 'b';
+        byte[] types = new byte[symbols.length];
+        int[] offsets = new int[symbols.length + 1];
+        byte[] productions = new byte[numSymbols * 4];
+        for(int s = 0; s < symbols.length; s++){
+            int length = 0;
+            if(s < numSymbols && random.nextInt(6) == 0){
+                types[s] = CompiledTagSystem.HALT;
+            }else{
+                types[s] = CompiledTagSystem.APPEND;
+                length = s < numSymbols ? random.nextInt(5) : 0;
+                for(int i = 0; i < length; i++)
+                    productions[offsets[s] + i] = (byte) random.nextInt(symbols.length);
+            }
+            offsets[s + 1] = offsets[s] + length;
+        }
+        byte[] used = new byte[offsets[symbols.length]];
+        System.arraycopy(productions, 0, used, 0, used.length);
+        byte[] input = new byte[2 + random.nextInt(7)];
+        for(int i = 0; i < input.length; i++)
+            input[i] = (byte) random.nextInt(numSymbols);
+        return new CompiledTagSystem(symbols, 'b', 2, types, offsets, used, input);
+    }
+
+    public static void main(String[] args){
+        long steps = 100000;
+        long interval = 1000;
+        int randomCases = 200;
+        int predictorCases = -1;
+        long seed = System.nanoTime();
+        List<String> configs = new ArrayList<>();
+        for(int i = 0; i < args.length; i++){
+            switch(args[i]){
+                case "--steps": steps = Long.parseLong(args[++i]); break;
+                case "--interval": interval = Long.parseLong(args[++i]); break;
+                case "--random": randomCases = Integer.parseInt(args[++i]); break;
+                case "--predictor": predictorCases = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default: configs.add(args[i]);
+            }
+        }
+        if(configs.size() != 2){
+            System.err.println("Usage: ConformanceKit [--steps N] [--interval K] [--random R] [--predictor P] [--seed S] <utm config> <tagsystem config>");
+            System.exit(-1);
+        }
+
+        ConformanceKit kit = new ConformanceKit(steps, interval);
+        int failures = 0;
+        CompiledTuringMachine utm = null;
+        Map<UtmEncoding, CompiledTuringMachine> utms = new HashMap<>();
+        try{
+            utm = (CompiledTuringMachine) MachineCompiler.compile(configs.get(0));
+            CompiledTagSystem tagsystem = (CompiledTagSystem) MachineCompiler.compile(configs.get(1));
+            TagSystem machine = TagSystem.buildMachine(tagsystem);
+            String input = Encoder.utm5_5_encode(machine);
+            failures += report(configs.get(1), kit.check(tagsystem));
+            failures += report(configs.get(0), kit.check(utm.withInput(input, input.lastIndexOf("bbb") + 3)));
+            if(predictorCases >= 0){
+                for(UtmEncoding encoding : Utms.encodings())
+                    utms.put(encoding, (CompiledTuringMachine) MachineCompiler.compile(encoding.getConfig()));
+                failures += report("prediction of " + configs.get(1),
+                        kit.checkPredictor(utm, machine, machine.getInput_tape().toString()));
+                failures += checkEstimates(kit, utms, configs.get(1), machine);
+            }
+        }catch(MachineFormatException | ClassCastException e){
+            System.err.println("Invalid config files: " + e.getMessage());
+            System.exit(-1);
+        }
+
+        Random random = new Random(seed);
+        for(int i = 0; i < predictorCases; i++){
+            TagSystem machine = TagSystem.buildMachine(randomUtm55TagSystem(random, 2 + random.nextInt(4)));
+            failures += report("prediction of random tag system " + i + " (seed " + seed + ")",
+                    kit.checkPredictor(utm, machine, machine.getInput_tape().toString()));
+            failures += checkEstimates(kit, utms, "random tag system " + i + " (seed " + seed + ")", machine);
+        }
+
+        ConformanceKit randomKit = new ConformanceKit(Math.min(steps, 10000), Math.min(interval, 100));
+        for(int i = 0; i < randomCases; i++){
+            CompiledTuringMachine tm = randomTuringMachine(random, 2 + random.nextInt(4), 2 + random.nextInt(4));
+            failures += report("random Turing machine " + i + " (seed " + seed + ")", randomKit.check(tm));
+            CompiledTagSystem tag = randomTagSystem(random, 2 + random.nextInt(4), 1 + random.nextInt(3));
+            failures += report("random tag system " + i + " (seed " + seed + ")", randomKit.check(tag));
+        }
+
+        System.out.println(failures == 0 ? "All engines agree" : failures + " divergences found");
+        if(failures != 0)
+            System.exit(1);
+    }
+
+    private static int checkEstimates(ConformanceKit kit, Map<UtmEncoding, CompiledTuringMachine> utms, String name,
+                                      TagSystem machine){
+        int failures = 0;
+        for(Map.Entry<UtmEncoding, CompiledTuringMachine> entry : utms.entrySet()){
+            if(entry.getKey().supports(machine))
+                failures += report(entry.getKey().getName() + " estimate of " + name, kit.checkEstimate(entry.getValue(),
+                        entry.getKey(), machine, machine.getInput_tape().toString()));
+        }
+        return failures;
+    }
+
+    private static int report(String name, Divergence divergence){
+        if(divergence == null)
+            return 0;
+        System.out.println("FAIL " + name + ": " + divergence);
+        return 1;
+    }
+}
@@ -0,0 +1,94 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+
+/**
+ * An execution engine running a compiled machine.
+ *
+ * <p>Engines differ in how they store the tape or word and how many steps they apply at once, but they all share
+ * this contract, so that they are interchangeable and can be checked against each other:</p>
+ * <ul>
+ *     <li>a step is counted for every transition executed, including the halting one,</li>
+ *     <li>{@link #run(long)} never executes more steps than asked,</li>
+ *     <li>reading a symbol without any transition throws {@link UnsupportedOperationException} without counting a step,</li>
+ *     <li>{@link #inspect()} returns the same {@link Configuration} for every engine after the same number of steps.</li>
+ * </ul>
+ */
+public interface Engine extends AutoCloseable {
+
+    /**
+     * Returns the name the engine is registered with in {@link Engines}
+     * @return the name of the engine
+     */
+    String getName();
+
+    /**
+     * Returns the machine run by this engine
+     * @return the machine run by this engine
+     */
+    CompiledMachine getProgram();
+
+    /**
+     * Returns whether the machine has halted
+     * @return whether the machine has halted
+     */
+    boolean isHalted();
+
+    /**
+     * Returns the number of steps executed, including the halting step
+     * @return the number of steps executed
+     */
+    long getStepCount();
+
+    /**
+     * Returns the number of cells of the tape, or symbols of the word, currently held by the engine
+     * @return the number of cells held, -1 if the engine does not report it
+     */
+    default long getCellCount(){
+        return -1;
+    }
+
+    /**
+     * Returns an estimate of the memory held by the tape or word in bytes, including unused capacity
+     * @return the estimated memory held, -1 if the engine does not report it
+     */
+    default long getFootprint(){
+        return -1;
+    }
+
+    /**
+     * Runs the machine for one step.
+     * @throws IllegalStateException if the machine already halted.
+     * @throws UnsupportedOperationException if no transition is defined for the current configuration
+     */
+    void step() throws IllegalStateException, UnsupportedOperationException;
+
+    /**
+     * Runs the machine until it halts or the given number of steps is executed.
+     * @param maxSteps maximum number of steps to execute
+     * @return the number of steps executed
+     * @throws UnsupportedOperationException if no transition is defined for a reached configuration
+     */
+    long run(long maxSteps) throws UnsupportedOperationException;
+
+    /**
+     * Returns the canonical configuration of the machine
+     * @return the canonical configuration of the machine
+     */
+    Configuration inspect();
+
+    /**
+     * Replaces the configuration of the machine, for example to continue a run started by another engine.
+     * @param configuration the new configuration
+     * @param stepCount the number of steps already executed to reach the configuration
+     * @throws IllegalArgumentException if the configuration does not belong to this kind of machine
+     */
+    void restore(Configuration configuration, long stepCount) throws IllegalArgumentException;
+
+    /**
+     * Releases the resources held by the engine, such as spill files. The engine must not be used afterwards.
+     */
+    @Override
+    default void close(){
+    }
+}
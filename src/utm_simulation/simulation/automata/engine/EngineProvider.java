@@ -0,0 +1,31 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+
+/**
+ * Creates engines of a given name. Providers are registered in {@link Engines}, either built in
+ * or listed in META-INF/services/utm_simulation.simulation.automata.engine.EngineProvider.
+ */
+public interface EngineProvider {
+
+    /**
+     * Returns the name of the engines created by this provider
+     * @return the name of the engines created by this provider
+     */
+    String getName();
+
+    /**
+     * Returns whether this provider can run given machine
+     * @param program the machine to run
+     * @return whether this provider can run given machine
+     */
+    boolean supports(CompiledMachine program);
+
+    /**
+     * Creates an engine in the initial configuration of given machine
+     * @param program the machine to run
+     * @return a new engine
+     * @throws IllegalArgumentException if the machine is not supported
+     */
+    Engine create(CompiledMachine program) throws IllegalArgumentException;
+}
@@ -0,0 +1,168 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Registry of the available engines.
+ *
+ * <p>Built in engines for Turing machines are "reference", "array" and "rle",
+ * and for tag systems "reference", "array", "memoized", "rope", "parallel" and "mapped", which spills the word to disk. The "adaptive" engine of both kinds
+ * migrates a run between the others depending on its statistics.
+ * Additional engines are discovered with {@link ServiceLoader} or added with {@link #register(EngineProvider)}.</p>
+ */
+public final class Engines {
+
+    /** System property selecting the engine used when no name is given. */
+    public static final String ENGINE_PROPERTY = "utm.engine";
+    public static final String DEFAULT_ENGINE = "reference";
+
+    /**
+     * Provider of an engine shipped with this library.
+     */
+    private static final class BuiltinProvider implements EngineProvider{
+        private final String name;
+        private final CompiledMachine.Kind kind;
+        private final Function<CompiledMachine, Engine> factory;
+
+        private BuiltinProvider(String name, CompiledMachine.Kind kind, Function<CompiledMachine, Engine> factory){
+            this.name = name;
+            this.kind = kind;
+            this.factory = factory;
+        }
+
+        @Override
+        public String getName(){
+            return name;
+        }
+
+        @Override
+        public boolean supports(CompiledMachine program){
+            return program.getKind() == kind;
+        }
+
+        @Override
+        public Engine create(CompiledMachine program){
+            if(!supports(program))
+                throw new IllegalArgumentException("Engine " + name + " does not support " + program.getKind());
+            return factory.apply(program);
+        }
+    }
+
+    private static final List<EngineProvider> PROVIDERS = new CopyOnWriteArrayList<>();
+
+    static{
+        CompiledMachine.Kind tm = CompiledMachine.Kind.TURING_MACHINE;
+        CompiledMachine.Kind tag = CompiledMachine.Kind.TAG_SYSTEM;
+        PROVIDERS.add(new BuiltinProvider("reference", tm, p -> new ReferenceTuringEngine((CompiledTuringMachine) p)));
+        PROVIDERS.add(new BuiltinProvider("array", tm, p -> new ArrayTuringEngine((CompiledTuringMachine) p)));
+        PROVIDERS.add(new BuiltinProvider("rle", tm, p -> new RleTuringEngine((CompiledTuringMachine) p)));
+        PROVIDERS.add(new BuiltinProvider("reference", tag, p -> new ReferenceTagEngine((CompiledTagSystem) p)));
+        PROVIDERS.add(new BuiltinProvider("array", tag, p -> new ArrayTagEngine((CompiledTagSystem) p)));
+        PROVIDERS.add(new BuiltinProvider("memoized", tag, p -> new MemoizedTagEngine((CompiledTagSystem) p)));
+        PROVIDERS.add(new BuiltinProvider("rope", tag, p -> new RopeTagEngine((CompiledTagSystem) p)));
+        PROVIDERS.add(new BuiltinProvider("mapped", tag, p -> new ArrayTagEngine((CompiledTagSystem) p, "mapped", MappedTagWord.create())));
+        PROVIDERS.add(new BuiltinProvider("parallel", tag, p -> new ParallelTagEngine((CompiledTagSystem) p)));
+        PROVIDERS.add(new BuiltinProvider("adaptive", tm, AdaptiveEngine::new));
+        PROVIDERS.add(new BuiltinProvider("adaptive", tag, AdaptiveEngine::new));
+        for(EngineProvider provider : ServiceLoader.load(EngineProvider.class))
+            PROVIDERS.add(provider);
+    }
+
+    private Engines(){}
+
+    /**
+     * Registers an additional engine provider
+     * @param provider the provider to register
+     */
+    public static void register(EngineProvider provider){
+        PROVIDERS.add(provider);
+    }
+
+    /**
+     * Returns every registered provider
+     * @return every registered provider
+     */
+    public static List<EngineProvider> providers(){
+        return new ArrayList<>(PROVIDERS);
+    }
+
+    /**
+     * Returns every registered provider supporting given machine
+     * @param program the machine to run
+     * @return every provider supporting given machine, in registration order
+     */
+    public static List<EngineProvider> providers(CompiledMachine program){
+        List<EngineProvider> result = new ArrayList<>();
+        for(EngineProvider provider : PROVIDERS){
+            if(provider.supports(program))
+                result.add(provider);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the engine selected by the {@value #ENGINE_PROPERTY} system property
+     * @return the name of the default engine
+     */
+    public static String defaultName(){
+        return System.getProperty(ENGINE_PROPERTY, DEFAULT_ENGINE);
+    }
+
+    /**
+     * Creates the default engine for given machine
+     * @param program the machine to run
+     * @return a new engine
+     * @throws IllegalArgumentException if the default engine does not support the machine
+     */
+    public static Engine create(CompiledMachine program){
+        return create(defaultName(), program);
+    }
+
+    /**
+     * Creates an engine of given name for given machine. While a flight recording is interested in
+     * {@link utm_simulation.simulation.monitor.RunEvent run events}, the engine reports its run to it
+     * until it is closed.
+     * @param name name of the engine
+     * @param program the machine to run
+     * @return a new engine
+     * @throws IllegalArgumentException if no engine of that name supports the machine
+     */
+    public static Engine create(String name, CompiledMachine program){
+        return RecordingEngine.wrap(createUnrecorded(name, program));
+    }
+
+    /**
+     * Creates an engine of given name whose run is held to a memory quota
+     * @param name name of the engine
+     * @param program the machine to run
+     * @param quota the memory quota of the run, shared budget included
+     * @return a new engine, throwing {@link QuotaExceededException} once the run holds too much memory
+     * @throws IllegalArgumentException if no engine of that name supports the machine
+     */
+    public static Engine create(String name, CompiledMachine program, MemoryQuota quota){
+        return quota.apply(create(name, program));
+    }
+
+    /**
+     * Creates an engine of given name which never reports to the flight recorder, for engines running others
+     * @param name name of the engine
+     * @param program the machine to run
+     * @return a new engine
+     * @throws IllegalArgumentException if no engine of that name supports the machine
+     */
+    static Engine createUnrecorded(String name, CompiledMachine program){
+        for(EngineProvider provider : PROVIDERS){
+            if(provider.getName().equals(name) && provider.supports(program))
+                return provider.create(program);
+        }
+        throw new IllegalArgumentException("No engine named " + name + " supports " + program.getKind());
+    }
+}
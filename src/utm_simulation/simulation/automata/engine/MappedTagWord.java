@@ -0,0 +1,361 @@
+package utm_simulation.simulation.automata.engine;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A tag system word stored in a log of memory mapped segment files, for words larger than the heap.
+ *
+ * <p>Symbols are written sequentially into the tail segment and read sequentially from the head segment.
+ * Only those two segments stay mapped, segments in between are kept on disk, and a segment consumed entirely is
+ * recycled as the next tail segment or deleted. Memory use therefore stays constant however long the word grows,
+ * while both ends are accessed at the speed of sequential memory access.</p>
+ *
+ * <p>The segment files live in a private directory which is removed by {@link #close()}.</p>
+ */
+public class MappedTagWord implements TagWord, Closeable {
+
+    /** System property naming the directory in which spill directories are created. */
+    public static final String DIRECTORY_PROPERTY = "utm.spill.directory";
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    /** Segments smaller than a page would waste a mapping on a few symbols. */
+    public static final int MIN_SEGMENT_SIZE = 4096;
+
+    /**
+     * A segment file holding the symbols between readPosition and writePosition.
+     */
+    private static final class Segment{
+        private final Path path;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+
+        private Segment(Path path, FileChannel channel){
+            this.path = path;
+            this.channel = channel;
+        }
+
+        private int available(){
+            return writePosition - readPosition;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private Segment spare;
+    private long length;
+    private int created;
+    private boolean closed;
+
+    /**
+     * Creates an empty word spilling into a new directory under the {@value #DIRECTORY_PROPERTY} directory,
+     * or the temporary directory if the property is not set.
+     * @return an empty word
+     * @throws UncheckedIOException if the directory cannot be created
+     */
+    public static MappedTagWord create(){
+        return create(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates an empty word with segments of given size, spilling into a new directory under the
+     * {@value #DIRECTORY_PROPERTY} directory, or the temporary directory if the property is not set.
+     * @param segmentSize size of a segment file in bytes
+     * @return an empty word
+     * @throws UncheckedIOException if the directory cannot be created
+     * @throws IllegalArgumentException if the segment size is smaller than {@value #MIN_SEGMENT_SIZE}
+     */
+    public static MappedTagWord create(int segmentSize){
+        String parent = System.getProperty(DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir"));
+        return new MappedTagWord(Paths.get(parent), segmentSize);
+    }
+
+    /**
+     * Creates an empty word
+     * @param parent directory in which the private directory of the segments is created
+     * @param segmentSize size of a segment file in bytes
+     * @throws UncheckedIOException if the directory cannot be created
+     * @throws IllegalArgumentException if the segment size is smaller than {@value #MIN_SEGMENT_SIZE}
+     */
+    public MappedTagWord(Path parent, int segmentSize){
+        if(segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_SIZE);
+        this.segmentSize = segmentSize;
+        try{
+            this.directory = Files.createTempDirectory(parent, "tagword");
+        }catch(IOException e){
+            throw new UncheckedIOException("Cannot create spill directory in " + parent, e);
+        }
+    }
+
+    /**
+     * Returns the directory holding the segment files
+     * @return the directory holding the segment files
+     */
+    public Path getDirectory(){
+        return directory;
+    }
+
+    /**
+     * Returns the number of segment files currently holding symbols
+     * @return the number of segment files in use
+     */
+    public int getSegmentCount(){
+        return segments.size();
+    }
+
+    @Override
+    public long length(){
+        return length;
+    }
+
+    /**
+     * Returns the size of the segments mapped at once, which live outside of the heap. Segments between the head and
+     * the tail only take disk space and are not counted.
+     * @return the size of the mapped segments in bytes
+     */
+    @Override
+    public long getFootprint(){
+        return (long) (Math.min(segments.size(), 2) + (spare == null ? 0 : 1)) * segmentSize;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return length == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int get(int offset){
+        if(offset < 0 || offset >= length)
+            throw new IndexOutOfBoundsException("offset: " + offset + " is out of bounds");
+        Iterator<Segment> iterator = segments.iterator();
+        long remaining = offset;
+        while(true){
+            Segment segment = iterator.next();
+            if(remaining < segment.available())
+                return read(segment, segment.readPosition + (int) remaining);
+            remaining -= segment.available();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drop(int count){
+        long remaining = Math.min(count, length);
+        length -= remaining;
+        while(remaining > 0){
+            Segment head = segments.peekFirst();
+            if(remaining < head.available()){
+                head.readPosition += (int) remaining;
+                return;
+            }
+            remaining -= head.available();
+            head.readPosition = head.writePosition;
+            if(segments.size() > 1){
+                segments.pollFirst();
+                retire(head);
+                map(segments.peekFirst());
+            }
+        }
+        if(length == 0 && !segments.isEmpty()){
+            Segment only = segments.peekFirst();
+            only.readPosition = 0;
+            only.writePosition = 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void append(int symbol){
+        Segment tail = writableTail();
+        tail.buffer.put(tail.writePosition++, (byte) symbol);
+        length++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void append(byte[] word, int offset, int length){
+        while(length > 0){
+            Segment tail = writableTail();
+            int count = Math.min(length, segmentSize - tail.writePosition);
+            tail.buffer.put(tail.writePosition, word, offset, count);
+            tail.writePosition += count;
+            offset += count;
+            length -= count;
+            this.length += count;
+        }
+    }
+
+    @Override
+    public void clear(){
+        while(length > 0)
+            drop((int) Math.min(Integer.MAX_VALUE, length));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] toArray(){
+        if(length > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Word is too long to be copied into an array");
+        byte[] result = new byte[(int) length];
+        int position = 0;
+        for(Segment segment : segments){
+            ByteBuffer source = segment.buffer != null ? segment.buffer.duplicate() : readAll(segment);
+            source.position(segment.readPosition).limit(segment.writePosition);
+            int count = source.remaining();
+            source.get(result, position, count);
+            position += count;
+        }
+        return result;
+    }
+
+    /**
+     * Deletes every segment file and the directory holding them.
+     */
+    @Override
+    public void close(){
+        if(closed)
+            return;
+        closed = true;
+        try{
+            for(Segment segment : segments)
+                delete(segment);
+            segments.clear();
+            if(spare != null)
+                delete(spare);
+            spare = null;
+            Files.deleteIfExists(directory);
+            length = 0;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*Segment management*/
+
+    /**
+     * Returns the tail segment, starting a new one if it is full
+     */
+    private Segment writableTail(){
+        if(closed)
+            throw new IllegalStateException("Word is closed");
+        Segment tail = segments.peekLast();
+        if(tail != null && tail.writePosition < segmentSize)
+            return tail;
+        if(tail != null && segments.size() == 1 && tail.available() == 0){
+            tail.readPosition = 0;
+            tail.writePosition = 0;
+            return tail;
+        }
+        if(tail != null && segments.size() > 1)
+            tail.buffer = null; // only the head and the tail stay mapped
+        Segment next = spare != null ? spare : newSegment();
+        spare = null;
+        next.readPosition = 0;
+        next.writePosition = 0;
+        map(next);
+        segments.addLast(next);
+        return next;
+    }
+
+    private Segment newSegment(){
+        Path path = directory.resolve("segment" + (created++));
+        try{
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel);
+        }catch(IOException e){
+            throw new UncheckedIOException("Cannot create segment file " + path, e);
+        }
+    }
+
+    private void map(Segment segment){
+        if(segment.buffer != null)
+            return;
+        try{
+            segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }catch(IOException e){
+            throw new UncheckedIOException("Cannot map segment file " + segment.path, e);
+        }
+    }
+
+    /**
+     * Recycles a consumed segment as the next tail segment, or deletes it if there already is one
+     */
+    private void retire(Segment segment){
+        if(spare == null){
+            spare = segment;
+        }else{
+            try{
+                delete(segment);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void delete(Segment segment) throws IOException{
+        segment.buffer = null;
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+    }
+
+    private int read(Segment segment, int position){
+        if(segment.buffer != null)
+            return segment.buffer.get(position) & 0xFF;
+        try{
+            ByteBuffer one = ByteBuffer.allocate(1);
+            readFully(segment, one, position);
+            return one.get(0) & 0xFF;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer readAll(Segment segment){
+        try{
+            ByteBuffer buffer = ByteBuffer.allocate(segment.writePosition);
+            readFully(segment, buffer, 0);
+            buffer.clear();
+            return buffer;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Fills given buffer from the segment file, a read being allowed to return fewer bytes than asked for
+     * @throws EOFException if the file ends before the buffer is full
+     */
+    private static void readFully(Segment segment, ByteBuffer buffer, long position) throws IOException{
+        while(buffer.hasRemaining()){
+            int read = segment.channel.read(buffer, position);
+            if(read < 0)
+                throw new EOFException("Segment file " + segment.path + " ends at " + position);
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs a compiled tag system several steps at a time.
+ *
+ * <p>With deletion number m, the next k steps of a word of at least k * m symbols read the symbols at
+ * offsets 0, m, ..., (k - 1) * m and nothing else, so their combined effect only depends on those k symbols.
+ * The effect of such a block (the concatenated productions and whether a halt is met on the way) is computed once,
+ * kept in a bounded LRU cache and then applied with a single bulk append and a single deletion.</p>
+ *
+ * <p>The result is exactly the one of {@link utm_simulation.simulation.automata.TagSystem}, including the step count,
+ * the halt on a HALT symbol inside a block, and a word consumed entirely being replaced by a single blank.</p>
+ */
+public class MemoizedTagEngine implements Engine {
+
+    /**
+     * The combined effect of a block of steps.
+     */
+    private static final class Block{
+        private final byte[] output;
+        private final int steps;
+        private final byte stop;
+
+        private Block(byte[] output, int steps, byte stop){
+            this.output = output;
+            this.steps = steps;
+            this.stop = stop;
+        }
+    }
+
+    public static final int DEFAULT_BLOCK_STEPS = 8;
+    public static final int DEFAULT_CACHE_CAPACITY = 1 << 16;
+
+    private final CompiledTagSystem program;
+    private final int deletionNumber;
+    private final int blank;
+    private final byte[] types;
+    private final int[] offsets;
+    private final byte[] productions;
+    private final int blockSteps;
+    private final int bits;
+    private final LinkedHashMap<Long, Block> cache;
+
+    private SymbolQueue word;
+    private boolean halted;
+    private long steps;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates an engine with the default block size and cache capacity
+     * @param program tag system to run
+     */
+    public MemoizedTagEngine(CompiledTagSystem program){
+        this(program, DEFAULT_BLOCK_STEPS, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Creates an engine for given tag system, starting with its input word.
+     * @param program tag system to run
+     * @param blockSteps number of steps applied at once. Lowered if the read symbols of a block do not fit in a long key.
+     * @param cacheCapacity maximum number of blocks kept in the cache
+     * @throws IllegalArgumentException if blockSteps or cacheCapacity is not positive
+     */
+    public MemoizedTagEngine(CompiledTagSystem program, int blockSteps, int cacheCapacity){
+        if(blockSteps <= 0 || cacheCapacity <= 0)
+            throw new IllegalArgumentException("Block steps and cache capacity must be positive");
+        this.program = program;
+        this.deletionNumber = program.getDeletionNumber();
+        this.blank = program.getBlankIndex();
+        this.types = program.getTypes();
+        this.offsets = program.getOffsets();
+        this.productions = program.getProductions();
+        this.bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(program.getNumSymbols() - 1));
+        this.blockSteps = Math.min(blockSteps, Long.SIZE / bits);
+        this.cache = new LinkedHashMap<Long, Block>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest){
+                return size() > cacheCapacity;
+            }
+        };
+        reset(program.getInput());
+    }
+
+    /**
+     * Resets the engine with a new word. The cache is kept since it only depends on the tag system.
+     * @param input new word as symbol indices
+     */
+    public void reset(byte[] input){
+        word = new SymbolQueue(input);
+        if(word.isEmpty())
+            word.append(blank);
+        halted = false;
+        steps = 0;
+    }
+
+    @Override
+    public String getName(){
+        return "memoized";
+    }
+
+    @Override
+    public CompiledTagSystem getProgram(){
+        return program;
+    }
+
+    /**
+     * Returns the number of steps applied at once
+     * @return the number of steps applied at once
+     */
+    public int getBlockSteps(){
+        return blockSteps;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return halted;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    public long getCacheHits(){
+        return hits;
+    }
+
+    public long getCacheMisses(){
+        return misses;
+    }
+
+    /**
+     * Returns the number of symbols in the current word
+     * @return the number of symbols in the current word
+     */
+    public int getWordLength(){
+        return word.size();
+    }
+
+    @Override
+    public long getCellCount(){
+        return word.size();
+    }
+
+    @Override
+    public long getFootprint(){
+        return word.getFootprint();
+    }
+
+    @Override
+    public Configuration inspect(){
+        return Configuration.tag(halted, getWord());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TAG_SYSTEM)
+            throw new IllegalArgumentException("Not a tag system configuration");
+        reset(program.encode(configuration.getCells()));
+        halted = configuration.isHalted();
+        steps = stepCount;
+    }
+
+    /**
+     * Returns the current word as a String of symbols
+     * @return the current word
+     */
+    public String getWord(){
+        byte[] content = word.toArray();
+        return program.decode(content, 0, content.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(halted)
+            throw new IllegalStateException("The machine has already terminated.");
+        int symbol = word.get(0);
+        switch(types[symbol]){
+            case CompiledTagSystem.APPEND:
+                word.append(productions, offsets[symbol], offsets[symbol + 1] - offsets[symbol]);
+                delete(1);
+                steps++;
+                break;
+            case CompiledTagSystem.HALT:
+                halted = true;
+                steps++;
+                break;
+            default:
+                throw new UnsupportedOperationException("The machine currently requires a choice to proceed");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        int blockLength = blockSteps * deletionNumber;
+        while(!halted && done < maxSteps){
+            if(maxSteps - done >= blockSteps && word.size() >= blockLength){
+                Block block = lookup();
+                word.append(block.output, 0, block.output.length);
+                delete(block.steps);
+                steps += block.steps;
+                done += block.steps;
+                if(block.stop == CompiledTagSystem.HALT){
+                    halted = true;
+                    steps++;
+                    done++;
+                }else if(block.stop == CompiledTagSystem.UNDEFINED){
+                    throw new UnsupportedOperationException("The machine currently requires a choice to proceed");
+                }
+            }else{
+                step();
+                done++;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Deletes the symbols read by given number of steps, replacing an emptied word by a blank
+     */
+    private void delete(int count){
+        word.drop(count * deletionNumber);
+        if(word.isEmpty())
+            word.append(blank);
+    }
+
+    private Block lookup(){
+        long key = 0;
+        for(int j = 0; j < blockSteps; j++)
+            key = (key << bits) | word.get(j * deletionNumber);
+
+        Block block = cache.get(key);
+        if(block != null){
+            hits++;
+            return block;
+        }
+        misses++;
+        block = compose(key);
+        cache.put(key, block);
+        return block;
+    }
+
+    /**
+     * Computes the combined effect of the block whose read symbols are packed in given key
+     */
+    private Block compose(long key){
+        int length = 0;
+        byte[] output = new byte[16];
+        long mask = (1L << bits) - 1;
+        for(int j = 0; j < blockSteps; j++){
+            int symbol = (int) ((key >>> ((blockSteps - 1 - j) * bits)) & mask);
+            if(types[symbol] != CompiledTagSystem.APPEND)
+                return new Block(Arrays.copyOf(output, length), j, types[symbol]);
+            int production = offsets[symbol + 1] - offsets[symbol];
+            if(length + production > output.length)
+                output = Arrays.copyOf(output, Math.max(output.length * 2, length + production));
+            System.arraycopy(productions, offsets[symbol], output, length, production);
+            length += production;
+        }
+        return new Block(Arrays.copyOf(output, length), blockSteps, (byte) -1);
+    }
+}
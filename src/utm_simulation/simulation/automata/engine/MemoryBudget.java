@@ -0,0 +1,112 @@
+package utm_simulation.simulation.automata.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory budget shared by concurrent runs, so that the process as a whole stays within a bound.
+ *
+ * <p>Every run opens an {@link Account} and reports the memory it holds after each slice. The run whose growth takes
+ * the total over the limit is told so and applies the action of its {@link MemoryQuota}, while runs which did not
+ * grow are left alone. The total can overshoot the limit by what the runs grew during their last slice. All methods
+ * are safe to call from several threads.</p>
+ */
+public final class MemoryBudget {
+
+    /**
+     * The share of the budget held by one run
+     */
+    public final class Account implements AutoCloseable {
+        private long bytes;
+
+        private Account(){
+        }
+
+        /**
+         * Returns the memory last reported by the run
+         * @return the memory held by the run in bytes
+         */
+        public synchronized long getBytes(){
+            return bytes;
+        }
+
+        /**
+         * Reports the memory currently held by the run
+         * @param bytes the memory held by the run in bytes
+         * @return false if the run grew and the total is now over the limit
+         * @throws IllegalStateException if the account is closed
+         */
+        public synchronized boolean update(long bytes){
+            if(this.bytes < 0)
+                throw new IllegalStateException("The account is closed");
+            long total = used.addAndGet(bytes - this.bytes);
+            boolean grew = bytes > this.bytes;
+            this.bytes = bytes;
+            return !grew || total <= limit;
+        }
+
+        /**
+         * Releases the memory held by the run
+         */
+        @Override
+        public synchronized void close(){
+            if(bytes < 0)
+                return;
+            used.addAndGet(-bytes);
+            bytes = -1;
+            accounts.decrementAndGet();
+        }
+    }
+
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicInteger accounts = new AtomicInteger();
+
+    /**
+     * Creates a budget
+     * @param limit maximum memory held by all the runs together in bytes
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public MemoryBudget(long limit){
+        if(limit <= 0)
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        this.limit = limit;
+    }
+
+    /**
+     * Opens the account of a new run, holding no memory yet
+     * @return the account of the run
+     */
+    public Account open(){
+        accounts.incrementAndGet();
+        return new Account();
+    }
+
+    public long getLimit(){
+        return limit;
+    }
+
+    /**
+     * Returns the memory held by all the runs together
+     * @return the memory held in bytes
+     */
+    public long getUsed(){
+        return used.get();
+    }
+
+    /**
+     * Returns the memory left before the limit is reached
+     * @return the memory left in bytes, 0 if the limit is exceeded
+     */
+    public long getAvailable(){
+        return Math.max(0, limit - used.get());
+    }
+
+    /**
+     * Returns the number of open accounts
+     * @return the number of runs sharing the budget
+     */
+    public int getAccounts(){
+        return accounts.get();
+    }
+}
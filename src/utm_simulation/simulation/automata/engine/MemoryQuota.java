@@ -0,0 +1,60 @@
+package utm_simulation.simulation.automata.engine;
+
+/**
+ * Limits the memory held by the tape or word of a run, and chooses what happens to the run once it holds more.
+ *
+ * <p>Actions taken once the quota or the shared {@link MemoryBudget} is exceeded are</p>
+ * <ul>
+ *     <li>ABORT: the run stops with a {@link QuotaExceededException} and cannot continue.</li>
+ *     <li>COMPRESS: the run moves to the "rle" engine for Turing machines or to a disk backed word for tag systems,
+ *     and is aborted if it still holds too much memory there.</li>
+ *     <li>PAUSE: the run stops with a paused {@link QuotaExceededException} and can continue once memory is
+ *     available again.</li>
+ * </ul>
+ * <p>The memory of a run is the {@link Engine#getFootprint()} of its engine. Engines which do not report it are
+ * not limited.</p>
+ */
+public final class MemoryQuota {
+
+    public enum Action{ABORT, COMPRESS, PAUSE}
+
+    private final long limit;
+    private final Action action;
+    private final MemoryBudget budget;
+
+    /**
+     * Creates a quota
+     * @param limit maximum memory held by a single run in bytes
+     * @param action what happens to a run exceeding the quota
+     * @param budget budget shared with other runs, null if the run is only limited by its own quota
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public MemoryQuota(long limit, Action action, MemoryBudget budget){
+        if(limit <= 0)
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        this.limit = limit;
+        this.action = action;
+        this.budget = budget;
+    }
+
+    public long getLimit(){
+        return limit;
+    }
+
+    public Action getAction(){
+        return action;
+    }
+
+    public MemoryBudget getBudget(){
+        return budget;
+    }
+
+    /**
+     * Wraps an engine so that its run is held to this quota. The wrapper owns the engine and closes it.
+     * @param engine the engine to limit
+     * @return the limited engine
+     */
+    public Engine apply(Engine engine){
+        return new QuotaEngine(engine, this);
+    }
+}
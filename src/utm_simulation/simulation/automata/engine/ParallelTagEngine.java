@@ -0,0 +1,287 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Engine processing a whole generation of a compiled tag system at once on a fork/join pool.
+ *
+ * <p>With deletion number m and current word w, the next ceil(|w| / m) steps read the symbols of w at offsets
+ * 0, m, 2m, ... and their productions are appended behind them, so they can be computed independently.
+ * The reads are split into chunks. A first parallel pass measures the productions of each chunk and finds the first
+ * halting symbol, a prefix sum gives the position of each chunk in the next word, and a second parallel pass copies
+ * the productions there. The first halting symbol in read order stops the run at the exact step.</p>
+ *
+ * <p>Short words are processed one step at a time, since they do not pay for the synchronization.</p>
+ */
+public class ParallelTagEngine implements Engine {
+
+    public static final int DEFAULT_THRESHOLD = 1 << 15;
+    private static final int MIN_CHUNK_READS = 1 << 12;
+
+    /**
+     * Runs a consumer on every chunk index of a range, splitting the range between the workers of the pool.
+     */
+    private static final class ChunkTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient IntConsumer body;
+
+        private ChunkTask(int from, int to, IntConsumer body){
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from == 1){
+                body.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(from, middle, body), new ChunkTask(middle, to, body));
+        }
+    }
+
+    private final CompiledTagSystem program;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int deletionNumber;
+    private final int blank;
+    private final byte[] types;
+    private final int[] offsets;
+    private final byte[] productions;
+
+    private final SymbolQueue word = new SymbolQueue();
+    private boolean halted;
+    private long steps;
+    private long generations;
+
+    public ParallelTagEngine(CompiledTagSystem program){
+        this(program, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a parallel engine
+     * @param program tag system to run
+     * @param pool pool processing the generations
+     * @param threshold minimum word length processed as a parallel generation
+     */
+    public ParallelTagEngine(CompiledTagSystem program, ForkJoinPool pool, int threshold){
+        this.program = program;
+        this.pool = pool;
+        this.threshold = Math.max(threshold, 1);
+        this.deletionNumber = program.getDeletionNumber();
+        this.blank = program.getBlankIndex();
+        this.types = program.getTypes();
+        this.offsets = program.getOffsets();
+        this.productions = program.getProductions();
+        load(program.getInput(), false);
+    }
+
+    @Override
+    public String getName(){
+        return "parallel";
+    }
+
+    @Override
+    public CompiledTagSystem getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return halted;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    /**
+     * Returns the number of generations processed in parallel
+     * @return the number of generations processed in parallel
+     */
+    public long getGenerations(){
+        return generations;
+    }
+
+    public int getWordLength(){
+        return word.size();
+    }
+
+    @Override
+    public long getCellCount(){
+        return word.size();
+    }
+
+    @Override
+    public long getFootprint(){
+        return word.getFootprint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(halted)
+            throw new IllegalStateException("The machine has already terminated.");
+        stepOnce();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(!halted && done < maxSteps){
+            if(word.size() >= threshold){
+                done += generation(maxSteps - done);
+            }else{
+                stepOnce();
+                done++;
+            }
+        }
+        return done;
+    }
+
+    private void stepOnce(){
+        int symbol = word.get(0);
+        byte type = types[symbol];
+        if(type == CompiledTagSystem.HALT){
+            halted = true;
+        }else if(type == CompiledTagSystem.APPEND){
+            word.append(productions, offsets[symbol], offsets[symbol + 1] - offsets[symbol]);
+            word.drop(deletionNumber);
+            if(word.isEmpty())
+                word.append(blank);
+        }else{
+            throw new UnsupportedOperationException("The machine currently requires a choice to proceed");
+        }
+        steps++;
+    }
+
+    /**
+     * Processes the reads of the current word, at most maxSteps of them, and returns the number of steps executed
+     */
+    private long generation(long maxSteps){
+        byte[] source = word.array();
+        int start = word.start();
+        int size = word.size();
+        int m = deletionNumber;
+        int reads = (int) Math.min((size + (long) m - 1) / m, maxSteps);
+        int chunkReads = Math.max(MIN_CHUNK_READS, reads / (pool.getParallelism() * 4));
+        int chunks = (reads + chunkReads - 1) / chunkReads;
+
+        // first pass: output length of every chunk and first read without an appending rule
+        long[] lengths = new long[chunks];
+        int[] stops = new int[chunks];
+        pool.invoke(new ChunkTask(0, chunks, c -> {
+            int from = c * chunkReads;
+            int to = Math.min(reads, from + chunkReads);
+            long length = 0;
+            int stop = -1;
+            for(int r = from; r < to; r++){
+                int symbol = source[start + r * m] & 0xFF;
+                if(types[symbol] != CompiledTagSystem.APPEND){
+                    stop = r;
+                    break;
+                }
+                length += offsets[symbol + 1] - offsets[symbol];
+            }
+            lengths[c] = length;
+            stops[c] = stop;
+        }));
+
+        int executed = reads;
+        int lastChunk = chunks - 1;
+        for(int c = 0; c < chunks; c++){
+            if(stops[c] >= 0){
+                executed = stops[c];
+                lastChunk = c;
+                break;
+            }
+        }
+
+        // prefix sum of the output lengths gives where each chunk writes in the next word
+        long keep = Math.max(0, size - (long) executed * m);
+        long skip = Math.max(0, (long) executed * m - size);
+        long[] positions = new long[lastChunk + 1];
+        long total = keep;
+        for(int c = 0; c <= lastChunk; c++){
+            positions[c] = total;
+            total += lengths[c];
+        }
+        if(total > Integer.MAX_VALUE - 8)
+            throw new OutOfMemoryError("Word is too long for an in-memory queue");
+
+        byte[] target = new byte[(int) Math.max(total, 1)];
+        System.arraycopy(source, start + size - (int) keep, target, 0, (int) keep);
+        int last = executed;
+        pool.invoke(new ChunkTask(0, lastChunk + 1, c -> {
+            int from = c * chunkReads;
+            int to = Math.min(last, from + chunkReads);
+            int position = (int) positions[c];
+            for(int r = from; r < to; r++){
+                int symbol = source[start + r * m] & 0xFF;
+                int length = offsets[symbol + 1] - offsets[symbol];
+                System.arraycopy(productions, offsets[symbol], target, position, length);
+                position += length;
+            }
+        }));
+
+        generations++;
+        steps += executed;
+        if(skip >= total){
+            word.clear();
+            word.append(blank);
+        }else{
+            word.adopt(target, (int) skip, (int) total);
+        }
+
+        if(executed < reads){
+            // the word now starts with the symbol which stopped the generation
+            if(types[word.get(0)] == CompiledTagSystem.HALT){
+                halted = true;
+                steps++;
+                return executed + 1L;
+            }
+            throw new UnsupportedOperationException("The machine currently requires a choice to proceed");
+        }
+        return executed;
+    }
+
+    @Override
+    public Configuration inspect(){
+        byte[] content = word.toArray();
+        return Configuration.tag(halted, program.decode(content, 0, content.length));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TAG_SYSTEM)
+            throw new IllegalArgumentException("Not a tag system configuration");
+        load(program.encode(configuration.getCells()), configuration.isHalted());
+        steps = stepCount;
+    }
+
+    private void load(byte[] input, boolean halted){
+        word.clear();
+        word.append(input, 0, input.length);
+        if(word.isEmpty())
+            word.append(blank);
+        this.halted = halted;
+    }
+}
@@ -0,0 +1,204 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+/**
+ * Engine holding the run of another engine to a {@link MemoryQuota}.
+ *
+ * <p>The run is executed in slices and the footprint of the engine is checked after each of them. A slice is kept
+ * short enough that the tape, growing by at most one cell per step, or the word, growing by at most the longest
+ * production per step, cannot overshoot the memory left by much before the next check.</p>
+ */
+class QuotaEngine implements Engine {
+
+    /** Maximum number of steps run between two checks. */
+    private static final long SLICE = 1 << 20;
+    /** Minimum number of steps run between two checks. */
+    private static final long MIN_SLICE = 256;
+    /** Mask of the single steps between two checks. */
+    private static final long STEP_MASK = (1 << 12) - 1;
+
+    private final MemoryQuota quota;
+    private final MemoryBudget.Account account;
+    private final long cellsPerStep;
+    private Engine engine;
+    private boolean compressed;
+    private QuotaExceededException aborted;
+
+    QuotaEngine(Engine engine, MemoryQuota quota){
+        this.engine = engine;
+        this.quota = quota;
+        this.account = quota.getBudget() != null ? quota.getBudget().open() : null;
+
+        long growth = 1;
+        CompiledMachine program = engine.getProgram();
+        if(program instanceof CompiledTagSystem){
+            CompiledTagSystem tag = (CompiledTagSystem) program;
+            for(int symbol = 0; symbol < tag.getNumSymbols(); symbol++)
+                growth = Math.max(growth, tag.getProductionLength(symbol));
+        }
+        this.cellsPerStep = growth;
+    }
+
+    @Override
+    public String getName(){
+        return engine.getName();
+    }
+
+    @Override
+    public CompiledMachine getProgram(){
+        return engine.getProgram();
+    }
+
+    @Override
+    public boolean isHalted(){
+        return engine.isHalted();
+    }
+
+    @Override
+    public long getStepCount(){
+        return engine.getStepCount();
+    }
+
+    @Override
+    public long getCellCount(){
+        return engine.getCellCount();
+    }
+
+    @Override
+    public long getFootprint(){
+        return engine.getFootprint();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws QuotaExceededException if the run holds more memory than allowed
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(aborted != null)
+            throw aborted;
+        engine.step();
+        if((engine.getStepCount() & STEP_MASK) == 0)
+            check();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws QuotaExceededException if the run holds more memory than allowed, after counting the steps executed
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        check();
+        long done = 0;
+        while(done < maxSteps && !engine.isHalted()){
+            long executed = engine.run(Math.min(slice(), maxSteps - done));
+            done += executed;
+            check();
+            if(executed == 0)
+                break;
+        }
+        return done;
+    }
+
+    /**
+     * Returns the number of steps which cannot take the run over its quota or the budget by more than a slice
+     */
+    private long slice(){
+        long footprint = engine.getFootprint();
+        if(footprint < 0)
+            return SLICE;
+        long left = quota.getLimit() - footprint;
+        if(account != null)
+            left = Math.min(left, quota.getBudget().getAvailable());
+        long cellBytes = Math.max(1, footprint / Math.max(1, engine.getCellCount()));
+        return Math.max(MIN_SLICE, Math.min(SLICE, left / (cellBytes * cellsPerStep)));
+    }
+
+    /**
+     * Applies the action of the quota if the run holds too much memory
+     */
+    private void check(){
+        if(aborted != null)
+            throw aborted;
+        long footprint = engine.getFootprint();
+        if(footprint < 0 || allowed(footprint))
+            return;
+        if(quota.getAction() == MemoryQuota.Action.COMPRESS && compress()){
+            footprint = engine.getFootprint();
+            if(allowed(footprint))
+                return;
+        }
+
+        boolean paused = quota.getAction() == MemoryQuota.Action.PAUSE;
+        String message = String.format("%s run %s at step %d: %d bytes held, quota %d bytes", engine.getName(),
+                paused ? "paused" : "aborted", engine.getStepCount(), footprint, quota.getLimit());
+        if(account != null)
+            message += ", budget " + quota.getBudget().getUsed() + " of " + quota.getBudget().getLimit() + " bytes";
+        QuotaExceededException e = new QuotaExceededException(message, footprint, quota.getLimit(), paused);
+        if(!paused)
+            aborted = e;
+        throw e;
+    }
+
+    private boolean allowed(long footprint){
+        boolean shared = account == null || account.update(footprint);
+        return shared && footprint <= quota.getLimit();
+    }
+
+    /**
+     * Moves the run to the compressed engine of its kind
+     * @return false if the run is already compressed or cannot be moved
+     */
+    private boolean compress(){
+        if(compressed)
+            return false;
+        compressed = true;
+        CompiledMachine program = engine.getProgram();
+        Engine next;
+        if(engine.getName().equals("mapped") || engine.getName().equals("rle")){
+            return false;
+        }else if(program instanceof CompiledTagSystem){
+            long segment = Math.min(MappedTagWord.DEFAULT_SEGMENT_SIZE, quota.getLimit() / 4);
+            next = new ArrayTagEngine((CompiledTagSystem) program, "mapped",
+                    MappedTagWord.create((int) Math.max(MappedTagWord.MIN_SEGMENT_SIZE, segment)));
+        }else{
+            next = Engines.createUnrecorded("rle", program);
+        }
+        next = RecordingEngine.wrap(next);
+        try{
+            next.restore(engine.inspect(), engine.getStepCount());
+        }catch(RuntimeException e){
+            next.close();
+            return false;
+        }
+        engine.close();
+        engine = next;
+        return true;
+    }
+
+    @Override
+    public Configuration inspect(){
+        return engine.inspect();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        engine.restore(configuration, stepCount);
+        aborted = null;
+    }
+
+    /**
+     * Releases the share of the budget and closes the engine
+     */
+    @Override
+    public void close(){
+        if(account != null)
+            account.close();
+        engine.close();
+    }
+}
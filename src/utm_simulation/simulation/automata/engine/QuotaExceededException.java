@@ -0,0 +1,47 @@
+package utm_simulation.simulation.automata.engine;
+
+/**
+ * Thrown when a run holds more memory than its {@link MemoryQuota} or the {@link MemoryBudget} it shares allows.
+ *
+ * <p>The steps executed before the quota was exceeded are counted by the engine. A paused run can be continued
+ * once memory is available again, while an aborted run keeps throwing this exception.</p>
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long footprint;
+    private final long limit;
+    private final boolean paused;
+
+    public QuotaExceededException(String message, long footprint, long limit, boolean paused){
+        super(message);
+        this.footprint = footprint;
+        this.limit = limit;
+        this.paused = paused;
+    }
+
+    /**
+     * Returns the memory held by the run when the quota was exceeded
+     * @return the memory held by the run in bytes
+     */
+    public long getFootprint(){
+        return footprint;
+    }
+
+    /**
+     * Returns the quota of the run
+     * @return the quota of the run in bytes
+     */
+    public long getLimit(){
+        return limit;
+    }
+
+    /**
+     * Returns whether the run is only paused and may continue once memory is available
+     * @return whether the run is paused rather than aborted
+     */
+    public boolean isPaused(){
+        return paused;
+    }
+}
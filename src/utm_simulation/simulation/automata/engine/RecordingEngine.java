@@ -0,0 +1,132 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.monitor.RunRecording;
+
+/**
+ * Engine emitting the flight recorder events of its run while delegating every step to another engine.
+ * {@link Engines} only wraps engines in it while a flight recording is interested in the events,
+ * so runs started without a recording pay nothing for them.
+ */
+class RecordingEngine implements Engine {
+
+    /** Maximum number of steps run between two samples. */
+    private static final long SLICE = 1 << 20;
+    /** Mask of the single steps between two samples. */
+    private static final long STEP_MASK = (1 << 16) - 1;
+
+    private final Engine engine;
+    private final RunRecording recording;
+    private String outcome = RunRecording.STOPPED;
+
+    RecordingEngine(Engine engine){
+        this.engine = engine;
+        this.recording = new RunRecording(engine.getProgram(), engine.getName(), engine.getProgram().getInputLength());
+    }
+
+    /**
+     * Wraps given engine if runs are being recorded
+     * @param engine the engine to record
+     * @return the recording engine, or the engine itself if no recording is interested
+     */
+    static Engine wrap(Engine engine){
+        return RunRecording.isEnabled() ? new RecordingEngine(engine) : engine;
+    }
+
+    @Override
+    public String getName(){
+        return engine.getName();
+    }
+
+    @Override
+    public CompiledMachine getProgram(){
+        return engine.getProgram();
+    }
+
+    @Override
+    public boolean isHalted(){
+        return engine.isHalted();
+    }
+
+    @Override
+    public long getStepCount(){
+        return engine.getStepCount();
+    }
+
+    @Override
+    public long getCellCount(){
+        return engine.getCellCount();
+    }
+
+    @Override
+    public long getFootprint(){
+        return engine.getFootprint();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        try{
+            engine.step();
+        }catch(UnsupportedOperationException e){
+            outcome = RunRecording.UNDEFINED;
+            throw e;
+        }
+        if((engine.getStepCount() & STEP_MASK) == 0)
+            sample();
+        if(engine.isHalted())
+            outcome = RunRecording.HALTED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        try{
+            while(done < maxSteps && !engine.isHalted()){
+                long executed = engine.run(Math.min(SLICE, maxSteps - done));
+                done += executed;
+                sample();
+                if(executed == 0)
+                    break;
+            }
+        }catch(UnsupportedOperationException e){
+            outcome = RunRecording.UNDEFINED;
+            throw e;
+        }
+        if(engine.isHalted())
+            outcome = RunRecording.HALTED;
+        return done;
+    }
+
+    private void sample(){
+        recording.sample(engine.getStepCount(), engine.getCellCount(), engine.getFootprint());
+    }
+
+    @Override
+    public Configuration inspect(){
+        return engine.inspect();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        engine.restore(configuration, stepCount);
+        outcome = engine.isHalted() ? RunRecording.HALTED : RunRecording.STOPPED;
+    }
+
+    /**
+     * Ends the recorded run and closes the engine
+     */
+    @Override
+    public void close(){
+        recording.end(engine.getStepCount(), outcome);
+        engine.close();
+    }
+}
@@ -0,0 +1,101 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.automata.TagSystem;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+/**
+ * Engine running a {@link TagSystem} on its linked list {@link utm_simulation.simulation.automata.Tape}.
+ * This is the behaviour every other engine is checked against.
+ */
+public class ReferenceTagEngine implements Engine {
+
+    private final CompiledTagSystem program;
+    private final TagSystem machine;
+    private boolean restoredHalted;
+    private long steps;
+
+    public ReferenceTagEngine(CompiledTagSystem program){
+        this.program = program;
+        this.machine = TagSystem.buildMachine(program);
+    }
+
+    /**
+     * Returns the underlying tag system
+     * @return the underlying tag system
+     */
+    public TagSystem getMachine(){
+        return machine;
+    }
+
+    @Override
+    public String getName(){
+        return "reference";
+    }
+
+    @Override
+    public CompiledTagSystem getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return restoredHalted || machine.isHalted();
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(isHalted())
+            throw new IllegalStateException("The machine has already terminated.");
+        machine.execute();
+        steps++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(!isHalted() && done < maxSteps){
+            step();
+            done++;
+        }
+        return done;
+    }
+
+    @Override
+    public long getCellCount(){
+        return machine.getInput_tape().length();
+    }
+
+    @Override
+    public long getFootprint(){
+        return machine.getInput_tape().getFootprint();
+    }
+
+    @Override
+    public Configuration inspect(){
+        Configuration configuration = machine.getConfiguration();
+        return restoredHalted ? Configuration.tag(true, configuration.getCells()) : configuration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TAG_SYSTEM)
+            throw new IllegalArgumentException("Not a tag system configuration");
+        machine.reset(configuration.getCells());
+        restoredHalted = configuration.isHalted();
+        steps = stepCount;
+    }
+}
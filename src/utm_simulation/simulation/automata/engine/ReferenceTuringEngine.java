@@ -0,0 +1,98 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.automata.TuringMachine;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+/**
+ * Engine running a {@link TuringMachine} on its linked list {@link utm_simulation.simulation.automata.Tape}.
+ * This is the behaviour every other engine is checked against.
+ */
+public class ReferenceTuringEngine implements Engine {
+
+    private final CompiledTuringMachine program;
+    private final TuringMachine machine;
+    private long steps;
+
+    public ReferenceTuringEngine(CompiledTuringMachine program){
+        this.program = program;
+        this.machine = TuringMachine.buildMachine(program);
+    }
+
+    /**
+     * Returns the underlying Turing machine
+     * @return the underlying Turing machine
+     */
+    public TuringMachine getMachine(){
+        return machine;
+    }
+
+    @Override
+    public String getName(){
+        return "reference";
+    }
+
+    @Override
+    public CompiledTuringMachine getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return machine.getCurrentState() == -1;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(isHalted())
+            throw new IllegalStateException("The machine has already halted");
+        machine.execute();
+        steps++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(!isHalted() && done < maxSteps){
+            step();
+            done++;
+        }
+        return done;
+    }
+
+    @Override
+    public long getCellCount(){
+        return machine.getInput_tape().length();
+    }
+
+    @Override
+    public long getFootprint(){
+        return machine.getInput_tape().getFootprint();
+    }
+
+    @Override
+    public Configuration inspect(){
+        return machine.getConfiguration();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TURING_MACHINE)
+            throw new IllegalArgumentException("Not a Turing machine configuration");
+        machine.reset(configuration.getCells(), configuration.getHead(), configuration.getState());
+        steps = stepCount;
+    }
+}
@@ -0,0 +1,284 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.util.Arrays;
+
+/**
+ * Engine running a compiled Turing machine on a run-length encoded tape.
+ *
+ * <p>The tape is split into two stacks of runs, one on each side of the head. Whenever the machine reads a symbol
+ * with a transition that keeps its state, it would rewrite the whole run of that symbol lying ahead of it in the
+ * same way, so the run is rewritten and crossed in a single step of this engine (a sweep). This makes long unary
+ * sweeps, including sweeps into the blank part of the tape, cost as much as a single step.</p>
+ */
+public class RleTuringEngine implements Engine {
+
+    /**
+     * A stack of runs. The top of the stack is the run adjacent to the head.
+     */
+    private static final class RunStack{
+        private byte[] symbols = new byte[16];
+        private long[] counts = new long[16];
+        private int size;
+
+        private boolean isEmpty(){
+            return size == 0;
+        }
+
+        private int topSymbol(){
+            return symbols[size - 1] & 0xFF;
+        }
+
+        private long topCount(){
+            return counts[size - 1];
+        }
+
+        /**
+         * Pushes a run, merging it with the top run if they have the same symbol
+         */
+        private void push(int symbol, long count){
+            if(size > 0 && topSymbol() == symbol){
+                counts[size - 1] += count;
+                return;
+            }
+            if(size == symbols.length){
+                symbols = Arrays.copyOf(symbols, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            symbols[size] = (byte) symbol;
+            counts[size] = count;
+            size++;
+        }
+
+        /**
+         * Removes given number of cells from the top run, which must be long enough. Nothing happens on an empty stack
+         * since it stands for blank cells.
+         */
+        private void drop(long count){
+            if(size == 0)
+                return;
+            counts[size - 1] -= count;
+            if(counts[size - 1] == 0)
+                size--;
+        }
+
+        /**
+         * Removes the cell adjacent to the head and returns its symbol
+         */
+        private int pop(int blank){
+            if(size == 0)
+                return blank;
+            int symbol = topSymbol();
+            drop(1);
+            return symbol;
+        }
+
+        private long cells(){
+            long total = 0;
+            for(int i = 0; i < size; i++)
+                total += counts[i];
+            return total;
+        }
+    }
+
+    private final CompiledTuringMachine program;
+    private final int numSymbols;
+    private final int blank;
+    private final int[] nextStates;
+    private final byte[] nextSymbols;
+    private final byte[] shifts;
+
+    private RunStack left;
+    private RunStack right;
+    private int head;
+    private int state;
+    private long steps;
+    private long transitions;
+    private long sweeps;
+    private long position;
+
+    public RleTuringEngine(CompiledTuringMachine program){
+        this.program = program;
+        this.numSymbols = program.getNumSymbols();
+        this.blank = program.getBlankIndex();
+        this.nextStates = program.getNextStates();
+        this.nextSymbols = program.getNextSymbols();
+        this.shifts = program.getShifts();
+        load(program.getInput(), program.getHeadIndex(), 1);
+    }
+
+    @Override
+    public String getName(){
+        return "rle";
+    }
+
+    @Override
+    public CompiledTuringMachine getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return state == CompiledTuringMachine.HALT;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    /**
+     * Returns the number of sweeps, that is transitions applied to more than one cell at once
+     * @return the number of sweeps
+     */
+    public long getSweeps(){
+        return sweeps;
+    }
+
+    /**
+     * Returns the number of transitions applied, counting a sweep as a single transition
+     * @return the number of transitions applied
+     */
+    public long getTransitions(){
+        return transitions;
+    }
+
+    /**
+     * Returns the position of the head relative to the first cell of the input or restored configuration
+     * @return the position of the head
+     */
+    public long getHeadPosition(){
+        return position;
+    }
+
+    /**
+     * Returns the number of runs stored on both sides of the head
+     * @return the number of runs
+     */
+    public int getRunCount(){
+        return left.size + right.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(isHalted())
+            throw new IllegalStateException("The machine has already halted");
+        run(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(state != CompiledTuringMachine.HALT && done < maxSteps)
+            done += transition(maxSteps - done);
+        return done;
+    }
+
+    /**
+     * Applies a single transition, sweeping the run ahead of the head if the transition keeps the state
+     * @param maxSteps maximum number of steps of the sweep
+     * @return the number of steps executed
+     * @throws UnsupportedOperationException if the transition is undefined
+     */
+    private long transition(long maxSteps) throws UnsupportedOperationException {
+        int entry = (state - 1) * numSymbols + head;
+        int next = nextStates[entry];
+        if(next == CompiledTuringMachine.UNDEFINED)
+            throw new UnsupportedOperationException("Current operation requires a choice");
+        transitions++;
+        if(next == CompiledTuringMachine.HALT){
+            state = next;
+            steps++;
+            return 1;
+        }
+
+        RunStack ahead = shifts[entry] > 0 ? right : left;
+        RunStack behind = shifts[entry] > 0 ? left : right;
+        long cells = 1;
+        if(next == state){
+            // every cell of the run ahead is rewritten by the same transition
+            long run;
+            if(!ahead.isEmpty())
+                run = ahead.topSymbol() == head ? ahead.topCount() : 0;
+            else
+                run = head == blank ? Long.MAX_VALUE - 1 : 0;
+            cells = Math.min(run + 1, maxSteps);
+            if(cells > 1)
+                sweeps++;
+        }
+        behind.push(nextSymbols[entry] & 0xFF, cells);
+        ahead.drop(cells - 1);
+        head = ahead.pop(blank);
+        position += shifts[entry] * cells;
+        state = next;
+        steps += cells;
+        return cells;
+    }
+
+    @Override
+    public Configuration inspect(){
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < left.size; i++)
+            repeat(builder, left.symbols[i] & 0xFF, left.counts[i]);
+        int index = builder.length();
+        builder.append(program.getSymbol(head));
+        for(int i = right.size - 1; i >= 0; i--)
+            repeat(builder, right.symbols[i] & 0xFF, right.counts[i]);
+        return Configuration.turing(state, builder, index, program.getBlank());
+    }
+
+    private void repeat(StringBuilder builder, int symbol, long count){
+        if(count > Integer.MAX_VALUE)
+            throw new IllegalStateException("Tape is too long to inspect");
+        char s = program.getSymbol(symbol);
+        for(long i = 0; i < count; i++)
+            builder.append(s);
+    }
+
+    /**
+     * Returns the number of cells stored on the tape, including the head
+     * @return the number of cells stored on the tape
+     */
+    @Override
+    public long getCellCount(){
+        return left.cells() + right.cells() + 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFootprint(){
+        return (long) (left.symbols.length + right.symbols.length) * (Byte.BYTES + Long.BYTES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TURING_MACHINE)
+            throw new IllegalArgumentException("Not a Turing machine configuration");
+        load(program.encode(configuration.getCells()), configuration.getHead(), configuration.getState());
+        steps = stepCount;
+    }
+
+    private void load(byte[] cells, int headIndex, int state){
+        left = new RunStack();
+        right = new RunStack();
+        for(int i = 0; i < headIndex && i < cells.length; i++)
+            left.push(cells[i] & 0xFF, 1);
+        for(int i = cells.length - 1; i > headIndex; i--)
+            right.push(cells[i] & 0xFF, 1);
+        head = headIndex < cells.length ? cells[headIndex] & 0xFF : blank;
+        position = headIndex;
+        this.state = state;
+    }
+}
@@ -0,0 +1,527 @@
+package utm_simulation.simulation.automata.engine;
+
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+import java.util.ArrayDeque;
+
+/**
+ * Runs a compiled tag system on a hash-consed rope, in the spirit of hashlife.
+ *
+ * <p>The word is a balanced binary tree of shared subwords. Every distinct subword exists only once, and each node
+ * remembers, for each of the m possible read phases, the result of processing the entire subword: the rope of the
+ * appended productions, the number of steps and the phase in which the following subword is entered.
+ * Since the output is itself a hash-consed rope, a region of the word which was already processed once is skipped
+ * in a single lookup however long it is, which gives superlinear speedups on regular words.</p>
+ *
+ * <p>The number of nodes is bounded by a configurable budget. When it is exceeded, nodes that are not reachable from
+ * the current word are collected along with the memoized results pointing to them.</p>
+ *
+ * <p>The result is exactly the one of {@link utm_simulation.simulation.automata.TagSystem}. A node is only processed
+ * at once when its number of steps fits in the remaining step budget and it does not read a halting symbol,
+ * otherwise it is split into its children.</p>
+ */
+public class RopeTagEngine implements Engine {
+
+    /**
+     * A node of the rope. A leaf holds a single symbol.
+     */
+    private static final class Node{
+        private final Node left;
+        private final Node right;
+        private final int symbol;
+        private final long length;
+        private final int height;
+        private final int hash;
+
+        private Result[] memo;
+        private Node chain;
+        private boolean marked;
+
+        private Node(int symbol){
+            this.left = null;
+            this.right = null;
+            this.symbol = symbol;
+            this.length = 1;
+            this.height = 0;
+            this.hash = mix(symbol + 1);
+        }
+
+        private Node(Node left, Node right, int hash){
+            this.left = left;
+            this.right = right;
+            this.symbol = -1;
+            this.length = left.length + right.length;
+            this.height = Math.max(left.height, right.height) + 1;
+            this.hash = hash;
+        }
+
+        private boolean isLeaf(){
+            return left == null;
+        }
+    }
+
+    /**
+     * The result of processing an entire node entered in a given phase.
+     */
+    private static final class Result{
+        private final Node output;
+        private final long steps;
+        private final int exit;
+        private final byte stop;
+
+        private Result(Node output, long steps, int exit, byte stop){
+            this.output = output;
+            this.steps = steps;
+            this.exit = exit;
+            this.stop = stop;
+        }
+    }
+
+    public static final int DEFAULT_NODE_BUDGET = 1 << 20;
+    private static final byte NO_STOP = -1;
+    /** Estimated heap size of a node and its memo array. */
+    private static final int NODE_BYTES = 80;
+
+    private final CompiledTagSystem program;
+    private final int deletionNumber;
+    private final int blank;
+    private final byte[] types;
+    private final Node[] leaves;
+    private final Node[] productions;
+    private final int nodeBudget;
+
+    private Node[] table = new Node[1 << 10];
+    private int nodeCount;
+    private int collectThreshold;
+
+    private final ArrayDeque<Node> front = new ArrayDeque<>();
+    private int phase;
+    private Node tail;
+    private boolean halted;
+    private long steps;
+    private long hits;
+    private long misses;
+    private long collections;
+
+    /**
+     * Creates an engine with the default node budget
+     * @param program tag system to run
+     */
+    public RopeTagEngine(CompiledTagSystem program){
+        this(program, DEFAULT_NODE_BUDGET);
+    }
+
+    /**
+     * Creates an engine for given tag system, starting with its input word.
+     * @param program tag system to run
+     * @param nodeBudget number of nodes above which unreferenced nodes are collected
+     * @throws IllegalArgumentException if the node budget is not positive
+     */
+    public RopeTagEngine(CompiledTagSystem program, int nodeBudget){
+        if(nodeBudget <= 0)
+            throw new IllegalArgumentException("Node budget must be positive");
+        this.program = program;
+        this.deletionNumber = program.getDeletionNumber();
+        this.blank = program.getBlankIndex();
+        this.types = program.getTypes();
+        this.nodeBudget = nodeBudget;
+        this.collectThreshold = nodeBudget;
+
+        leaves = new Node[program.getNumSymbols()];
+        for(int s = 0; s < leaves.length; s++)
+            leaves[s] = new Node(s);
+        productions = new Node[program.getNumSymbols()];
+        for(int s = 0; s < productions.length; s++){
+            byte[] production = program.getProduction(s);
+            productions[s] = build(production, 0, production.length);
+        }
+        reset(program.getInput());
+    }
+
+    /**
+     * Resets the engine with a new word. Memoized results are kept since they only depend on the tag system.
+     * @param input new word as symbol indices
+     */
+    public void reset(byte[] input){
+        front.clear();
+        tail = null;
+        phase = 0;
+        Node word = build(input, 0, input.length);
+        front.add(word == null ? leaves[blank] : word);
+        halted = false;
+        steps = 0;
+    }
+
+    @Override
+    public String getName(){
+        return "rope";
+    }
+
+    @Override
+    public CompiledTagSystem getProgram(){
+        return program;
+    }
+
+    @Override
+    public boolean isHalted(){
+        return halted;
+    }
+
+    @Override
+    public long getStepCount(){
+        return steps;
+    }
+
+    public long getMemoHits(){
+        return hits;
+    }
+
+    public long getMemoMisses(){
+        return misses;
+    }
+
+    /**
+     * Returns the number of distinct nodes currently alive
+     * @return the number of distinct nodes currently alive
+     */
+    public int getNodeCount(){
+        return nodeCount;
+    }
+
+    public int getNodeBudget(){
+        return nodeBudget;
+    }
+
+    /**
+     * Returns how many times unreferenced nodes were collected
+     * @return how many times unreferenced nodes were collected
+     */
+    public long getCollections(){
+        return collections;
+    }
+
+    /**
+     * Returns the number of symbols in the current word
+     * @return the number of symbols in the current word
+     */
+    public long getWordLength(){
+        long length = -phase;
+        for(Node node : front)
+            length += node.length;
+        return length + (tail == null ? 0 : tail.length);
+    }
+
+    @Override
+    public long getCellCount(){
+        return getWordLength();
+    }
+
+    /**
+     * Returns an estimate of the memory held by the live nodes and the node table
+     * @return the estimated memory held in bytes
+     */
+    @Override
+    public long getFootprint(){
+        return (long) nodeCount * NODE_BYTES + (long) table.length * Integer.BYTES;
+    }
+
+    @Override
+    public Configuration inspect(){
+        return Configuration.tag(halted, getWord());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restore(Configuration configuration, long stepCount) throws IllegalArgumentException {
+        if(configuration.getKind() != Configuration.Kind.TAG_SYSTEM)
+            throw new IllegalArgumentException("Not a tag system configuration");
+        reset(program.encode(configuration.getCells()));
+        halted = configuration.isHalted();
+        steps = stepCount;
+    }
+
+    /**
+     * Returns the current word as a String of symbols
+     * @return the current word
+     */
+    public String getWord(){
+        StringBuilder builder = new StringBuilder();
+        long skip = phase;
+        for(Node node : front)
+            skip = appendTo(builder, node, skip);
+        appendTo(builder, tail, skip);
+        return builder.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void step() throws IllegalStateException, UnsupportedOperationException {
+        if(halted)
+            throw new IllegalStateException("The machine has already terminated.");
+        run(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws UnsupportedOperationException {
+        long done = 0;
+        while(!halted && done < maxSteps){
+            if(nodeCount > collectThreshold)
+                collect();
+
+            Node node = front.peekFirst();
+            long reads = reads(node, phase);
+            if(reads == 0){
+                front.pollFirst();
+                phase -= (int) node.length;
+                if(front.isEmpty())
+                    startGeneration();
+                continue;
+            }
+
+            if(node.isLeaf()){
+                byte type = types[node.symbol];
+                if(type == CompiledTagSystem.HALT){
+                    halted = true;
+                    steps++;
+                    done++;
+                    break;
+                }else if(type != CompiledTagSystem.APPEND){
+                    throw new UnsupportedOperationException("The machine currently requires a choice to proceed");
+                }
+                front.pollFirst();
+                tail = join(tail, productions[node.symbol]);
+                phase = deletionNumber - 1;
+                steps++;
+                done++;
+                if(front.isEmpty())
+                    startGeneration();
+                continue;
+            }
+
+            if(reads <= maxSteps - done){
+                Result result = result(node, phase);
+                if(result.stop == NO_STOP){
+                    front.pollFirst();
+                    tail = join(tail, result.output);
+                    phase = result.exit;
+                    steps += result.steps;
+                    done += result.steps;
+                    if(front.isEmpty())
+                        startGeneration();
+                    continue;
+                }
+            }
+
+            front.pollFirst();
+            front.addFirst(node.right);
+            front.addFirst(node.left);
+        }
+        return done;
+    }
+
+    /**
+     * Starts reading the appended productions once every symbol of the previous word was consumed.
+     * A word consumed entirely is replaced by a single blank.
+     */
+    private void startGeneration(){
+        Node word = tail;
+        tail = null;
+        if(word == null || phase >= word.length){
+            front.add(leaves[blank]);
+            phase = 0;
+        }else{
+            front.add(word);
+        }
+    }
+
+    /**
+     * Returns the number of symbols read in given node when entered in given phase
+     */
+    private long reads(Node node, int phase){
+        return node.length > phase ? (node.length - phase + deletionNumber - 1) / deletionNumber : 0;
+    }
+
+    private Result result(Node node, int phase){
+        if(node.isLeaf()){
+            if(phase > 0)
+                return new Result(null, 0, phase - 1, NO_STOP);
+            byte type = types[node.symbol];
+            if(type != CompiledTagSystem.APPEND)
+                return new Result(null, 0, 0, type);
+            return new Result(productions[node.symbol], 1, deletionNumber - 1, NO_STOP);
+        }
+
+        if(node.memo != null && node.memo[phase] != null){
+            hits++;
+            return node.memo[phase];
+        }
+        misses++;
+
+        Result first = result(node.left, phase);
+        Result result;
+        if(first.stop != NO_STOP){
+            result = first;
+        }else{
+            Result second = result(node.right, first.exit);
+            result = new Result(join(first.output, second.output), first.steps + second.steps, second.exit, second.stop);
+        }
+        if(node.memo == null)
+            node.memo = new Result[deletionNumber];
+        node.memo[phase] = result;
+        return result;
+    }
+
+    /*Hash-consed balanced ropes*/
+
+    private Node build(byte[] word, int from, int to){
+        if(from >= to)
+            return null;
+        if(to - from == 1)
+            return leaves[word[from] & 0xFF];
+        int middle = (from + to) >>> 1;
+        return make(build(word, from, middle), build(word, middle, to));
+    }
+
+    /**
+     * Concatenates two ropes, keeping the result balanced. Null stands for the empty word.
+     */
+    private Node join(Node left, Node right){
+        if(left == null)
+            return right;
+        if(right == null)
+            return left;
+        if(left.height > right.height + 1)
+            return balance(left.left, join(left.right, right));
+        if(right.height > left.height + 1)
+            return balance(join(left, right.left), right.right);
+        return make(left, right);
+    }
+
+    /**
+     * Creates a balanced node from two ropes whose heights differ by at most two.
+     */
+    private Node balance(Node left, Node right){
+        if(left.height > right.height + 1){
+            if(left.left.height >= left.right.height)
+                return make(left.left, make(left.right, right));
+            return make(make(left.left, left.right.left), make(left.right.right, right));
+        }
+        if(right.height > left.height + 1){
+            if(right.right.height >= right.left.height)
+                return make(make(left, right.left), right.right);
+            return make(make(left, right.left.left), make(right.left.right, right.right));
+        }
+        return make(left, right);
+    }
+
+    /**
+     * Returns the unique node with given children
+     */
+    private Node make(Node left, Node right){
+        int hash = mix(left.hash * 31 + right.hash);
+        int bucket = hash & (table.length - 1);
+        for(Node node = table[bucket]; node != null; node = node.chain){
+            if(node.left == left && node.right == right)
+                return node;
+        }
+        Node node = new Node(left, right, hash);
+        node.chain = table[bucket];
+        table[bucket] = node;
+        nodeCount++;
+        if(nodeCount > table.length - (table.length >> 2))
+            rehash(table.length * 2);
+        return node;
+    }
+
+    private void rehash(int capacity){
+        Node[] old = table;
+        table = new Node[capacity];
+        for(Node head : old){
+            Node node = head;
+            while(node != null){
+                Node next = node.chain;
+                int bucket = node.hash & (capacity - 1);
+                node.chain = table[bucket];
+                table[bucket] = node;
+                node = next;
+            }
+        }
+    }
+
+    private static int mix(int hash){
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /*Collection of unreferenced nodes*/
+
+    private void collect(){
+        collections++;
+        for(Node node : front)
+            mark(node);
+        mark(tail);
+        for(Node node : productions)
+            mark(node);
+
+        int live = 0;
+        Node[] old = table;
+        table = new Node[old.length];
+        for(Node head : old){
+            Node node = head;
+            while(node != null){
+                Node next = node.chain;
+                if(node.marked){
+                    if(node.memo != null){
+                        for(int p = 0; p < node.memo.length; p++){
+                            Result result = node.memo[p];
+                            if(result != null && result.output != null && !result.output.isLeaf() && !result.output.marked)
+                                node.memo[p] = null;
+                        }
+                    }
+                    int bucket = node.hash & (table.length - 1);
+                    node.chain = table[bucket];
+                    table[bucket] = node;
+                    live++;
+                }else{
+                    node.memo = null;
+                    node.chain = null;
+                }
+                node = next;
+            }
+        }
+        for(Node head : table){
+            for(Node node = head; node != null; node = node.chain)
+                node.marked = false;
+        }
+        nodeCount = live;
+        // the live word itself may not fit in the budget, in which case collecting again right away would be useless
+        collectThreshold = Math.max(nodeBudget, live * 2);
+    }
+
+    private void mark(Node node){
+        while(node != null && !node.isLeaf() && !node.marked){
+            node.marked = true;
+            mark(node.left);
+            node = node.right;
+        }
+    }
+
+    private long appendTo(StringBuilder builder, Node node, long skip){
+        if(node == null)
+            return skip;
+        if(skip >= node.length)
+            return skip - node.length;
+        if(node.isLeaf()){
+            builder.append(program.getSymbol(node.symbol));
+            return 0;
+        }
+        skip = appendTo(builder, node.left, skip);
+        return appendTo(builder, node.right, skip);
+    }}
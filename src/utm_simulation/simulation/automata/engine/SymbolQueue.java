@@ -0,0 +1,177 @@
+package utm_simulation.simulation.automata.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable FIFO queue of symbol indices backed by a single byte array.
+ * Symbols are consumed from the front and appended to the end, which is exactly how a tag system uses its word.
+ * Consumed space is reclaimed by compacting the array instead of allocating a cell per symbol like {@link utm_simulation.simulation.automata.Tape}.
+ */
+public class SymbolQueue implements TagWord {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private byte[] data;
+    private int head;
+    private int tail;
+
+    /**
+     * Creates an empty queue
+     */
+    public SymbolQueue(){
+        data = new byte[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Creates a queue holding given symbols
+     * @param word initial content of the queue
+     */
+    public SymbolQueue(byte[] word){
+        data = Arrays.copyOf(word, Math.max(DEFAULT_CAPACITY, word.length * 2));
+        tail = word.length;
+    }
+
+    /**
+     * Returns the number of symbols in the queue
+     * @return the number of symbols in the queue
+     */
+    public int size(){
+        return tail - head;
+    }
+
+    @Override
+    public long length(){
+        return size();
+    }
+
+    @Override
+    public long getFootprint(){
+        return data.length;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return tail == head;
+    }
+
+    /**
+     * Returns the symbol at given offset from the front without removing it
+     * @param offset offset from the front of the queue
+     * @return symbol index at given offset
+     */
+    @Override
+    public int get(int offset){
+        return data[head + offset] & 0xFF;
+    }
+
+    /**
+     * Removes up to count symbols from the front of the queue
+     * @param count number of symbols to remove
+     */
+    @Override
+    public void drop(int count){
+        head = Math.min(tail, head + count);
+        if(head == tail){
+            head = 0;
+            tail = 0;
+        }
+    }
+
+    /**
+     * Appends a single symbol to the end of the queue
+     * @param symbol symbol index to append
+     */
+    @Override
+    public void append(int symbol){
+        ensureCapacity(1);
+        data[tail++] = (byte) symbol;
+    }
+
+    /**
+     * Appends a range of symbols to the end of the queue in one copy
+     * @param word array holding the symbols
+     * @param offset index of the first symbol to append
+     * @param length number of symbols to append
+     */
+    @Override
+    public void append(byte[] word, int offset, int length){
+        ensureCapacity(length);
+        System.arraycopy(word, offset, data, tail, length);
+        tail += length;
+    }
+
+    /**
+     * Appends the remaining symbols of a buffer, reading them straight into the queue
+     * @param word buffer holding the symbols, read up to its limit
+     */
+    @Override
+    public void append(ByteBuffer word){
+        int length = word.remaining();
+        ensureCapacity(length);
+        word.get(data, tail, length);
+        tail += length;
+    }
+
+    /**
+     * Removes every symbol from the queue
+     */
+    @Override
+    public void clear(){
+        head = 0;
+        tail = 0;
+    }
+
+    /**
+     * Copies the content of the queue
+     * @return symbols of the queue from front to end
+     */
+    @Override
+    public byte[] toArray(){
+        return Arrays.copyOfRange(data, head, tail);
+    }
+
+    /*Direct access for engines processing the word in bulk*/
+
+    /**
+     * Returns the backing array. The symbols of the queue are stored from {@link #start()} on.
+     */
+    byte[] array(){
+        return data;
+    }
+
+    /**
+     * Returns the index of the front of the queue in the backing array
+     */
+    int start(){
+        return head;
+    }
+
+    /**
+     * Replaces the content of the queue by a range of given array, without copying it
+     */
+    void adopt(byte[] array, int from, int to){
+        data = array;
+        head = from;
+        tail = to;
+    }
+
+    private void ensureCapacity(int extra){
+        if(tail + extra <= data.length)
+            return;
+        int size = size();
+        if(head > 0 && size + extra <= data.length / 2){
+            System.arraycopy(data, head, data, 0, size);
+        }else{
+            long capacity = Math.min(Math.max((long) data.length * 2, (long) size + extra), MAX_CAPACITY);
+            if(capacity < (long) size + extra)
+                throw new OutOfMemoryError("Word is too long for an in-memory queue");
+            byte[] grown = new byte[(int) capacity];
+            System.arraycopy(data, head, grown, 0, size);
+            data = grown;
+        }
+        head = 0;
+        tail = size;
+    }
+}
@@ -0,0 +1,80 @@
+package utm_simulation.simulation.automata.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The word of a tag system, stored as symbol indices.
+ * A tag system only ever appends symbols at the end and consumes them from the front, so a word is a FIFO queue.
+ */
+public interface TagWord {
+
+    /**
+     * Returns the number of symbols in the word
+     * @return the number of symbols in the word
+     */
+    long length();
+
+    /**
+     * Returns an estimate of the memory held by the word in bytes, including unused capacity
+     * @return the estimated memory held by the word
+     */
+    long getFootprint();
+
+    /**
+     * Returns whether the word is empty
+     * @return whether the word is empty
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the symbol at given offset from the front without removing it
+     * @param offset offset from the front of the word
+     * @return symbol index at given offset
+     */
+    int get(int offset);
+
+    /**
+     * Removes up to count symbols from the front of the word
+     * @param count number of symbols to remove
+     */
+    void drop(int count);
+
+    /**
+     * Appends a single symbol to the end of the word
+     * @param symbol symbol index to append
+     */
+    void append(int symbol);
+
+    /**
+     * Appends a range of symbols to the end of the word
+     * @param word array holding the symbols
+     * @param offset index of the first symbol to append
+     * @param length number of symbols to append
+     */
+    void append(byte[] word, int offset, int length);
+
+    /**
+     * Appends the remaining symbols of a buffer to the end of the word, a chunk at a time
+     * @param word buffer holding the symbols, read up to its limit
+     */
+    default void append(ByteBuffer word){
+        byte[] chunk = new byte[Math.min(word.remaining(), 1 << 16)];
+        while(word.hasRemaining()){
+            int length = Math.min(chunk.length, word.remaining());
+            word.get(chunk, 0, length);
+            append(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Removes every symbol from the word
+     */
+    void clear();
+
+    /**
+     * Copies the content of the word
+     * @return symbols of the word from front to end
+     * @throws IllegalStateException if the word is too long to fit in an array
+     */
+    byte[] toArray();
+}
@@ -0,0 +1,154 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.automata.engine.Engine;
+import utm_simulation.simulation.automata.engine.Engines;
+import utm_simulation.simulation.batch.OutcomeCache.Fingerprint;
+import utm_simulation.simulation.batch.OutcomeCache.Outcome;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs one tag system on many inputs, sharing what runs learn through an {@link OutcomeCache}.
+ *
+ * <p>Every {@code sampleInterval} steps the current word is fingerprinted. If the cache knows the outcome of the word,
+ * the run ends immediately. Otherwise the fingerprint is remembered, and once the run halts or repeats a word, the
+ * outcome of every remembered word is recorded. Fingerprinting costs time linear in the length of the word, so the
+ * interval should be large compared to the typical word length.</p>
+ *
+ * <p>A runner may be used from several threads, each thread running its own inputs. The cache must only be shared
+ * between runners of the same tag system.</p>
+ */
+public class CachedTagRunner {
+
+    public static final long DEFAULT_SAMPLE_INTERVAL = 1024;
+
+    /**
+     * The result of a run.
+     */
+    public static final class Result{
+        private final Outcome outcome;
+        private final long steps;
+        private final boolean cached;
+
+        private Result(Outcome outcome, long steps, boolean cached){
+            this.outcome = outcome;
+            this.steps = steps;
+            this.cached = cached;
+        }
+
+        /**
+         * Returns the outcome of the run from its input, or null if the step budget ran out first
+         * @return the outcome of the run
+         */
+        public Outcome getOutcome(){
+            return outcome;
+        }
+
+        /**
+         * Returns the number of steps actually executed
+         * @return the number of steps executed
+         */
+        public long getSteps(){
+            return steps;
+        }
+
+        /**
+         * Returns whether the outcome was taken from the cache
+         * @return whether the outcome was taken from the cache
+         */
+        public boolean isCached(){
+            return cached;
+        }
+
+        @Override
+        public String toString(){
+            return (outcome == null ? "unknown" : outcome.toString()) + " (" + steps + " steps executed"
+                    + (cached ? ", cached)" : ")");
+        }
+    }
+
+    private final CompiledTagSystem program;
+    private final OutcomeCache cache;
+    private final String engineName;
+    private final long sampleInterval;
+
+    /**
+     * Creates a runner using the default engine and sample interval
+     * @param program the tag system to run
+     * @param cache the cache of outcomes of this tag system
+     */
+    public CachedTagRunner(CompiledTagSystem program, OutcomeCache cache){
+        this(program, cache, Engines.defaultName(), DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Creates a runner
+     * @param program the tag system to run
+     * @param cache the cache of outcomes of this tag system
+     * @param engineName name of the engine used for the runs
+     * @param sampleInterval number of steps between fingerprints
+     * @throws IllegalArgumentException if sampleInterval is not positive
+     */
+    public CachedTagRunner(CompiledTagSystem program, OutcomeCache cache, String engineName, long sampleInterval){
+        if(sampleInterval <= 0)
+            throw new IllegalArgumentException("sampleInterval must be positive");
+        this.program = program;
+        this.cache = cache;
+        this.engineName = engineName;
+        this.sampleInterval = sampleInterval;
+    }
+
+    public OutcomeCache getCache(){
+        return cache;
+    }
+
+    /**
+     * Runs the tag system on given input
+     * @param input the initial word
+     * @param maxSteps maximum number of steps to execute
+     * @return the result of the run
+     * @throws UnsupportedOperationException if the run reads a symbol without any production
+     */
+    public Result run(String input, long maxSteps) throws UnsupportedOperationException{
+        List<Fingerprint> samples = new ArrayList<>();
+        List<Long> sampleSteps = new ArrayList<>();
+        Set<Fingerprint> seen = new HashSet<>();
+        try(Engine engine = Engines.create(engineName, program.withInput(input))){
+            while(true){
+                Configuration configuration = engine.inspect();
+                long step = engine.getStepCount();
+                if(configuration.isHalted()){
+                    long finalLength = configuration.getCells().length();
+                    for(int i = 0; i < samples.size(); i++)
+                        cache.put(samples.get(i), Outcome.halt(step - sampleSteps.get(i), finalLength));
+                    return new Result(Outcome.halt(step, finalLength), step, false);
+                }
+                Fingerprint fingerprint = Fingerprint.of(configuration.getCells());
+                Outcome known = cache.get(fingerprint);
+                if(known != null){
+                    Outcome outcome = known.getType() == Outcome.Type.CYCLE ? known
+                            : Outcome.halt(step + known.getSteps(), known.getFinalLength());
+                    for(int i = 0; i < samples.size(); i++)
+                        cache.put(samples.get(i), known.getType() == Outcome.Type.CYCLE ? known
+                                : Outcome.halt(step - sampleSteps.get(i) + known.getSteps(), known.getFinalLength()));
+                    return new Result(outcome, step, true);
+                }
+                if(!seen.add(fingerprint)){
+                    for(Fingerprint sample : samples)
+                        cache.put(sample, Outcome.cycle());
+                    return new Result(Outcome.cycle(), step, false);
+                }
+                if(step >= maxSteps)
+                    return new Result(null, step, false);
+                samples.add(fingerprint);
+                sampleSteps.add(step);
+                engine.run(Math.min(sampleInterval, maxSteps - step));
+            }
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.automata.Machine;
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.automata.engine.Engine;
+import utm_simulation.simulation.automata.engine.Engines;
+import utm_simulation.simulation.automata.engine.MemoryQuota;
+import utm_simulation.simulation.automata.engine.QuotaExceededException;
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.MachineFormatException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Runs a large set of machines which may never halt by dovetailing: every run is advanced by a quantum of steps in
+ * turn, on several worker threads, and retired as soon as it halts, so that short runs finish first without giving
+ * any run an arbitrary budget.
+ *
+ * <p>With {@link Policy#ROUND_ROBIN} every slice runs the same quantum and runs take turns in order. With
+ * {@link Policy#DOUBLING} the quantum of a run doubles with each of its slices and the run with the fewest steps goes
+ * next, so the total work is within a constant factor of the shortest runs.</p>
+ *
+ * <p>Only up to maxLive runs keep their engine between slices. The others are suspended as their configuration
+ * encoded as symbol indices, one byte per cell, and runs which have not started hold nothing but their machine.
+ * Once the suspended runs hold more than the memory budget, further suspended runs are spilled to a file each in the
+ * spill directory and read back for their next slice.</p>
+ *
+ * <p>With a {@link MemoryQuota} the tape or word of every run is limited while it runs. A run paused by the quota is
+ * suspended and parked until another run retires and frees its memory, and retired once no other run is left to
+ * free any.</p>
+ */
+public class DovetailScheduler implements AutoCloseable {
+
+    public enum Policy{ROUND_ROBIN, DOUBLING}
+
+    /**
+     * Represents how a run ended.
+     * <ul>
+     *     <li>HALTED: the machine halted after {@link Run#getSteps()} steps, including the halting step.</li>
+     *     <li>UNDEFINED: the machine reached a configuration without transition.</li>
+     *     <li>BUDGET: the run reached its step budget.</li>
+     *     <li>CANCELLED: the run was cancelled or the scheduler closed.</li>
+     *     <li>FAILED: the run could not be suspended or resumed.</li>
+     *     <li>QUOTA: the run held more memory than its quota allowed.</li>
+     * </ul>
+     */
+    public enum Outcome{HALTED, UNDEFINED, BUDGET, CANCELLED, FAILED, QUOTA}
+
+    /** Largest quantum of the doubling policy. */
+    public static final long MAX_QUANTUM = 1L << 30;
+
+    /**
+     * A machine scheduled for dovetailing
+     */
+    public static final class Run{
+        private final long id;
+        private final String engineName;
+        private final CompiledMachine program;
+        private final long budget;
+
+        /* Owned by the worker running the slice, or by the scheduler while queued */
+        private Engine engine;
+        private Configuration start;
+        private byte[] cells;
+        private int state;
+        private int head;
+        private Path spill;
+
+        private volatile long steps;
+        private volatile int slices;
+        private volatile Outcome outcome;
+        private volatile Configuration result;
+        private volatile boolean cancelled;
+        private long order;
+
+        private Run(long id, String engineName, CompiledMachine program, Configuration start, long budget){
+            this.id = id;
+            this.engineName = engineName;
+            this.program = program;
+            this.start = start;
+            this.budget = budget;
+        }
+
+        public long getId(){
+            return id;
+        }
+
+        public CompiledMachine getProgram(){
+            return program;
+        }
+
+        /**
+         * Returns the number of steps executed so far
+         * @return the number of steps executed so far
+         */
+        public long getSteps(){
+            return steps;
+        }
+
+        /**
+         * Returns the number of slices the run was given so far
+         * @return the number of slices
+         */
+        public int getSlices(){
+            return slices;
+        }
+
+        /**
+         * Returns how the run ended
+         * @return how the run ended, null while it is still scheduled
+         */
+        public Outcome getOutcome(){
+            return outcome;
+        }
+
+        /**
+         * Returns the configuration the run ended in
+         * @return the final configuration, null while the run is scheduled or if it was cancelled
+         */
+        public Configuration getResult(){
+            return result;
+        }
+
+        /**
+         * Cancels the run. It is retired before its next slice.
+         */
+        public void cancel(){
+            cancelled = true;
+        }
+    }
+
+    private final Policy policy;
+    private final long quantum;
+    private final int maxLive;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final boolean temporaryDirectory;
+    private final MemoryQuota quota;
+    private final Consumer<Run> listener;
+    private final PriorityQueue<Run> ready;
+    private final List<Run> parked = new ArrayList<>();
+    private final Thread[] workers;
+
+    private long nextId;
+    private long nextOrder;
+    private int pending;
+    private int active;
+    private int live;
+    private int suspended;
+    private int spilled;
+    private long suspendedBytes;
+    private boolean closed;
+
+    /**
+     * Creates a scheduler and starts its workers
+     * @param numWorkers number of worker threads
+     * @param policy how quanta are given to the runs
+     * @param quantum number of steps of a slice, or of the first slice of a run with {@link Policy#DOUBLING}
+     * @param maxLive maximum number of runs keeping their engine between slices
+     * @param memoryBudget maximum number of bytes held by the suspended runs before they are spilled
+     * @param spillDirectory directory receiving the spilled runs, null for a temporary directory
+     * @param listener notified on a worker thread of every retired run
+     * @throws IllegalArgumentException if a limit is not positive
+     * @throws UncheckedIOException if the temporary spill directory cannot be created
+     */
+    public DovetailScheduler(int numWorkers, Policy policy, long quantum, int maxLive, long memoryBudget,
+                             Path spillDirectory, Consumer<Run> listener){
+        this(numWorkers, policy, quantum, maxLive, memoryBudget, spillDirectory, null, listener);
+    }
+
+    /**
+     * Creates a scheduler whose runs are held to a memory quota and starts its workers
+     * @param numWorkers number of worker threads
+     * @param policy how quanta are given to the runs
+     * @param quantum number of steps of a slice, or of the first slice of a run with {@link Policy#DOUBLING}
+     * @param maxLive maximum number of runs keeping their engine between slices
+     * @param memoryBudget maximum number of bytes held by the suspended runs before they are spilled
+     * @param spillDirectory directory receiving the spilled runs, null for a temporary directory
+     * @param quota memory quota of every run while it holds an engine, null for no quota
+     * @param listener notified on a worker thread of every retired run
+     * @throws IllegalArgumentException if a limit is not positive
+     * @throws UncheckedIOException if the temporary spill directory cannot be created
+     */
+    public DovetailScheduler(int numWorkers, Policy policy, long quantum, int maxLive, long memoryBudget,
+                             Path spillDirectory, MemoryQuota quota, Consumer<Run> listener){
+        if(numWorkers <= 0 || quantum <= 0 || maxLive < 0 || memoryBudget < 0)
+            throw new IllegalArgumentException("Limits must be positive");
+        this.policy = policy;
+        this.quantum = quantum;
+        this.maxLive = maxLive;
+        this.memoryBudget = memoryBudget;
+        this.quota = quota;
+        this.listener = listener;
+        this.temporaryDirectory = spillDirectory == null;
+        try{
+            this.spillDirectory = temporaryDirectory ? Files.createTempDirectory("dovetail") : spillDirectory;
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        Comparator<Run> order = Comparator.comparingLong(run -> run.order);
+        if(policy == Policy.DOUBLING)
+            order = Comparator.<Run>comparingLong(run -> run.steps).thenComparing(order);
+        this.ready = new PriorityQueue<>(order);
+
+        this.workers = new Thread[numWorkers];
+        for(int i = 0; i < numWorkers; i++){
+            workers[i] = new Thread(this::work, "dovetail-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Schedules a compiled machine from its input
+     * @param engineName name of the engine running the machine
+     * @param program the machine to run
+     * @param budget maximum number of steps of the run
+     * @return the scheduled run
+     * @throws IllegalStateException if the scheduler is closed
+     */
+    public Run submit(String engineName, CompiledMachine program, long budget){
+        return submit(engineName, program, null, budget);
+    }
+
+    /**
+     * Schedules a machine from its current configuration. The machine itself is not modified.
+     * @param engineName name of the engine running the machine
+     * @param machine the machine to run
+     * @param budget maximum number of steps of the run
+     * @return the scheduled run
+     * @throws MachineFormatException if the machine cannot be compiled
+     * @throws IllegalStateException if the scheduler is closed
+     */
+    public Run submit(String engineName, Machine machine, long budget) throws MachineFormatException{
+        return submit(engineName, machine.compile(), machine.getConfiguration(), budget);
+    }
+
+    private synchronized Run submit(String engineName, CompiledMachine program, Configuration start, long budget){
+        if(closed)
+            throw new IllegalStateException("The scheduler is closed");
+        Run run = new Run(nextId++, engineName, program, start, budget);
+        pending++;
+        enqueue(run);
+        return run;
+    }
+
+    private void enqueue(Run run){
+        run.order = nextOrder++;
+        ready.add(run);
+        notify();
+    }
+
+    private synchronized Run take() throws InterruptedException{
+        while(!closed && ready.isEmpty())
+            wait();
+        if(closed)
+            return null;
+        active++;
+        return ready.poll();
+    }
+
+    private void work(){
+        try{
+            Run run;
+            while((run = take()) != null){
+                slice(run);
+                List<Run> stuck = null;
+                synchronized(this){
+                    active--;
+                    if(active == 0 && ready.isEmpty() && !parked.isEmpty()){
+                        stuck = new ArrayList<>(parked);
+                        parked.clear();
+                    }
+                }
+                if(stuck != null){
+                    for(Run paused : stuck)
+                        retire(paused, Outcome.QUOTA);
+                }
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs one quantum of a run, then requeues or retires it
+     */
+    private void slice(Run run){
+        if(run.cancelled){
+            retire(run, Outcome.CANCELLED);
+            return;
+        }
+        try{
+            resume(run);
+        }catch(IOException | RuntimeException e){
+            retire(run, Outcome.FAILED);
+            return;
+        }
+
+        long steps = Math.min(quantum(run), run.budget - run.steps);
+        try{
+            run.engine.run(steps);
+        }catch(UnsupportedOperationException e){
+            run.steps = run.engine.getStepCount();
+            retire(run, Outcome.UNDEFINED);
+            return;
+        }catch(QuotaExceededException e){
+            run.steps = run.engine.getStepCount();
+            run.slices++;
+            if(e.isPaused())
+                park(run);
+            else
+                retire(run, Outcome.QUOTA);
+            return;
+        }
+        run.steps = run.engine.getStepCount();
+        run.slices++;
+        if(run.engine.isHalted()){
+            retire(run, Outcome.HALTED);
+            return;
+        }else if(run.steps >= run.budget){
+            retire(run, Outcome.BUDGET);
+            return;
+        }
+
+        boolean keep;
+        synchronized(this){
+            keep = live <= maxLive;
+        }
+        if(!keep){
+            try{
+                suspend(run);
+            }catch(IOException | RuntimeException e){
+                retire(run, Outcome.FAILED);
+                return;
+            }
+        }
+        synchronized(this){
+            if(closed){
+                discard(run);
+                return;
+            }
+            enqueue(run);
+        }
+    }
+
+    /**
+     * Suspends a run paused by its quota until another run retires
+     */
+    private void park(Run run){
+        try{
+            suspend(run);
+        }catch(IOException | RuntimeException e){
+            retire(run, Outcome.FAILED);
+            return;
+        }
+        synchronized(this){
+            if(closed){
+                discard(run);
+                return;
+            }
+            parked.add(run);
+        }
+    }
+
+    private long quantum(Run run){
+        if(policy == Policy.ROUND_ROBIN)
+            return quantum;
+        int shift = Math.min(run.slices, 62);
+        return quantum > MAX_QUANTUM >> shift ? Math.max(quantum, MAX_QUANTUM) : quantum << shift;
+    }
+
+    /**
+     * Gives the run an engine, from its input, its suspended configuration or its spill file
+     */
+    private void resume(Run run) throws IOException{
+        if(run.engine != null)
+            return;
+        Engine engine = quota != null
+                ? Engines.create(run.engineName, run.program, quota)
+                : Engines.create(run.engineName, run.program);
+        synchronized(this){
+            live++;
+        }
+        run.engine = engine;
+        if(run.start != null){
+            engine.restore(run.start, 0);
+            run.start = null;
+            return;
+        }
+        if(run.spill != null){
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.spill)))){
+                run.state = in.readInt();
+                run.head = in.readInt();
+                run.cells = new byte[in.readInt()];
+                in.readFully(run.cells);
+            }
+            Files.delete(run.spill);
+            run.spill = null;
+            synchronized(this){
+                spilled--;
+            }
+        }else if(run.cells != null){
+            synchronized(this){
+                suspended--;
+                suspendedBytes -= run.cells.length;
+            }
+        }else{
+            return;
+        }
+        String cells = run.program.decode(run.cells, 0, run.cells.length);
+        Configuration configuration = run.program.getKind() == CompiledMachine.Kind.TAG_SYSTEM
+                ? Configuration.tag(false, cells)
+                : Configuration.turing(run.state, cells, run.head, run.program.getBlank());
+        engine.restore(configuration, run.steps);
+        run.cells = null;
+    }
+
+    /**
+     * Replaces the engine of the run by its encoded configuration, spilled if the memory budget is exceeded
+     */
+    private void suspend(Run run) throws IOException{
+        Configuration configuration = run.engine.inspect();
+        closeEngine(run);
+        run.state = configuration.getState();
+        run.head = configuration.getHead();
+        run.cells = run.program.encode(configuration.getCells());
+
+        boolean spill;
+        synchronized(this){
+            spill = suspendedBytes + run.cells.length > memoryBudget;
+            if(!spill){
+                suspended++;
+                suspendedBytes += run.cells.length;
+            }
+        }
+        if(!spill)
+            return;
+        Path file = spillDirectory.resolve("run-" + run.id + ".spill");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(run.state);
+            out.writeInt(run.head);
+            out.writeInt(run.cells.length);
+            out.write(run.cells);
+        }
+        run.spill = file;
+        run.cells = null;
+        synchronized(this){
+            spilled++;
+        }
+    }
+
+    private void closeEngine(Run run){
+        if(run.engine == null)
+            return;
+        run.engine.close();
+        run.engine = null;
+        synchronized(this){
+            live--;
+        }
+    }
+
+    private void retire(Run run, Outcome outcome){
+        if(run.engine != null && outcome != Outcome.CANCELLED && outcome != Outcome.FAILED)
+            run.result = run.engine.inspect();
+        discard(run);
+        run.outcome = outcome;
+        synchronized(this){
+            pending--;
+            for(Run paused : parked)
+                enqueue(paused);
+            parked.clear();
+            notifyAll();
+        }
+        if(listener != null)
+            listener.accept(run);
+    }
+
+    /**
+     * Releases everything held by a run
+     */
+    private void discard(Run run){
+        closeEngine(run);
+        if(run.cells != null){
+            synchronized(this){
+                suspended--;
+                suspendedBytes -= run.cells.length;
+            }
+            run.cells = null;
+        }
+        if(run.spill != null){
+            try{
+                Files.deleteIfExists(run.spill);
+            }catch(IOException ignored){
+            }
+            run.spill = null;
+            synchronized(this){
+                spilled--;
+            }
+        }
+        run.start = null;
+    }
+
+    /**
+     * Waits until every scheduled run is retired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitIdle() throws InterruptedException{
+        while(pending > 0 && !closed)
+            wait();
+    }
+
+    /**
+     * Returns the number of runs which are not retired yet
+     * @return the number of scheduled runs
+     */
+    public synchronized int getPending(){
+        return pending;
+    }
+
+    /**
+     * Returns the number of runs paused by the memory quota
+     * @return the number of parked runs
+     */
+    public synchronized int getParked(){
+        return parked.size();
+    }
+
+    /**
+     * Returns the number of runs holding an engine
+     * @return the number of live runs
+     */
+    public synchronized int getLive(){
+        return live;
+    }
+
+    /**
+     * Returns the number of runs suspended in memory
+     * @return the number of suspended runs
+     */
+    public synchronized int getSuspended(){
+        return suspended;
+    }
+
+    /**
+     * Returns the number of bytes held by the runs suspended in memory
+     * @return the memory held by the suspended runs
+     */
+    public synchronized long getSuspendedBytes(){
+        return suspendedBytes;
+    }
+
+    /**
+     * Returns the number of runs spilled to disk
+     * @return the number of spilled runs
+     */
+    public synchronized int getSpilled(){
+        return spilled;
+    }
+
+    /**
+     * Stops the workers once their current slice is done. Queued runs are dropped with their spill files, without
+     * being reported to the listener. A temporary spill directory is removed.
+     */
+    @Override
+    public void close(){
+        synchronized(this){
+            if(closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        for(Thread worker : workers){
+            try{
+                worker.join();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized(this){
+            for(Run run : ready)
+                discard(run);
+            ready.clear();
+            for(Run run : parked)
+                discard(run);
+            parked.clear();
+        }
+        if(temporaryDirectory){
+            try{
+                Files.deleteIfExists(spillDirectory);
+            }catch(IOException ignored){
+            }
+        }
+    }
+}
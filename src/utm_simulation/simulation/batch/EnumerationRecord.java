@@ -0,0 +1,205 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The result of running one machine of an enumeration, stored in a fixed size binary record.
+ *
+ * <p>Symbols are numbered from 0, the blank, and states from 1. Entries of the table which the run never reached are
+ * left undefined: the record stands for every machine of the class that only differs in those entries. A
+ * {@link Outcome#NO_HALT} record also leaves undefined the last entry the run reached, and stands for all
+ * {@link #getCount()} ways to define it without halting.</p>
+ * <pre>
+ * outcome (byte), steps (long), visited cells (int), non blank cells (int), count (int),
+ * per entry next state (byte, -1 halt, 0 undefined), written symbol and shift (byte, symbol * 2 + 1 if moving right)
+ * </pre>
+ */
+public final class EnumerationRecord {
+
+    /**
+     * Represents how the run of a machine ended.
+     * <ul>
+     *     <li>HALT: the machine halted after {@link #getSteps()} steps, including the halting step.</li>
+     *     <li>CYCLE: the machine reached the same configuration twice.</li>
+     *     <li>ESCAPE: the machine moves away on the blank part of the tape forever.</li>
+     *     <li>NO_HALT: the run reached the last undefined entry, and none of its non halting completions can
+     *     halt.</li>
+     *     <li>UNDECIDED: the step budget ran out.</li>
+     * </ul>
+     */
+    public enum Outcome{HALT, CYCLE, ESCAPE, NO_HALT, UNDECIDED}
+
+    private final int numStates;
+    private final int numSymbols;
+    private final Outcome outcome;
+    private final long steps;
+    private final int visited;
+    private final int nonBlank;
+    private final int count;
+    private final int[] nextStates;
+    private final byte[] nextSymbols;
+    private final byte[] shifts;
+
+    EnumerationRecord(int numStates, int numSymbols, Outcome outcome, long steps, int visited, int nonBlank, int count,
+                      int[] nextStates, byte[] nextSymbols, byte[] shifts){
+        this.numStates = numStates;
+        this.numSymbols = numSymbols;
+        this.outcome = outcome;
+        this.steps = steps;
+        this.visited = visited;
+        this.nonBlank = nonBlank;
+        this.count = count;
+        this.nextStates = nextStates;
+        this.nextSymbols = nextSymbols;
+        this.shifts = shifts;
+    }
+
+    /**
+     * Returns the size of a record of the given class of machines
+     * @param numStates number of states
+     * @param numSymbols number of symbols
+     * @return size of a record in bytes
+     */
+    public static int size(int numStates, int numSymbols){
+        return 21 + 2 * numStates * numSymbols;
+    }
+
+    /**
+     * Writes a record
+     * @param out destination of the record
+     * @param outcome how the run ended
+     * @param steps number of steps executed
+     * @param visited number of cells the head visited
+     * @param nonBlank number of non blank cells left on the tape
+     * @param count number of completions of the last undefined entry the record stands for, 1 unless NO_HALT
+     * @param nextStates next state of each entry
+     * @param nextSymbols written symbol of each entry
+     * @param shifts shift of each entry
+     * @throws IOException if the record cannot be written
+     */
+    static void write(DataOutput out, Outcome outcome, long steps, int visited, int nonBlank, int count,
+                      int[] nextStates, byte[] nextSymbols, byte[] shifts) throws IOException{
+        out.writeByte(outcome.ordinal());
+        out.writeLong(steps);
+        out.writeInt(visited);
+        out.writeInt(nonBlank);
+        out.writeInt(count);
+        for(int e = 0; e < nextStates.length; e++){
+            out.writeByte(nextStates[e]);
+            out.writeByte(nextStates[e] > 0 ? nextSymbols[e] * 2 + (shifts[e] > 0 ? 1 : 0) : 0);
+        }
+    }
+
+    /**
+     * Reads a record
+     * @param in source of the record
+     * @param numStates number of states of the enumerated machines
+     * @param numSymbols number of symbols of the enumerated machines
+     * @return the record
+     * @throws IOException if the record cannot be read or is malformed
+     */
+    public static EnumerationRecord read(DataInput in, int numStates, int numSymbols) throws IOException{
+        int code = in.readUnsignedByte();
+        if(code >= Outcome.values().length)
+            throw new IOException("Unknown outcome: " + code);
+        long steps = in.readLong();
+        int visited = in.readInt();
+        int nonBlank = in.readInt();
+        int count = in.readInt();
+        if(count < 1)
+            throw new IOException("Invalid count: " + count);
+        int size = numStates * numSymbols;
+        int[] nextStates = new int[size];
+        byte[] nextSymbols = new byte[size];
+        byte[] shifts = new byte[size];
+        for(int e = 0; e < size; e++){
+            nextStates[e] = in.readByte();
+            int action = in.readUnsignedByte();
+            if(nextStates[e] < CompiledTuringMachine.HALT || nextStates[e] > numStates || action / 2 >= numSymbols)
+                throw new IOException("Malformed transition in entry " + e);
+            nextSymbols[e] = (byte) (action / 2);
+            shifts[e] = (byte) (action % 2 == 1 ? 1 : -1);
+        }
+        return new EnumerationRecord(numStates, numSymbols, Outcome.values()[code], steps, visited, nonBlank,
+                count, nextStates, nextSymbols, shifts);
+    }
+
+    public Outcome getOutcome(){
+        return outcome;
+    }
+
+    /**
+     * Returns the number of steps executed, including the halting step
+     * @return the number of steps executed
+     */
+    public long getSteps(){
+        return steps;
+    }
+
+    /**
+     * Returns the number of distinct cells the head visited
+     * @return the number of visited cells
+     */
+    public int getVisited(){
+        return visited;
+    }
+
+    /**
+     * Returns the number of non blank cells on the tape when the run ended
+     * @return the number of non blank cells
+     */
+    public int getNonBlank(){
+        return nonBlank;
+    }
+
+    /**
+     * Returns the number of machines the record stands for, besides those differing in unreached entries: the number
+     * of non halting completions of the last undefined entry for {@link Outcome#NO_HALT}, 1 otherwise
+     * @return the number of machines of the record
+     */
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * Returns the machine as a compiled Turing machine with symbols '0', '1', ... on a blank tape.
+     * Unreached entries stay undefined.
+     * @return the machine of this record
+     */
+    public CompiledTuringMachine toMachine(){
+        char[] symbols = new char[numSymbols];
+        for(int i = 0; i < numSymbols; i++)
+            symbols[i] = (char) ('0' + i);
+        return new CompiledTuringMachine(symbols, symbols[0], numStates, nextStates, nextSymbols, shifts, new byte[0], 0);
+    }
+
+    /**
+     * Returns the table in the usual compact notation, for example "1RB1LB_1LAHLT",
+     * where HLT halts without writing and --- is undefined.
+     * @return the table in compact notation
+     */
+    public String table(){
+        StringBuilder builder = new StringBuilder();
+        for(int e = 0; e < nextStates.length; e++){
+            if(e > 0 && e % numSymbols == 0)
+                builder.append('_');
+            if(nextStates[e] == CompiledTuringMachine.UNDEFINED)
+                builder.append("---");
+            else if(nextStates[e] == CompiledTuringMachine.HALT)
+                builder.append("HLT");
+            else
+                builder.append(nextSymbols[e]).append(shifts[e] > 0 ? 'R' : 'L').append((char) ('A' + nextStates[e] - 1));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString(){
+        return table() + " " + outcome + " steps=" + steps + " visited=" + visited + " nonBlank=" + nonBlank
+                + (count > 1 ? " count=" + count : "");
+    }
+}
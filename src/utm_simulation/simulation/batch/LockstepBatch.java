@@ -0,0 +1,165 @@
+package utm_simulation.simulation.batch;
+
+import java.util.Arrays;
+
+/**
+ * Runs one compiled machine on many inputs at once.
+ *
+ * <p>Every input is a lane. The state of all lanes is stored in struct of arrays form, in one array per field
+ * indexed by lane, and their tapes or words back to back in a single packed buffer, every lane owning a segment of
+ * it, so that no lane pays for an engine, a tape object or a virtual call. Lanes are advanced by tight loops over the
+ * transition table shared by all of them. Lanes which halt or reach an undefined transition are retired and masked
+ * out of the live lanes, so later runs only visit lanes still running.</p>
+ *
+ * <p>This pays off for sweeps over many small inputs. A lane whose tape or word outgrows its segment moves to a
+ * segment twice as large at the end of the buffer. The segments it leaves behind are reclaimed by packing the
+ * segments of all lanes again whenever the buffer is full.</p>
+ *
+ * <p>A batch is not thread safe. Sweeps are spread over cores by giving every thread a batch of its own.</p>
+ */
+public abstract class LockstepBatch {
+
+    /**
+     * Represents how a lane ended.
+     * <ul>
+     *     <li>HALTED: the machine halted after {@link #getStepCount(int)} steps, including the halting step.</li>
+     *     <li>UNDEFINED: the machine reached a configuration without transition.</li>
+     * </ul>
+     */
+    public enum Outcome{HALTED, UNDEFINED}
+
+    /** Largest number of bytes the packed buffer of a batch can hold. */
+    public static final int MAX_BUFFER = Integer.MAX_VALUE - 8;
+
+    static final int MIN_LANES = 16;
+
+    /* Indices of the live lanes, in no particular order */
+    int[] live = new int[MIN_LANES];
+    int numLive;
+    long[] steps = new long[MIN_LANES];
+    private Outcome[] outcomes = new Outcome[MIN_LANES];
+    private int size;
+
+    /* Packed buffer holding the segment of every lane, from bases[lane] to bases[lane] + sizes[lane] */
+    byte[] cells = new byte[MIN_LANES * 64];
+    int[] bases = new int[MIN_LANES];
+    int[] sizes = new int[MIN_LANES];
+    private int used;
+
+    /**
+     * Returns the number of lanes of the batch
+     * @return the number of lanes
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Returns the number of lanes which neither halted nor reached an undefined transition
+     * @return the number of live lanes
+     */
+    public int getLiveCount(){
+        return numLive;
+    }
+
+    /**
+     * Returns the number of steps executed by a lane
+     * @param lane index of the lane, as returned when it was added
+     * @return the number of steps executed by the lane
+     */
+    public long getStepCount(int lane){
+        checkLane(lane);
+        return steps[lane];
+    }
+
+    /**
+     * Returns how a lane ended
+     * @param lane index of the lane
+     * @return how the lane ended, null while it is still live
+     */
+    public Outcome getOutcome(int lane){
+        checkLane(lane);
+        return outcomes[lane];
+    }
+
+    /**
+     * Advances every live lane by up to given number of steps
+     * @param maxSteps maximum number of steps of every lane
+     * @return the number of steps executed by all lanes together
+     * @throws IllegalStateException if the tapes or words of the lanes outgrow a single buffer
+     */
+    public abstract long run(long maxSteps) throws IllegalStateException;
+
+    /**
+     * Adds a live lane, growing the per lane arrays if needed
+     * @return the index of the new lane
+     */
+    int addLane(){
+        if(size == steps.length){
+            int capacity = size * 2;
+            live = Arrays.copyOf(live, capacity);
+            steps = Arrays.copyOf(steps, capacity);
+            outcomes = Arrays.copyOf(outcomes, capacity);
+            bases = Arrays.copyOf(bases, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            resizeLanes(capacity);
+        }
+        live[numLive++] = size;
+        return size++;
+    }
+
+    /**
+     * Grows the per lane arrays of the subclass to given number of lanes
+     */
+    abstract void resizeLanes(int capacity);
+
+    /**
+     * Records the end of a lane. The caller removes it from the live lanes.
+     */
+    void retire(int lane, Outcome outcome){
+        outcomes[lane] = outcome;
+    }
+
+    void checkLane(int lane){
+        if(lane < 0 || lane >= size)
+            throw new IndexOutOfBoundsException("lane: " + lane + " is out of bounds");
+    }
+
+    /**
+     * Reserves room for a new segment at the end of the buffer, packing the segments of all lanes into a new buffer
+     * if it is full. The caller copies the content of the lane and sets its base and size.
+     * @param size size of the segment in bytes
+     * @return the offset of the segment in {@link #cells}, which may have been replaced
+     * @throws IllegalStateException if the segments of the lanes do not fit in a single buffer
+     */
+    int reserve(int size){
+        if(cells.length - used < size){
+            long needed = size;
+            for(int lane = 0; lane < this.size; lane++)
+                needed += sizes[lane];
+            if(needed > MAX_BUFFER)
+                throw new IllegalStateException("Lanes do not fit in one buffer: " + needed + " bytes needed");
+            byte[] packed = new byte[(int) Math.min(MAX_BUFFER, Math.max(cells.length, needed * 2))];
+            int at = 0;
+            for(int lane = 0; lane < this.size; lane++){
+                System.arraycopy(cells, bases[lane], packed, at, sizes[lane]);
+                bases[lane] = at;
+                at += sizes[lane];
+            }
+            cells = packed;
+            used = at;
+        }
+        int base = used;
+        used += size;
+        return base;
+    }
+
+    /**
+     * Returns the smallest power of two of at least given size
+     */
+    static int segmentSize(int minSize){
+        if(minSize > 1 << 30)
+            throw new IllegalStateException("Lane of " + minSize + " bytes does not fit in one buffer");
+        return Integer.highestOneBit(Math.max(1, minSize - 1)) << 1;
+    }
+}
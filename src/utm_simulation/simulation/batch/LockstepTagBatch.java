@@ -0,0 +1,215 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+
+import java.util.Arrays;
+
+/**
+ * Runs one compiled tag system on many words, like the "array" engine would run each of them.
+ *
+ * <p>Unlike the lanes of a {@link LockstepTuringBatch}, lanes run one after the other, each in a loop holding its
+ * word in locals. The productions appended by a step vary in length, so interleaving the steps of several lanes only
+ * adds branches.</p>
+ *
+ * <p>The segment of every lane is a ring buffer holding its word from the index of its first symbol. Appending a
+ * production writes past the end of the word modulo the segment and deleting symbols only moves the first index, so
+ * no symbol is ever shifted. A word which would no longer fit moves to the start of a segment twice as large.</p>
+ */
+public class LockstepTagBatch extends LockstepBatch {
+
+    /** Smallest segment of a lane, in symbols. */
+    public static final int MIN_SEGMENT = 64;
+
+    private final CompiledTagSystem program;
+    private final int deletionNumber;
+    private final byte blank;
+    private final byte[] types;
+    private final int[] offsets;
+    private final byte[] productions;
+
+    private int[] starts = new int[MIN_LANES];
+    private int[] lengths = new int[MIN_LANES];
+    private boolean[] halted = new boolean[MIN_LANES];
+
+    /**
+     * Creates an empty batch
+     * @param program tag system run by every lane
+     */
+    public LockstepTagBatch(CompiledTagSystem program){
+        this.program = program;
+        this.deletionNumber = program.getDeletionNumber();
+        this.blank = (byte) program.getBlankIndex();
+        this.types = program.getTypes();
+        this.offsets = program.getOffsets();
+        this.productions = program.getProductions();
+    }
+
+    public CompiledTagSystem getProgram(){
+        return program;
+    }
+
+    /**
+     * Adds a lane. An empty word starts as a single blank, as with the engines.
+     * @param input initial word as symbol indices
+     * @return the index of the new lane
+     * @throws IllegalArgumentException if the word uses an undefined symbol index
+     * @throws IllegalStateException if the words of the lanes do not fit in a single buffer
+     */
+    public int add(byte[] input){
+        for(int i = 0; i < input.length; i++){
+            if((input[i] & 0xFF) >= types.length)
+                throw new IllegalArgumentException("Input uses undefined symbol index " + (input[i] & 0xFF) + " at " + i);
+        }
+        int size = segmentSize(Math.max(MIN_SEGMENT, input.length * 2));
+        int lane = addLane();
+        int base = reserve(size);
+        System.arraycopy(input, 0, cells, base, input.length);
+        if(input.length == 0)
+            cells[base] = blank;
+        bases[lane] = base;
+        sizes[lane] = size;
+        starts[lane] = 0;
+        lengths[lane] = Math.max(1, input.length);
+        halted[lane] = false;
+        return lane;
+    }
+
+    /**
+     * Adds a lane starting from the word of a tag system sharing the productions of this batch
+     * @param machine tag system holding the word, such as one returned by {@link CompiledTagSystem#withInput}
+     * @return the index of the new lane
+     */
+    public int add(CompiledTagSystem machine){
+        return add(machine.getInput());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws IllegalStateException {
+        if(maxSteps <= 0)
+            return 0;
+        int[] live = this.live;
+        int n = numLive;
+        int kept = 0;
+        long total = 0;
+        for(int i = 0; i < n; i++){
+            int lane = live[i];
+            long steps = runLane(lane, maxSteps);
+            this.steps[lane] += steps;
+            total += steps;
+            if(getOutcome(lane) == null)
+                live[kept++] = lane;
+        }
+        numLive = kept;
+        return total;
+    }
+
+    /**
+     * Runs a single lane for up to given number of steps
+     * @return the number of steps executed, including the halting step
+     */
+    private long runLane(int lane, long maxSteps){
+        long done = 0;
+        while(done < maxSteps){
+            int quota = (int) Math.min(Integer.MAX_VALUE, maxSteps - done);
+            byte[] words = cells;
+            int base = bases[lane];
+            int mask = sizes[lane] - 1;
+            int start = starts[lane];
+            int length = lengths[lane];
+            int k = 0;
+            int needed = 0;
+            for(; k < quota; k++){
+                int symbol = words[base + start] & 0xFF;
+                if(types[symbol] != CompiledTagSystem.APPEND)
+                    break;
+                int production = offsets[symbol];
+                int count = offsets[symbol + 1] - production;
+                if(length + count > mask + 1){
+                    needed = length + count;
+                    break;
+                }
+                int tail = start + length;
+                for(int j = 0; j < count; j++)
+                    words[base + ((tail + j) & mask)] = productions[production + j];
+                length += count;
+                if(length <= deletionNumber){
+                    words[base] = blank;
+                    start = 0;
+                    length = 1;
+                }else{
+                    start = (start + deletionNumber) & mask;
+                    length -= deletionNumber;
+                }
+            }
+            starts[lane] = start;
+            lengths[lane] = length;
+            done += k;
+            if(needed > 0){
+                grow(lane, needed);
+            }else if(k < quota){
+                // the halting step counts, the undefined one does not
+                boolean halt = types[words[base + start] & 0xFF] == CompiledTagSystem.HALT;
+                halted[lane] = halt;
+                retire(lane, halt ? Outcome.HALTED : Outcome.UNDEFINED);
+                return halt ? done + 1 : done;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Moves the word of a lane to the start of a segment of at least given size, at least twice as large as before
+     */
+    private void grow(int lane, int minSize){
+        int size = segmentSize(Math.max(minSize, sizes[lane] * 2));
+        int base = reserve(size);
+        copyWord(lane, cells, base);
+        bases[lane] = base;
+        sizes[lane] = size;
+        starts[lane] = 0;
+    }
+
+    /**
+     * Copies the word of a lane in order, unwrapping the ring buffer
+     */
+    private void copyWord(int lane, byte[] target, int offset){
+        int base = bases[lane];
+        int first = Math.min(lengths[lane], sizes[lane] - starts[lane]);
+        System.arraycopy(cells, base + starts[lane], target, offset, first);
+        System.arraycopy(cells, base, target, offset + first, lengths[lane] - first);
+    }
+
+    @Override
+    void resizeLanes(int capacity){
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        halted = Arrays.copyOf(halted, capacity);
+    }
+
+    /**
+     * Returns the number of symbols in the current word of a lane
+     * @param lane index of the lane
+     * @return the number of symbols in the word
+     */
+    public int getWordLength(int lane){
+        checkLane(lane);
+        return lengths[lane];
+    }
+
+    /**
+     * Returns the configuration of a lane, as {@link utm_simulation.simulation.automata.engine.Engine#inspect()}
+     * would report it
+     * @param lane index of the lane
+     * @return the canonical configuration of the lane
+     */
+    public Configuration inspect(int lane){
+        checkLane(lane);
+        byte[] word = new byte[lengths[lane]];
+        copyWord(lane, word, 0);
+        return Configuration.tag(halted[lane], program.decode(word, 0, word.length));
+    }
+}
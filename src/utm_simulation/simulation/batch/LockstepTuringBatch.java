@@ -0,0 +1,346 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.automata.engine.Configuration;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.util.Arrays;
+
+/**
+ * Runs one compiled Turing machine on many tapes in lockstep, like the "array" engine would run each of them.
+ *
+ * <p>Lanes are stepped four at a time, their heads and states held in locals of the inner loop so that the four
+ * dependency chains of table lookups overlap in the processor. A lane leaves the group when it halts, reaches an
+ * undefined transition or runs out of steps, and the next live lane takes its place.</p>
+ *
+ * <p>The state of a lane is kept as the offset of its row in the transition table, and the table maps every entry
+ * straight to the row of the next state, so a step is two table lookups and no multiplication. Both ends of every
+ * segment hold an extra edge symbol whose entries lead to no state, so the inner loop needs no bounds check: a head
+ * reaching an edge stops the group like a halt would, and its tape moves to the middle of a segment twice as
+ * large.</p>
+ */
+public class LockstepTuringBatch extends LockstepBatch {
+
+    /** Smallest segment of a lane, in cells. */
+    public static final int MIN_SEGMENT = 64;
+
+    /** Number of lanes stepped together by the inner loop. */
+    private static final int GROUP = 4;
+
+    private static final int HALT_ROW = -1;
+    private static final int UNDEFINED_ROW = -2;
+    private static final int EDGE_ROW = -3;
+
+    private final CompiledTuringMachine program;
+    private final int width;
+    private final byte blank;
+    private final byte edge;
+    private final int[] nextRows;
+    private final byte[] nextSymbols;
+    private final byte[] shifts;
+
+    private int[] rows = new int[MIN_LANES];
+    private int[] heads = new int[MIN_LANES];
+    private int[] origins = new int[MIN_LANES];
+
+    /**
+     * Creates an empty batch
+     * @param program machine run by every lane
+     */
+    public LockstepTuringBatch(CompiledTuringMachine program){
+        this.program = program;
+        this.blank = (byte) program.getBlankIndex();
+        int numSymbols = program.getNumSymbols();
+        this.edge = (byte) numSymbols;
+        this.width = numSymbols + 1;
+
+        int[] nextStates = program.getNextStates();
+        byte[] symbols = program.getNextSymbols();
+        byte[] moves = program.getShifts();
+        int size = program.getNumStates() * width;
+        this.nextRows = new int[size];
+        this.nextSymbols = new byte[size];
+        this.shifts = new byte[size];
+        for(int state = 0; state < program.getNumStates(); state++){
+            nextRows[state * width + numSymbols] = EDGE_ROW;
+            for(int s = 0; s < numSymbols; s++){
+                int from = state * numSymbols + s;
+                int to = state * width + s;
+                int next = nextStates[from];
+                nextRows[to] = next == CompiledTuringMachine.HALT ? HALT_ROW
+                        : next == CompiledTuringMachine.UNDEFINED ? UNDEFINED_ROW : (next - 1) * width;
+                nextSymbols[to] = symbols[from];
+                shifts[to] = moves[from];
+            }
+        }
+    }
+
+    public CompiledTuringMachine getProgram(){
+        return program;
+    }
+
+    /**
+     * Adds a lane starting in state 1
+     * @param input initial content of the tape as symbol indices
+     * @param headIndex initial position of the head in the input
+     * @return the index of the new lane
+     * @throws IllegalArgumentException if the input uses an undefined symbol index or the head is outside of it
+     * @throws IllegalStateException if the tapes of the lanes do not fit in a single buffer
+     */
+    public int add(byte[] input, int headIndex){
+        if(headIndex < 0 || headIndex > input.length)
+            throw new IllegalArgumentException("Head index " + headIndex + " is outside of the input");
+        for(int i = 0; i < input.length; i++){
+            if((input[i] & 0xFF) >= width - 1)
+                throw new IllegalArgumentException("Input uses undefined symbol index " + (input[i] & 0xFF) + " at " + i);
+        }
+        int size = segmentSize(Math.max(MIN_SEGMENT, input.length * 2));
+        int lane = addLane();
+        int base = reserve(size);
+        int offset = (size - input.length) / 2;
+        Arrays.fill(cells, base, base + size, blank);
+        System.arraycopy(input, 0, cells, base + offset, input.length);
+        cells[base] = edge;
+        cells[base + size - 1] = edge;
+        bases[lane] = base;
+        sizes[lane] = size;
+        rows[lane] = 0;
+        heads[lane] = offset + headIndex;
+        origins[lane] = offset;
+        return lane;
+    }
+
+    /**
+     * Adds a lane starting from the input of a machine sharing the transition table of this batch
+     * @param machine machine holding the input, such as one returned by {@link CompiledTuringMachine#withInput}
+     * @return the index of the new lane
+     */
+    public int add(CompiledTuringMachine machine){
+        return add(machine.getInput(), machine.getHeadIndex());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(long maxSteps) throws IllegalStateException {
+        if(maxSteps <= 0)
+            return 0;
+        int[] live = this.live;
+        int n = numLive;
+        int next = 0;
+        int kept = 0;
+        long total = 0;
+        int[] group = new int[GROUP];
+        long[] done = new long[GROUP];
+        int filled = 0;
+        while(filled < GROUP && next < n)
+            group[filled++] = live[next++];
+
+        while(filled == GROUP){
+            long quota = Integer.MAX_VALUE;
+            for(int slot = 0; slot < GROUP; slot++)
+                quota = Math.min(quota, maxSteps - done[slot]);
+            int rounds = runGroup(group[0], group[1], group[2], group[3], (int) quota);
+            for(int slot = 0; slot < GROUP; slot++)
+                done[slot] += rounds;
+
+            int slot = 0;
+            while(slot < filled){
+                int lane = group[slot];
+                if(done[slot] < maxSteps && !stopped(lane)){
+                    slot++;
+                    continue;
+                }
+                long steps = done[slot] + (getOutcome(lane) == Outcome.HALTED ? 1 : 0);
+                this.steps[lane] += steps;
+                total += steps;
+                if(getOutcome(lane) == null)
+                    live[kept++] = lane;
+                if(next < n){
+                    group[slot] = live[next++];
+                    done[slot] = 0;
+                    slot++;
+                }else{
+                    group[slot] = group[--filled];
+                    done[slot] = done[filled];
+                }
+            }
+        }
+
+        // fewer lanes than a group are left, they are finished one at a time
+        for(int slot = 0; slot < filled; slot++){
+            int lane = group[slot];
+            long steps = done[slot] + runLane(lane, maxSteps - done[slot]);
+            this.steps[lane] += steps;
+            total += steps;
+            if(getOutcome(lane) == null)
+                live[kept++] = lane;
+        }
+        numLive = kept;
+        return total;
+    }
+
+    /**
+     * Runs four lanes together, keeping their heads and states in registers
+     * @return the number of rounds run, less than quota if a lane reached an edge, a halting or an undefined transition
+     */
+    private int runGroup(int a, int b, int c, int d, int quota){
+        byte[] tapes = cells;
+        int[] nextRows = this.nextRows;
+        byte[] nextSymbols = this.nextSymbols;
+        byte[] shifts = this.shifts;
+        int ca = bases[a] + heads[a];
+        int cb = bases[b] + heads[b];
+        int cc = bases[c] + heads[c];
+        int cd = bases[d] + heads[d];
+        int ra = rows[a];
+        int rb = rows[b];
+        int rc = rows[c];
+        int rd = rows[d];
+        int k = 0;
+        for(; k < quota; k++){
+            int ea = ra + (tapes[ca] & 0xFF);
+            int eb = rb + (tapes[cb] & 0xFF);
+            int ec = rc + (tapes[cc] & 0xFF);
+            int ed = rd + (tapes[cd] & 0xFF);
+            int na = nextRows[ea];
+            int nb = nextRows[eb];
+            int nc = nextRows[ec];
+            int nd = nextRows[ed];
+            if((na | nb | nc | nd) < 0)
+                break;
+            tapes[ca] = nextSymbols[ea];
+            tapes[cb] = nextSymbols[eb];
+            tapes[cc] = nextSymbols[ec];
+            tapes[cd] = nextSymbols[ed];
+            ca += shifts[ea];
+            cb += shifts[eb];
+            cc += shifts[ec];
+            cd += shifts[ed];
+            ra = na;
+            rb = nb;
+            rc = nc;
+            rd = nd;
+        }
+        heads[a] = ca - bases[a];
+        heads[b] = cb - bases[b];
+        heads[c] = cc - bases[c];
+        heads[d] = cd - bases[d];
+        rows[a] = ra;
+        rows[b] = rb;
+        rows[c] = rc;
+        rows[d] = rd;
+        return k;
+    }
+
+    /**
+     * Runs a single lane for up to given number of steps
+     * @return the number of steps executed, including the halting step
+     */
+    private long runLane(int lane, long maxSteps){
+        long done = 0;
+        while(done < maxSteps){
+            int quota = (int) Math.min(Integer.MAX_VALUE, maxSteps - done);
+            byte[] tapes = cells;
+            int cell = bases[lane] + heads[lane];
+            int row = rows[lane];
+            int k = 0;
+            for(; k < quota; k++){
+                int entry = row + (tapes[cell] & 0xFF);
+                int next = nextRows[entry];
+                if(next < 0)
+                    break;
+                tapes[cell] = nextSymbols[entry];
+                cell += shifts[entry];
+                row = next;
+            }
+            heads[lane] = cell - bases[lane];
+            rows[lane] = row;
+            done += k;
+            if(k < quota && stopped(lane))
+                return done + (getOutcome(lane) == Outcome.HALTED ? 1 : 0);
+        }
+        return done;
+    }
+
+    /**
+     * Checks the next transition of a lane whose inner loop stopped. A lane at an edge gets a larger segment, a lane
+     * at a halting or undefined transition is retired.
+     * @return whether the lane was retired
+     */
+    private boolean stopped(int lane){
+        int next = nextRows[rows[lane] + (cells[bases[lane] + heads[lane]] & 0xFF)];
+        if(next == EDGE_ROW){
+            grow(lane);
+            return false;
+        }
+        if(next >= 0)
+            return false;
+        if(next == HALT_ROW)
+            rows[lane] = HALT_ROW;
+        retire(lane, next == HALT_ROW ? Outcome.HALTED : Outcome.UNDEFINED);
+        return true;
+    }
+
+    /**
+     * Moves the tape of a lane to the middle of a segment twice as large. The edges of the old segment become blank
+     * cells of the new one.
+     */
+    private void grow(int lane){
+        int old = sizes[lane];
+        int size = segmentSize(old * 2);
+        int base = reserve(size);
+        int offset = (size - old) / 2;
+        Arrays.fill(cells, base, base + size, blank);
+        System.arraycopy(cells, bases[lane] + 1, cells, base + offset + 1, old - 2);
+        cells[base] = edge;
+        cells[base + size - 1] = edge;
+        bases[lane] = base;
+        sizes[lane] = size;
+        heads[lane] += offset;
+        origins[lane] += offset;
+    }
+
+    @Override
+    void resizeLanes(int capacity){
+        rows = Arrays.copyOf(rows, capacity);
+        heads = Arrays.copyOf(heads, capacity);
+        origins = Arrays.copyOf(origins, capacity);
+    }
+
+    /**
+     * Returns the current state of a lane, -1 once halted
+     * @param lane index of the lane
+     * @return the current state of the lane
+     */
+    public int getState(int lane){
+        checkLane(lane);
+        return rows[lane] == HALT_ROW ? CompiledTuringMachine.HALT : rows[lane] / width + 1;
+    }
+
+    /**
+     * Returns the position of the head of a lane relative to the first cell of its input
+     * @param lane index of the lane
+     * @return the position of the head
+     */
+    public long getHeadPosition(int lane){
+        checkLane(lane);
+        return heads[lane] - origins[lane];
+    }
+
+    /**
+     * Returns the configuration of a lane, as {@link utm_simulation.simulation.automata.engine.Engine#inspect()}
+     * would report it
+     * @param lane index of the lane
+     * @return the canonical configuration of the lane
+     */
+    public Configuration inspect(int lane){
+        checkLane(lane);
+        // a lane which ran out of steps may have stopped on an edge
+        if(cells[bases[lane] + heads[lane]] == edge)
+            grow(lane);
+        int base = bases[lane];
+        return Configuration.turing(getState(lane), program.decode(cells, base + 1, base + sizes[lane] - 1),
+                heads[lane] - 1, program.getBlank());
+    }
+}
@@ -0,0 +1,522 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Enumerates every Turing machine of a class, given by its number of states and symbols, and runs each one
+ * from a blank tape.
+ *
+ * <p>Machines are generated in tree normal form: a run starts with an empty table, and whenever it reaches an undefined
+ * entry, it branches on every way to define it, including halting. Entries which are never reached stay undefined, so
+ * a single record stands for all machines differing only in them. Symmetric machines are pruned by only introducing
+ * the lowest unused state and symbol, and by making the first move go right.</p>
+ *
+ * <p>Each run ends when the machine halts, repeats a configuration, escapes on the blank tape, has no halting entry
+ * left, or exhausts the step budget. The top of the tree is split into a fixed number of tasks run on a work stealing
+ * pool. Every task writes its records to its own part file and is recorded in a checkpoint once complete, so an
+ * interrupted sweep resumes where it stopped. The parts are finally merged in order, which makes the output
+ * independent of the scheduling.</p>
+ *
+ * <p>The output starts with a header followed by {@link EnumerationRecord}s, all in big endian order.</p>
+ * <pre>
+ * header: magic "UTME" (int), number of states (byte), number of symbols (byte), reserved (short), step budget (long)
+ * </pre>
+ */
+public class MachineEnumerator {
+
+    public static final int MAGIC = 0x55544D45; // "UTME"
+    public static final int HEADER_SIZE = 16;
+    /** Maximum number of states or symbols, so that a table entry fits in two bytes. */
+    public static final int MAX_SIZE = 127;
+    /** Number of subtrees the top of the tree is split into. It does not depend on the machine running the sweep. */
+    public static final int TASKS = 4096;
+
+    /** Index of the records found while splitting the tree, which come before every subtree. */
+    public static final int FRONTIER = -1;
+
+    private static final int MIN_CAPACITY = 64;
+
+    /**
+     * Configuration of a run when it reached an undefined entry. It is shared by all the children and never modified.
+     */
+    private static final class Snapshot{
+        private final byte[] tape;
+        private final int head;
+        private final int low;
+        private final int high;
+        private final int state;
+        private final long steps;
+
+        private Snapshot(byte[] tape, int head, int low, int high, int state, long steps){
+            this.tape = tape;
+            this.head = head;
+            this.low = low;
+            this.high = high;
+            this.state = state;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * A partial table and the configuration its run continues from.
+     */
+    private static final class Node{
+        private final int[] nextStates;
+        private final byte[] nextSymbols;
+        private final byte[] shifts;
+        private final int defined;
+        private final int maxState;
+        private final int maxSymbol;
+        private final Snapshot start;
+
+        private Node(int[] nextStates, byte[] nextSymbols, byte[] shifts, int defined, int maxState, int maxSymbol,
+                     Snapshot start){
+            this.nextStates = nextStates;
+            this.nextSymbols = nextSymbols;
+            this.shifts = shifts;
+            this.defined = defined;
+            this.maxState = maxState;
+            this.maxSymbol = maxSymbol;
+            this.start = start;
+        }
+    }
+
+    private final int numStates;
+    private final int numSymbols;
+    private final long budget;
+    private List<Node> frontier;
+
+    /**
+     * Creates an enumerator
+     * @param numStates number of states of the machines
+     * @param numSymbols number of symbols of the machines, including the blank
+     * @param budget maximum number of steps of every run
+     * @throws IllegalArgumentException if the class or the budget is invalid
+     */
+    public MachineEnumerator(int numStates, int numSymbols, long budget){
+        if(numStates < 1 || numStates > MAX_SIZE || numSymbols < 2 || numSymbols > MAX_SIZE)
+            throw new IllegalArgumentException("Invalid class: " + numStates + " states, " + numSymbols + " symbols");
+        if(budget <= 0)
+            throw new IllegalArgumentException("budget must be positive");
+        this.numStates = numStates;
+        this.numSymbols = numSymbols;
+        this.budget = budget;
+    }
+
+    /**
+     * Enumerates the class on a common pool sized to the available processors
+     * @param output file the records are written to
+     * @throws IOException if the output or the checkpoint cannot be accessed
+     */
+    public void sweep(Path output) throws IOException{
+        sweep(output, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Enumerates the class, resuming a previous interrupted sweep into the same output if there is one.
+     * Intermediate files are kept in a directory named after the output with a ".parts" suffix.
+     * @param output file the records are written to
+     * @param pool pool running the tasks
+     * @throws IOException if the output or the checkpoint cannot be accessed, or the checkpoint belongs to another sweep
+     */
+    public void sweep(Path output, ForkJoinPool pool) throws IOException{
+        Path parts = Paths.get(output + ".parts");
+        Files.createDirectories(parts);
+        sweepSubtree(FRONTIER, parts.resolve("frontier"));
+        int numTasks = getNumTasks();
+
+        Path checkpoint = parts.resolve("checkpoint");
+        String header = numStates + " " + numSymbols + " " + budget + " " + numTasks;
+        Set<Integer> completed = new HashSet<>();
+        if(Files.exists(checkpoint)){
+            List<String> lines = Files.readAllLines(checkpoint, StandardCharsets.US_ASCII);
+            if(lines.isEmpty() || !lines.get(0).equals(header))
+                throw new IOException("Checkpoint " + checkpoint + " belongs to another sweep");
+            for(String line : lines.subList(1, lines.size()))
+                completed.add(Integer.parseInt(line.trim()));
+        }else{
+            Files.write(checkpoint, (header + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for(int i = 0; i < numTasks; i++){
+            if(!completed.contains(i))
+                tasks.add(new SubtreeTask(i, parts, checkpoint));
+        }
+        try{
+            pool.invoke(new RecursiveAction(){
+                @Override
+                protected void compute(){
+                    invokeAll(tasks);
+                }
+            });
+        }catch(UncheckedIOException e){
+            throw e.getCause();
+        }
+
+        List<Path> files = new ArrayList<>();
+        files.add(parts.resolve("frontier"));
+        for(int i = 0; i < numTasks; i++)
+            files.add(parts.resolve("part-" + i));
+        merge(output, files);
+        Files.delete(checkpoint);
+        Files.delete(parts);
+    }
+
+    /**
+     * Explores a subtree, writing its records to its own part file and recording it in the checkpoint.
+     */
+    private final class SubtreeTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final Path parts;
+        private final Path checkpoint;
+
+        private SubtreeTask(int index, Path parts, Path checkpoint){
+            this.index = index;
+            this.parts = parts;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        protected void compute(){
+            try{
+                sweepSubtree(index, parts.resolve("part-" + index));
+                synchronized(MachineEnumerator.this){
+                    Files.write(checkpoint, (index + "\n").getBytes(StandardCharsets.US_ASCII),
+                            StandardOpenOption.APPEND);
+                }
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of subtrees the top of the tree is split into, at most {@link #TASKS}
+     * @return the number of subtrees
+     */
+    public int getNumTasks(){
+        return frontier().size();
+    }
+
+    /**
+     * Writes the records of one subtree of the enumeration to a file. The whole enumeration is made of the records
+     * of {@link #FRONTIER} followed by those of every subtree in order, so subtrees can be swept independently,
+     * even by different processes, and {@link #merge merged} afterwards.
+     * @param index index of the subtree, or {@link #FRONTIER} for the records found while splitting the tree
+     * @param part file the records are written to
+     * @return the number of records written
+     * @throws IOException if the file cannot be written
+     * @throws IndexOutOfBoundsException if there is no such subtree
+     */
+    public long sweepSubtree(int index, Path part) throws IOException{
+        try(DataOutputStream out = open(part)){
+            if(index == FRONTIER){
+                List<Node> nodes = split(out);
+                synchronized(this){
+                    if(frontier == null)
+                        frontier = nodes;
+                }
+            }else{
+                Deque<Node> stack = new ArrayDeque<>();
+                stack.add(frontier().get(index));
+                while(!stack.isEmpty())
+                    explore(stack.pollLast(), out, stack::addLast);
+            }
+        }
+        return Files.size(part) / EnumerationRecord.size(numStates, numSymbols);
+    }
+
+    /**
+     * Explores the tree breadth first until it is split into enough subtrees
+     */
+    private List<Node> split(DataOutput out) throws IOException{
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root());
+        while(!queue.isEmpty() && queue.size() < TASKS)
+            explore(queue.pollFirst(), out, queue::addLast);
+        return new ArrayList<>(queue);
+    }
+
+    private synchronized List<Node> frontier(){
+        if(frontier == null){
+            try{
+                frontier = split(new DataOutputStream(OutputStream.nullOutputStream()));
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        return frontier;
+    }
+
+    private static DataOutputStream open(Path path) throws IOException{
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+    }
+
+    /**
+     * Writes the header of the enumeration followed by the content of given part files, then removes the parts.
+     * @param output the file to write
+     * @param parts files written by {@link #sweepSubtree}, in order
+     * @throws IOException if a part cannot be read or the output cannot be written
+     */
+    public void merge(Path output, List<Path> parts) throws IOException{
+        try(DataOutputStream out = open(output)){
+            out.writeInt(MAGIC);
+            out.writeByte(numStates);
+            out.writeByte(numSymbols);
+            out.writeShort(0);
+            out.writeLong(budget);
+            for(Path part : parts)
+                Files.copy(part, out);
+        }
+        for(Path part : parts)
+            Files.delete(part);
+    }
+
+    private Node root(){
+        int size = numStates * numSymbols;
+        Snapshot start = new Snapshot(new byte[MIN_CAPACITY], MIN_CAPACITY / 2, MIN_CAPACITY / 2, MIN_CAPACITY / 2, 1, 0);
+        return new Node(new int[size], new byte[size], new byte[size], 0, 1, 0, start);
+    }
+
+    /**
+     * Runs the machine of a node until its outcome is known or it reaches an undefined entry,
+     * in which case the children are handed to given consumer.
+     */
+    private void explore(Node node, DataOutput out, Consumer<Node> children) throws IOException{
+        int[] nextStates = node.nextStates;
+        byte[] nextSymbols = node.nextSymbols;
+        byte[] shifts = node.shifts;
+        Snapshot start = node.start;
+        byte[] tape = Arrays.copyOf(start.tape, start.tape.length);
+        int head = start.head;
+        int low = start.low;
+        int high = start.high;
+        int state = start.state;
+        long steps = start.steps;
+
+        // Configuration saved at doubling intervals, to detect a repeated configuration without storing them all
+        byte[] saved = null;
+        int savedState = 0;
+        int savedHead = 0;
+        int savedLow = 0;
+        int savedHigh = 0;
+        long interval = 1;
+        long nextSave = steps + 1;
+
+        while(steps < budget){
+            int entry = (state - 1) * numSymbols + tape[head];
+            int next = nextStates[entry];
+            if(next == CompiledTuringMachine.UNDEFINED){
+                branch(node, out, children, entry, new Snapshot(tape, head, low, high, state, steps));
+                return;
+            }
+            tape[head] = nextSymbols[entry];
+            int shift = shifts[entry];
+            head += shift;
+            state = next;
+            steps++;
+            if(head < 0 || head >= tape.length){
+                int offset = head < 0 ? tape.length : 0;
+                byte[] grown = new byte[tape.length * 2];
+                System.arraycopy(tape, 0, grown, offset, tape.length);
+                tape = grown;
+                head += offset;
+                low += offset;
+                high += offset;
+                savedHead += offset;
+                savedLow += offset;
+                savedHigh += offset;
+            }
+            if(head < low || head > high){
+                low = Math.min(low, head);
+                high = Math.max(high, head);
+                if(escapes(nextStates, shifts, state, shift)){
+                    EnumerationRecord.write(out, EnumerationRecord.Outcome.ESCAPE, steps, high - low + 1,
+                            nonBlank(tape, low, high), 1, nextStates, nextSymbols, shifts);
+                    return;
+                }
+            }else if(saved != null && state == savedState && head == savedHead && low == savedLow && high == savedHigh
+                    && Arrays.equals(tape, low, high + 1, saved, 0, saved.length)){
+                EnumerationRecord.write(out, EnumerationRecord.Outcome.CYCLE, steps, high - low + 1,
+                        nonBlank(tape, low, high), 1, nextStates, nextSymbols, shifts);
+                return;
+            }
+            if(steps == nextSave){
+                saved = Arrays.copyOfRange(tape, low, high + 1);
+                savedState = state;
+                savedHead = head;
+                savedLow = low;
+                savedHigh = high;
+                interval *= 2;
+                nextSave = steps + interval;
+            }
+        }
+        EnumerationRecord.write(out, EnumerationRecord.Outcome.UNDECIDED, steps, high - low + 1,
+                nonBlank(tape, low, high), 1, nextStates, nextSymbols, shifts);
+    }
+
+    /**
+     * Records the halting completion of an undefined entry and generates the other completions.
+     */
+    private void branch(Node node, DataOutput out, Consumer<Node> children, int entry, Snapshot snapshot)
+            throws IOException{
+        int[] nextStates = node.nextStates;
+        byte[] nextSymbols = node.nextSymbols;
+        byte[] shifts = node.shifts;
+        int visited = snapshot.high - snapshot.low + 1;
+        int nonBlank = nonBlank(snapshot.tape, snapshot.low, snapshot.high);
+
+        nextStates[entry] = CompiledTuringMachine.HALT;
+        EnumerationRecord.write(out, EnumerationRecord.Outcome.HALT, snapshot.steps + 1, visited, nonBlank, 1,
+                nextStates, nextSymbols, shifts);
+
+        int states = Math.min(node.maxState + 1, numStates);
+        int symbols = Math.min(node.maxSymbol + 1, numSymbols - 1);
+        int firstShift = snapshot.steps == 0 ? 1 : -1;
+        if(node.defined + 1 == nextStates.length){
+            // no halting entry is left to any completion, a single record stands for all of them
+            nextStates[entry] = CompiledTuringMachine.UNDEFINED;
+            int count = states * (symbols + 1) * (firstShift == 1 ? 1 : 2);
+            EnumerationRecord.write(out, EnumerationRecord.Outcome.NO_HALT, snapshot.steps, visited, nonBlank, count,
+                    nextStates, nextSymbols, shifts);
+            return;
+        }
+        for(int state = 1; state <= states; state++){
+            for(int symbol = 0; symbol <= symbols; symbol++){
+                for(int shift = firstShift; shift <= 1; shift += 2){
+                    int[] childStates = Arrays.copyOf(nextStates, nextStates.length);
+                    byte[] childSymbols = Arrays.copyOf(nextSymbols, nextSymbols.length);
+                    byte[] childShifts = Arrays.copyOf(shifts, shifts.length);
+                    childStates[entry] = state;
+                    childSymbols[entry] = (byte) symbol;
+                    childShifts[entry] = (byte) shift;
+                    children.accept(new Node(childStates, childSymbols, childShifts, node.defined + 1,
+                            Math.max(node.maxState, state), Math.max(node.maxSymbol, symbol), snapshot));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a machine entering a blank cell never seen before keeps moving the same way forever.
+     * It does if it moves on through as many blank cells as there are states, since it then repeats a state.
+     */
+    private boolean escapes(int[] nextStates, byte[] shifts, int state, int direction){
+        for(int i = 0; i < numStates; i++){
+            int entry = (state - 1) * numSymbols;
+            if(nextStates[entry] <= 0 || shifts[entry] != direction)
+                return false;
+            state = nextStates[entry];
+        }
+        return true;
+    }
+
+    private static int nonBlank(byte[] tape, int low, int high){
+        int count = 0;
+        for(int i = low; i <= high; i++){
+            if(tape[i] != 0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads every record of an enumeration output
+     * @param output the output of a sweep
+     * @param consumer receives the records in order
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static void read(Path output, Consumer<EnumerationRecord> consumer) throws IOException{
+        try(InputStream stream = Files.newInputStream(output)){
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+            if(in.readInt() != MAGIC)
+                throw new IOException(output + " is not an enumeration output");
+            int numStates = in.readUnsignedByte();
+            int numSymbols = in.readUnsignedByte();
+            in.readShort();
+            in.readLong();
+            while(true){
+                in.mark(1);
+                if(in.read() < 0)
+                    return;
+                in.reset();
+                try{
+                    consumer.accept(EnumerationRecord.read(in, numStates, numSymbols));
+                }catch(EOFException e){
+                    throw new IOException(output + " ends with a truncated record", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enumerates a class of machines and prints a summary of the outcomes.
+     * Running it again after an interruption resumes the sweep.
+     * @param args number of states, number of symbols, step budget, output file and optionally number of threads
+     * @throws IOException if the output cannot be written
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 4){
+            System.err.println("Usage: MachineEnumerator <states> <symbols> <step budget> <output file> [threads]");
+            System.exit(1);
+        }
+        MachineEnumerator enumerator = new MachineEnumerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Long.parseLong(args[2]));
+        Path output = Paths.get(args[3]);
+        long start = System.nanoTime();
+        if(args.length > 4){
+            ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(args[4]));
+            try{
+                enumerator.sweep(output, pool);
+            }finally{
+                pool.shutdown();
+            }
+        }else{
+            enumerator.sweep(output);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Map<EnumerationRecord.Outcome, Long> counts = new EnumMap<>(EnumerationRecord.Outcome.class);
+        EnumerationRecord[] longest = new EnumerationRecord[1];
+        read(output, record -> {
+            counts.merge(record.getOutcome(), (long) record.getCount(), Long::sum);
+            if(record.getOutcome() == EnumerationRecord.Outcome.HALT
+                    && (longest[0] == null || record.getSteps() > longest[0].getSteps()))
+                longest[0] = record;
+        });
+        System.out.println("Swept in " + elapsed / 1_000_000 + " ms: " + counts);
+        if(longest[0] != null)
+            System.out.println("Longest halting run: " + longest[0]);
+    }
+}
@@ -0,0 +1,212 @@
+package utm_simulation.simulation.batch;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent cache of the eventual outcome of tag system words, shared by runs of the same tag system on different
+ * inputs. Words are identified by a 128 bit {@link Fingerprint}.
+ *
+ * <p>The cache is bounded by an estimate of its memory use. Once the bound is exceeded, an arbitrary portion of the
+ * entries is evicted. All methods are safe to call from several threads.</p>
+ */
+public class OutcomeCache {
+
+    /**
+     * Identifies a word by its length and two independent 64 bit hashes.
+     */
+    public static final class Fingerprint{
+        private final long length;
+        private final long first;
+        private final long second;
+
+        private Fingerprint(long length, long first, long second){
+            this.length = length;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * Computes the fingerprint of a word
+         * @param word the word to identify
+         * @return the fingerprint of the word
+         */
+        public static Fingerprint of(CharSequence word){
+            long first = 0x9E3779B97F4A7C15L;
+            long second = 0xC2B2AE3D27D4EB4FL;
+            for(int i = 0; i < word.length(); i++){
+                char symbol = word.charAt(i);
+                first = (first ^ symbol) * 0x100000001B3L;
+                second = Long.rotateLeft(second + symbol * 0x9E3779B97F4A7C15L, 31) * 0xC2B2AE3D27D4EB4FL;
+            }
+            return new Fingerprint(word.length(), first, second);
+        }
+
+        public long getLength(){
+            return length;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(obj instanceof Fingerprint){
+                Fingerprint other = (Fingerprint) obj;
+                return other.length == length && other.first == first && other.second == second;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode(){
+            return Long.hashCode(first ^ (second * 31) ^ length);
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%d:%016x%016x", length, first, second);
+        }
+    }
+
+    /**
+     * The eventual outcome of running a tag system from a word.
+     */
+    public static final class Outcome{
+
+        /**
+         * Represents how a run ended.
+         */
+        public enum Type{HALT, CYCLE}
+
+        private final Type type;
+        private final long steps;
+        private final long finalLength;
+
+        private Outcome(Type type, long steps, long finalLength){
+            this.type = type;
+            this.steps = steps;
+            this.finalLength = finalLength;
+        }
+
+        /**
+         * Creates the outcome of a run halting after given number of steps
+         * @param steps number of steps from the word to the halt, including the halting step
+         * @param finalLength length of the word when the tag system halts
+         * @return the outcome
+         */
+        public static Outcome halt(long steps, long finalLength){
+            return new Outcome(Type.HALT, steps, finalLength);
+        }
+
+        /**
+         * Returns the outcome of a run which never halts because it reaches a word twice
+         * @return the outcome
+         */
+        public static Outcome cycle(){
+            return new Outcome(Type.CYCLE, -1, -1);
+        }
+
+        public Type getType(){
+            return type;
+        }
+
+        /**
+         * Returns the number of steps to the halt, or -1 for a cycle
+         * @return the number of steps to the halt
+         */
+        public long getSteps(){
+            return steps;
+        }
+
+        /**
+         * Returns the length of the final word, or -1 for a cycle
+         * @return the length of the final word
+         */
+        public long getFinalLength(){
+            return finalLength;
+        }
+
+        @Override
+        public String toString(){
+            return type == Type.CYCLE ? "cycle" : "halt after " + steps + " steps with length " + finalLength;
+        }
+    }
+
+    /** Estimated size of an entry: the key, the value and the node of the map. */
+    private static final int ENTRY_BYTES = 128;
+
+    private final ConcurrentHashMap<Fingerprint, Outcome> entries = new ConcurrentHashMap<>();
+    private final long maxEntries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache
+     * @param maxBytes estimated memory the cache may use
+     * @throws IllegalArgumentException if maxBytes is too small to hold any entry
+     */
+    public OutcomeCache(long maxBytes){
+        if(maxBytes < ENTRY_BYTES)
+            throw new IllegalArgumentException("Cache must be able to hold at least one entry");
+        this.maxEntries = maxBytes / ENTRY_BYTES;
+    }
+
+    /**
+     * Returns the recorded outcome of given word
+     * @param fingerprint the word to look up
+     * @return the outcome, or null if it is unknown
+     */
+    public Outcome get(Fingerprint fingerprint){
+        Outcome outcome = entries.get(fingerprint);
+        (outcome == null ? misses : hits).incrementAndGet();
+        return outcome;
+    }
+
+    /**
+     * Records the outcome of given word, evicting entries if the cache is full
+     * @param fingerprint the word
+     * @param outcome the outcome of running the tag system from the word
+     */
+    public void put(Fingerprint fingerprint, Outcome outcome){
+        entries.put(fingerprint, outcome);
+        if(entries.size() > maxEntries)
+            evict();
+    }
+
+    /**
+     * Evicts about an eighth of the entries. Concurrent evictions may remove a few more.
+     */
+    private void evict(){
+        long target = maxEntries - maxEntries / 8;
+        Iterator<Fingerprint> iterator = entries.keySet().iterator();
+        while(entries.size() > target && iterator.hasNext()){
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    /**
+     * Returns the estimated memory used by the entries
+     * @return the estimated memory used in bytes
+     */
+    public long getEstimatedBytes(){
+        return (long) entries.size() * ENTRY_BYTES;
+    }
+}
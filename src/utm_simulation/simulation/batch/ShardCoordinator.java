@@ -0,0 +1,307 @@
+package utm_simulation.simulation.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits a batch of jobs across worker JVMs on the same machine, so that a large batch is not limited by the heap and
+ * garbage collector of a single JVM.
+ *
+ * <p>Each worker is a {@link ShardWorker} process talking over its standard input and output. Workers pull jobs from a
+ * shared queue, keeping a few of them in flight, so a worker finishing early simply takes more of the remaining work.
+ * When a worker dies, the jobs it had not answered yet are queued again and a new worker takes its place. A job which
+ * keeps killing its workers is given up after {@link #MAX_ATTEMPTS} attempts, and a shard whose last
+ * {@link #MAX_RESTARTS} workers died before answering any job is given up, failing the run.</p>
+ *
+ * <p>Lines a worker prints which are not the answer to one of its jobs are reported on the standard error and
+ * skipped.</p>
+ *
+ * <p>Results are written as soon as every earlier job is answered, one line per job in the order of the batch:
+ * the index of the job followed by its result.</p>
+ */
+public class ShardCoordinator {
+
+    /** Number of jobs sent to a worker before it answers. */
+    public static final int WINDOW = 4;
+    public static final int MAX_ATTEMPTS = 3;
+    /** Number of workers in a row dying before answering any job after which a shard is given up. */
+    public static final int MAX_RESTARTS = 3;
+
+    private final int numWorkers;
+    private final List<String> jvmOptions;
+
+    private List<String> jobs;
+    private ArrayDeque<Integer> pending;
+    private String[] results;
+    private int[] attempts;
+    private int written;
+    private int restarts;
+    private Writer output;
+
+    /**
+     * Creates a coordinator
+     * @param numWorkers number of worker processes
+     * @param jvmOptions options given to the worker JVMs, such as a heap size
+     * @throws IllegalArgumentException if numWorkers is not positive
+     */
+    public ShardCoordinator(int numWorkers, List<String> jvmOptions){
+        if(numWorkers <= 0)
+            throw new IllegalArgumentException("numWorkers must be positive");
+        this.numWorkers = numWorkers;
+        this.jvmOptions = new ArrayList<>(jvmOptions);
+    }
+
+    /**
+     * Runs a batch of jobs
+     * @param jobs the jobs, in the {@link ShardWorker} format
+     * @param output receives one line per job, in the order of the batch
+     * @throws IOException if a worker cannot be started, keeps dying before answering, or the output cannot be
+     *                     written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run(List<String> jobs, Writer output) throws IOException, InterruptedException{
+        this.jobs = jobs;
+        this.pending = new ArrayDeque<>();
+        for(int i = 0; i < jobs.size(); i++)
+            pending.add(i);
+        this.results = new String[jobs.size()];
+        this.attempts = new int[jobs.size()];
+        this.written = 0;
+        this.restarts = 0;
+        this.output = output;
+
+        Thread[] threads = new Thread[Math.min(numWorkers, Math.max(1, jobs.size()))];
+        IOException[] failure = new IOException[1];
+        for(int i = 0; i < threads.length; i++){
+            threads[i] = new Thread(() -> {
+                try{
+                    serve();
+                }catch(IOException e){
+                    synchronized(failure){
+                        failure[0] = e;
+                    }
+                }
+            }, "shard-" + i);
+            threads[i].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+        if(failure[0] != null)
+            throw failure[0];
+        output.flush();
+    }
+
+    /**
+     * Returns the number of workers started again after dying in the last run
+     * @return the number of restarted workers
+     */
+    public synchronized int getRestarts(){
+        return restarts;
+    }
+
+    /**
+     * Feeds one worker process after another until no job is left
+     * @throws IOException if a worker cannot be started or {@link #MAX_RESTARTS} workers in a row died before
+     *                     answering
+     */
+    private void serve() throws IOException{
+        int deaths = 0;
+        while(true){
+            Process process = start();
+            Set<Integer> inFlight = new LinkedHashSet<>();
+            boolean answered = false;
+            boolean exiting = false;
+            try{
+                Writer in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+                BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                while(true){
+                    Integer job;
+                    while(inFlight.size() < WINDOW && (job = take()) != null){
+                        inFlight.add(job);
+                        in.write("JOB " + job + " " + jobs.get(job) + "\n");
+                    }
+                    in.flush();
+                    if(inFlight.isEmpty()){
+                        exiting = true;
+                        in.write("EXIT\n");
+                        in.close();
+                        process.waitFor();
+                        return;
+                    }
+                    String line = out.readLine();
+                    if(line == null)
+                        break;
+                    Integer index = answer(line, inFlight);
+                    if(index == null){
+                        System.err.println(Thread.currentThread().getName() + ": skipping worker output: " + line);
+                        continue;
+                    }
+                    inFlight.remove(index);
+                    answered = true;
+                    String[] words = line.split(" ", 3);
+                    complete(index, words.length > 2 ? words[2] : "");
+                }
+            }catch(IOException e){
+                // the worker died while writing to it
+                if(exiting)
+                    return;
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            }finally{
+                process.destroyForcibly();
+            }
+            retry(inFlight);
+            deaths = answered ? 0 : deaths + 1;
+            if(deaths >= MAX_RESTARTS)
+                throw new IOException(Thread.currentThread().getName() + ": " + deaths
+                        + " workers in a row died before answering any job");
+        }
+    }
+
+    /**
+     * Returns the job a line of a worker answers
+     * @return the index of the job, or null if the line is not the answer to a job in flight
+     */
+    private static Integer answer(String line, Set<Integer> inFlight){
+        String[] words = line.split(" ", 3);
+        if(words.length < 2 || !words[0].equals("DONE"))
+            return null;
+        try{
+            int index = Integer.parseInt(words[1]);
+            return inFlight.contains(index) ? index : null;
+        }catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    private Process start() throws IOException{
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    private synchronized Integer take(){
+        return pending.pollFirst();
+    }
+
+    /**
+     * Queues again the jobs of a dead worker, giving up on those which failed too often
+     */
+    private void retry(Set<Integer> inFlight) throws IOException{
+        synchronized(this){
+            restarts++;
+        }
+        for(int job : inFlight){
+            boolean again;
+            synchronized(this){
+                again = ++attempts[job] < MAX_ATTEMPTS;
+                if(again)
+                    pending.addFirst(job);
+            }
+            if(!again)
+                complete(job, "FAILED worker died " + MAX_ATTEMPTS + " times");
+        }
+    }
+
+    /**
+     * Records the result of a job, writing every result which is now in order
+     */
+    private synchronized void complete(int job, String result) throws IOException{
+        results[job] = result;
+        while(written < results.length && results[written] != null){
+            output.write(written + " " + results[written] + "\n");
+            results[written] = null;
+            written++;
+        }
+    }
+
+    /**
+     * Runs a batch of jobs or an enumeration on several worker processes.
+     * <pre>
+     * ShardCoordinator [--workers N] [--jvm option]... jobs &lt;jobs file&gt; &lt;results file&gt;
+     * ShardCoordinator [--workers N] [--jvm option]... enumerate &lt;states&gt; &lt;symbols&gt; &lt;budget&gt; &lt;output file&gt;
+     * </pre>
+     * @param args the options, the mode and its arguments
+     * @throws IOException if a file cannot be accessed or a worker cannot be started
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        int workers = Runtime.getRuntime().availableProcessors();
+        List<String> options = new ArrayList<>();
+        int i = 0;
+        for(; i + 1 < args.length && args[i].startsWith("--"); i += 2){
+            if(args[i].equals("--workers"))
+                workers = Integer.parseInt(args[i + 1]);
+            else if(args[i].equals("--jvm"))
+                options.add(args[i + 1]);
+            else
+                break;
+        }
+        ShardCoordinator coordinator = new ShardCoordinator(workers, options);
+        long start = System.nanoTime();
+        if(args.length - i == 3 && args[i].equals("jobs")){
+            List<String> jobs = new ArrayList<>();
+            for(String line : Files.readAllLines(Paths.get(args[i + 1]), StandardCharsets.UTF_8)){
+                if(!line.trim().isEmpty())
+                    jobs.add(line.trim());
+            }
+            try(Writer output = Files.newBufferedWriter(Paths.get(args[i + 2]), StandardCharsets.UTF_8)){
+                coordinator.run(jobs, output);
+            }
+        }else if(args.length - i == 5 && args[i].equals("enumerate")){
+            enumerate(coordinator, Integer.parseInt(args[i + 1]), Integer.parseInt(args[i + 2]),
+                    Long.parseLong(args[i + 3]), Paths.get(args[i + 4]));
+        }else{
+            System.err.println("Usage: ShardCoordinator [--workers N] [--jvm option]... jobs <jobs file> <results file>");
+            System.err.println("       ShardCoordinator [--workers N] [--jvm option]... enumerate <states> <symbols> <budget> <output file>");
+            System.exit(-1);
+        }
+        System.out.println("Done in " + (System.nanoTime() - start) / 1_000_000 + " ms, "
+                + coordinator.getRestarts() + " workers restarted");
+    }
+
+    /**
+     * Sweeps every subtree of an enumeration on the workers and merges their parts
+     */
+    private static void enumerate(ShardCoordinator coordinator, int numStates, int numSymbols, long budget, Path output)
+            throws IOException, InterruptedException{
+        MachineEnumerator enumerator = new MachineEnumerator(numStates, numSymbols, budget);
+        Path shards = Paths.get(output + ".shards");
+        Files.createDirectories(shards);
+        String prefix = "subtree " + numStates + " " + numSymbols + " " + budget + " ";
+        List<String> jobs = new ArrayList<>();
+        List<Path> parts = new ArrayList<>();
+        for(int task = MachineEnumerator.FRONTIER; task < enumerator.getNumTasks(); task++){
+            Path part = shards.resolve(task == MachineEnumerator.FRONTIER ? "frontier" : "part-" + task);
+            jobs.add(prefix + task + " " + part.toAbsolutePath());
+            parts.add(part);
+        }
+        StringWriter results = new StringWriter();
+        coordinator.run(jobs, results);
+        for(String line : results.toString().split("\n")){
+            if(!line.split(" ")[1].equals("RECORDS"))
+                throw new IOException("Subtree failed: " + line);
+        }
+        enumerator.merge(output, parts);
+        Files.delete(shards);
+    }
+}
@@ -0,0 +1,100 @@
+package utm_simulation.simulation.batch;
+
+import utm_simulation.simulation.automata.engine.Engine;
+import utm_simulation.simulation.automata.engine.Engines;
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+import utm_simulation.simulation.server.MachineCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Worker process of a {@link ShardCoordinator}. It reads jobs from its standard input and answers on its standard
+ * output, one line each:
+ * <pre>
+ * JOB &lt;index&gt; &lt;job&gt;      answered by DONE &lt;index&gt; &lt;result&gt;
+ * EXIT                     ends the worker
+ * </pre>
+ * Jobs are one of
+ * <pre>
+ * run &lt;machine&gt; &lt;input or -&gt; &lt;budget&gt; [engine]    result: HALTED|BUDGET|STUCK &lt;steps&gt;
+ * subtree &lt;states&gt; &lt;symbols&gt; &lt;budget&gt; &lt;index&gt; &lt;part file&gt;
+ *                                               result: RECORDS &lt;number of records&gt;
+ * </pre>
+ * A job which cannot be run is answered with ERROR followed by the reason.
+ */
+public final class ShardWorker {
+
+    private final MachineCache cache = new MachineCache();
+    private final Map<String, MachineEnumerator> enumerators = new HashMap<>();
+
+    private ShardWorker(){}
+
+    public static void main(String[] args) throws IOException{
+        ShardWorker worker = new ShardWorker();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+        String line;
+        while((line = in.readLine()) != null && !line.equals("EXIT")){
+            String[] words = line.split(" ", 3);
+            if(words.length != 3 || !words[0].equals("JOB"))
+                throw new IOException("Invalid request: " + line);
+            String result;
+            try{
+                result = worker.execute(words[2].trim().split("\\s+"));
+            }catch(IOException | RuntimeException e){
+                result = "ERROR " + e;
+            }
+            out.write("DONE " + words[1] + " " + result.replace('\n', ' ') + "\n");
+            out.flush();
+        }
+    }
+
+    private String execute(String[] job) throws IOException{
+        switch(job[0]){
+            case "run":
+                if(job.length < 4)
+                    throw new IllegalArgumentException("Usage: run <machine> <input or -> <budget> [engine]");
+                return run(job[1], job[2], Long.parseLong(job[3]), job.length > 4 ? job[4] : Engines.defaultName());
+            case "subtree":
+                if(job.length != 6)
+                    throw new IllegalArgumentException("Usage: subtree <states> <symbols> <budget> <index> <part file>");
+                String key = job[1] + " " + job[2] + " " + job[3];
+                MachineEnumerator enumerator = enumerators.computeIfAbsent(key, k -> new MachineEnumerator(
+                        Integer.parseInt(job[1]), Integer.parseInt(job[2]), Long.parseLong(job[3])));
+                return "RECORDS " + enumerator.sweepSubtree(Integer.parseInt(job[4]), Paths.get(job[5]));
+            default:
+                throw new IllegalArgumentException("Unknown job: " + job[0]);
+        }
+    }
+
+    private String run(String path, String input, long budget, String engineName) throws IOException{
+        CompiledMachine machine = cache.get(path);
+        if(!input.equals("-")){
+            if(machine instanceof CompiledTuringMachine)
+                machine = ((CompiledTuringMachine) machine).withInput(input, 0);
+            else
+                machine = ((CompiledTagSystem) machine).withInput(input);
+        }
+        try(Engine engine = Engines.create(engineName, machine)){
+            try{
+                engine.run(budget);
+            }catch(UnsupportedOperationException e){
+                return "STUCK " + engine.getStepCount();
+            }
+            return (engine.isHalted() ? "HALTED " : "BUDGET ") + engine.getStepCount();
+        }
+    }
+}
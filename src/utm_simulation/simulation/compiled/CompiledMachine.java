@@ -0,0 +1,206 @@
+package utm_simulation.simulation.compiled;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Represents a machine compiled into dense, index based tables.
+ * Every tape symbol is replaced by its index in the symbol table, so that a symbol fits in a single byte.
+ */
+public abstract class CompiledMachine {
+
+    /**
+     * Represents the kind of the compiled machine. The code is the value stored in the binary format.
+     */
+    public enum Kind{
+        TURING_MACHINE(1), TAG_SYSTEM(2);
+
+        private final int code;
+
+        Kind(int code){
+            this.code = code;
+        }
+
+        public int getCode(){
+            return code;
+        }
+
+        /**
+         * Returns the kind stored with given code
+         * @param code the code read from a compiled file
+         * @return the kind stored with given code, or null if the code is unknown
+         */
+        public static Kind fromCode(int code){
+            for(Kind kind : values()){
+                if(kind.code == code)
+                    return kind;
+            }
+            return null;
+        }
+    }
+
+    /** Maximum number of symbols a compiled machine can have, since symbols are stored as unsigned bytes. */
+    public static final int MAX_SYMBOLS = 255;
+
+    private final char[] symbols;
+    private final char blank;
+    private final byte[] input;
+    private final int headIndex;
+
+    /**
+     * Creates a compiled machine.
+     * @param symbols the symbol table. Index of a symbol in this array is its compiled value.
+     * @param blank the blank symbol of the tape
+     * @param input initial content of the tape as symbol indices
+     * @param headIndex initial position of the head in the input
+     * @throws IllegalArgumentException if the symbol table is too large or the blank is not in it.
+     */
+    protected CompiledMachine(char[] symbols, char blank, byte[] input, int headIndex){
+        if(symbols.length == 0 || symbols.length > MAX_SYMBOLS)
+            throw new IllegalArgumentException("Invalid number of symbols: " + symbols.length);
+        this.symbols = Arrays.copyOf(symbols, symbols.length);
+        this.blank = blank;
+        if(indexOf(blank) < 0)
+            throw new IllegalArgumentException("Blank symbol is not in the symbol table");
+        this.input = Arrays.copyOf(input, input.length);
+        this.headIndex = headIndex;
+    }
+
+    /**
+     * Creates a compiled machine with the symbol table of another one, keeping given input without copying it,
+     * so that huge inputs are held only once.
+     * @param tables machine whose symbol table and blank are shared
+     * @param input initial content of the tape as symbol indices, owned by the new machine
+     * @param headIndex initial position of the head in the input
+     * @throws IllegalArgumentException if the input uses an undefined symbol index
+     */
+    protected CompiledMachine(CompiledMachine tables, byte[] input, int headIndex){
+        for(int i = 0; i < input.length; i++){
+            if((input[i] & 0xFF) >= tables.symbols.length)
+                throw new IllegalArgumentException("Input uses undefined symbol index " + (input[i] & 0xFF) + " at " + i);
+        }
+        this.symbols = tables.symbols;
+        this.blank = tables.blank;
+        this.input = input;
+        this.headIndex = headIndex;
+    }
+
+    /**
+     * Returns the kind of this machine
+     * @return the kind of this machine
+     */
+    public abstract Kind getKind();
+
+    /**
+     * Returns a copy of the symbol table.
+     * @return a copy of the symbol table.
+     */
+    public char[] getSymbols(){
+        return Arrays.copyOf(symbols, symbols.length);
+    }
+
+    public int getNumSymbols(){
+        return symbols.length;
+    }
+
+    /**
+     * Returns the symbol of given index
+     * @param index index of the symbol
+     * @return the symbol of given index
+     */
+    public char getSymbol(int index){
+        return symbols[index];
+    }
+
+    public char getBlank(){
+        return blank;
+    }
+
+    /**
+     * Returns the index of the blank symbol in the symbol table
+     * @return the index of the blank symbol in the symbol table
+     */
+    public int getBlankIndex(){
+        return indexOf(blank);
+    }
+
+    /**
+     * Returns the index of given symbol in the symbol table
+     * @param symbol symbol to look up
+     * @return the index of given symbol, or -1 if it is not a symbol of this machine
+     */
+    public int indexOf(char symbol){
+        for(int i = 0; i < symbols.length; i++){
+            if(symbols[i] == symbol)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a copy of the initial input as symbol indices
+     * @return a copy of the initial input as symbol indices
+     */
+    public byte[] getInput(){
+        return Arrays.copyOf(input, input.length);
+    }
+
+    /**
+     * Returns the length of the initial input
+     * @return the number of symbols of the initial input
+     */
+    public int getInputLength(){
+        return input.length;
+    }
+
+    /**
+     * Returns a read-only view of the initial input, for loading it in bulk without copying it first
+     * @return a read-only buffer over the symbol indices of the initial input
+     */
+    public ByteBuffer getInputBuffer(){
+        return ByteBuffer.wrap(input).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the initial input as a String of symbols
+     * @return the initial input as a String of symbols
+     */
+    public String getInputString(){
+        return decode(input, 0, input.length);
+    }
+
+    public int getHeadIndex(){
+        return headIndex;
+    }
+
+    /**
+     * Converts symbol indices back to a String of symbols.
+     * @param word symbol indices
+     * @param from index of the first symbol to convert
+     * @param to index after the last symbol to convert
+     * @return String made of the symbols
+     */
+    public String decode(byte[] word, int from, int to){
+        StringBuilder builder = new StringBuilder(to - from);
+        for(int i = from; i < to; i++)
+            builder.append(symbols[word[i] & 0xFF]);
+        return builder.toString();
+    }
+
+    /**
+     * Converts a String of symbols into symbol indices.
+     * @param word String of symbols
+     * @return symbol indices of given word
+     * @throws IllegalArgumentException if the word contains a symbol not defined by the machine.
+     */
+    public byte[] encode(String word){
+        byte[] result = new byte[word.length()];
+        for(int i = 0; i < word.length(); i++){
+            int index = indexOf(word.charAt(i));
+            if(index < 0)
+                throw new IllegalArgumentException("Undefined symbol in word: " + word.charAt(i));
+            result[i] = (byte) index;
+        }
+        return result;
+    }
+}
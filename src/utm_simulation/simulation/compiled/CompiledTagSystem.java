@@ -0,0 +1,144 @@
+package utm_simulation.simulation.compiled;
+
+import java.util.Arrays;
+
+/**
+ * A tag system compiled into per symbol production tables.
+ * Productions of all symbols are stored back to back in a single array and located by an offset table.
+ */
+public class CompiledTagSystem extends CompiledMachine {
+
+    /** Rule type of a symbol without any transition. */
+    public static final byte UNDEFINED = 0;
+    /** Rule type of a symbol which appends its production. */
+    public static final byte APPEND = 1;
+    /** Rule type of a symbol which halts the tag system. */
+    public static final byte HALT = 2;
+
+    private final int deletionNumber;
+    private final byte[] types;
+    private final int[] offsets;
+    private final byte[] productions;
+
+    /**
+     * Creates a compiled tag system.
+     * @param symbols the symbol table
+     * @param blank the blank symbol
+     * @param deletionNumber the deletion number
+     * @param types rule type of each symbol
+     * @param offsets offsets of each production in productions. Has one more entry than symbols.
+     * @param productions all productions as symbol indices
+     * @param input initial word as symbol indices
+     * @throws IllegalArgumentException if the tables are inconsistent
+     */
+    public CompiledTagSystem(char[] symbols, char blank, int deletionNumber, byte[] types, int[] offsets,
+                             byte[] productions, byte[] input){
+        super(symbols, blank, input, 0);
+        if(deletionNumber <= 0)
+            throw new IllegalArgumentException("Deletion number must be positive");
+        if(types.length != symbols.length || offsets.length != symbols.length + 1)
+            throw new IllegalArgumentException("Production table does not match the number of symbols");
+        if(offsets[0] != 0 || offsets[symbols.length] != productions.length)
+            throw new IllegalArgumentException("Production offsets do not cover the productions");
+        for(int i = 0; i < symbols.length; i++){
+            if(offsets[i] > offsets[i + 1])
+                throw new IllegalArgumentException("Production offsets are not ordered");
+            if(types[i] != UNDEFINED && types[i] != APPEND && types[i] != HALT)
+                throw new IllegalArgumentException("Invalid rule type: " + types[i]);
+        }
+        for(byte symbol : productions){
+            if((symbol & 0xFF) >= symbols.length)
+                throw new IllegalArgumentException("Production uses undefined symbol index: " + (symbol & 0xFF));
+        }
+        this.deletionNumber = deletionNumber;
+        this.types = Arrays.copyOf(types, types.length);
+        this.offsets = Arrays.copyOf(offsets, offsets.length);
+        this.productions = Arrays.copyOf(productions, productions.length);
+    }
+
+    /**
+     * Returns the same tag system with a different initial word
+     * @param input initial word
+     * @return a compiled tag system sharing the productions of this one
+     * @throws IllegalArgumentException if the input contains an undefined symbol
+     */
+    public CompiledTagSystem withInput(String input){
+        return new CompiledTagSystem(getSymbols(), getBlank(), deletionNumber, types, offsets, productions, encode(input));
+    }
+
+    /**
+     * Returns the same tag system with a different initial word, keeping given array as the word without copying it
+     * @param input initial word as symbol indices, which must not be modified afterwards
+     * @return a compiled tag system sharing the productions of this one
+     * @throws IllegalArgumentException if the input uses an undefined symbol index
+     */
+    public CompiledTagSystem withInput(byte[] input){
+        return new CompiledTagSystem(this, input);
+    }
+
+    private CompiledTagSystem(CompiledTagSystem tables, byte[] input){
+        super(tables, input, 0);
+        this.deletionNumber = tables.deletionNumber;
+        this.types = tables.types;
+        this.offsets = tables.offsets;
+        this.productions = tables.productions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Kind getKind(){
+        return Kind.TAG_SYSTEM;
+    }
+
+    public int getDeletionNumber(){
+        return deletionNumber;
+    }
+
+    /**
+     * Returns the rule type of given symbol
+     * @param symbol index of the symbol
+     * @return one of {@link #APPEND}, {@link #HALT} or {@link #UNDEFINED}
+     */
+    public byte getType(int symbol){
+        return types[symbol];
+    }
+
+    /**
+     * Returns the production of given symbol as symbol indices
+     * @param symbol index of the symbol
+     * @return a copy of the production of given symbol
+     */
+    public byte[] getProduction(int symbol){
+        return Arrays.copyOfRange(productions, offsets[symbol], offsets[symbol + 1]);
+    }
+
+    public int getProductionLength(int symbol){
+        return offsets[symbol + 1] - offsets[symbol];
+    }
+
+    /**
+     * Returns a copy of the rule type table
+     * @return a copy of the rule type table
+     */
+    public byte[] getTypes(){
+        return Arrays.copyOf(types, types.length);
+    }
+
+    /**
+     * Returns a copy of the production offset table
+     * @return a copy of the production offset table
+     */
+    public int[] getOffsets(){
+        return Arrays.copyOf(offsets, offsets.length);
+    }
+
+    /**
+     * Returns a copy of all productions stored back to back
+     * @return a copy of all productions stored back to back
+     */
+    public byte[] getProductions(){
+        return Arrays.copyOf(productions, productions.length);
+    }
+}
@@ -0,0 +1,143 @@
+package utm_simulation.simulation.compiled;
+
+import java.util.Arrays;
+
+/**
+ * A Turing machine compiled into a dense transition table indexed by (state, symbol index).
+ * States are numbered from 1 like {@link utm_simulation.simulation.automata.TuringMachine}.
+ */
+public class CompiledTuringMachine extends CompiledMachine {
+
+    /** Value of {@link #getNextState(int)} for an undefined transition. */
+    public static final int UNDEFINED = 0;
+    /** Value of {@link #getNextState(int)} for a halting transition. */
+    public static final int HALT = -1;
+
+    private final int numStates;
+    private final int[] nextStates;
+    private final byte[] nextSymbols;
+    private final byte[] shifts;
+
+    /**
+     * Creates a compiled Turing machine. All tables have numStates * symbols.length entries.
+     * @param symbols the symbol table
+     * @param blank the blank symbol
+     * @param numStates number of states
+     * @param nextStates next state for each entry, {@link #HALT} or {@link #UNDEFINED}
+     * @param nextSymbols index of the symbol written for each entry
+     * @param shifts head movement for each entry, either -1 or 1
+     * @param input initial content of the tape as symbol indices
+     * @param headIndex initial position of the head
+     * @throws IllegalArgumentException if the tables are inconsistent
+     */
+    public CompiledTuringMachine(char[] symbols, char blank, int numStates, int[] nextStates, byte[] nextSymbols,
+                                 byte[] shifts, byte[] input, int headIndex){
+        super(symbols, blank, input, headIndex);
+        int size = numStates * symbols.length;
+        if(numStates <= 0 || nextStates.length != size || nextSymbols.length != size || shifts.length != size)
+            throw new IllegalArgumentException("Transition table does not match the number of states and symbols");
+        for(int i = 0; i < size; i++){
+            if(nextStates[i] < HALT || nextStates[i] > numStates)
+                throw new IllegalArgumentException("Transition to undefined state: " + nextStates[i]);
+            if((nextSymbols[i] & 0xFF) >= symbols.length)
+                throw new IllegalArgumentException("Transition writes undefined symbol index: " + (nextSymbols[i] & 0xFF));
+        }
+        this.numStates = numStates;
+        this.nextStates = Arrays.copyOf(nextStates, size);
+        this.nextSymbols = Arrays.copyOf(nextSymbols, size);
+        this.shifts = Arrays.copyOf(shifts, size);
+    }
+
+    /**
+     * Returns the same machine with a different initial tape
+     * @param input initial content of the tape
+     * @param headIndex initial position of the head
+     * @return a compiled machine sharing the transition table of this one
+     * @throws IllegalArgumentException if the input contains an undefined symbol
+     */
+    public CompiledTuringMachine withInput(String input, int headIndex){
+        return new CompiledTuringMachine(getSymbols(), getBlank(), numStates, nextStates, nextSymbols, shifts, encode(input), headIndex);
+    }
+
+    /**
+     * Returns the same machine with a different initial tape, keeping given array as the tape without copying it
+     * @param input initial content of the tape as symbol indices, which must not be modified afterwards
+     * @param headIndex initial position of the head
+     * @return a compiled machine sharing the transition table of this one
+     * @throws IllegalArgumentException if the input uses an undefined symbol index
+     */
+    public CompiledTuringMachine withInput(byte[] input, int headIndex){
+        return new CompiledTuringMachine(this, input, headIndex);
+    }
+
+    private CompiledTuringMachine(CompiledTuringMachine tables, byte[] input, int headIndex){
+        super(tables, input, headIndex);
+        this.numStates = tables.numStates;
+        this.nextStates = tables.nextStates;
+        this.nextSymbols = tables.nextSymbols;
+        this.shifts = tables.shifts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Kind getKind(){
+        return Kind.TURING_MACHINE;
+    }
+
+    public int getNumStates(){
+        return numStates;
+    }
+
+    /**
+     * Returns the index of the table entry for given state and symbol index
+     * @param state state of the machine, starting from 1
+     * @param symbol index of the symbol under the head
+     * @return the index of the table entry
+     */
+    public int entry(int state, int symbol){
+        return (state - 1) * getNumSymbols() + symbol;
+    }
+
+    /**
+     * Returns the next state of given entry
+     * @param entry index of the table entry
+     * @return the next state, {@link #HALT} or {@link #UNDEFINED}
+     */
+    public int getNextState(int entry){
+        return nextStates[entry];
+    }
+
+    public int getNextSymbol(int entry){
+        return nextSymbols[entry] & 0xFF;
+    }
+
+    public int getShift(int entry){
+        return shifts[entry];
+    }
+
+    /**
+     * Returns a copy of the next state table
+     * @return a copy of the next state table
+     */
+    public int[] getNextStates(){
+        return Arrays.copyOf(nextStates, nextStates.length);
+    }
+
+    /**
+     * Returns a copy of the written symbol table
+     * @return a copy of the written symbol table
+     */
+    public byte[] getNextSymbols(){
+        return Arrays.copyOf(nextSymbols, nextSymbols.length);
+    }
+
+    /**
+     * Returns a copy of the shift table
+     * @return a copy of the shift table
+     */
+    public byte[] getShifts(){
+        return Arrays.copyOf(shifts, shifts.length);
+    }
+}
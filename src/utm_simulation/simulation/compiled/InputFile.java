@@ -0,0 +1,254 @@
+package utm_simulation.simulation.compiled;
+
+import utm_simulation.simulation.automata.Machine;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An initial word stored in a file of its own, for words too large for the Input element of a config file.
+ *
+ * <p>A config file refers to it with {@code <Input file="word.txt" format="text"/>}, the path being relative to the
+ * config file. Formats are</p>
+ * <ul>
+ *     <li>TEXT: the symbols as UTF-8 text. Line breaks are skipped, so the word can be split over lines.</li>
+ *     <li>PACKED: the symbol indices of the machine, one byte per symbol, as in a compiled machine.</li>
+ * </ul>
+ * <p>The file is streamed through a {@link FileChannel} straight into an array of symbol indices, checking every
+ * symbol against the symbols of the machine on the way, so the word is never held as a String. The array is sized
+ * from the file, and only trimmed with one copy if the text holds line breaks or characters of several bytes.</p>
+ */
+public final class InputFile {
+
+    public enum Format{TEXT, PACKED}
+
+    /** Name of the attribute of the Input element holding the path of the file. */
+    public static final String FILE = "file";
+    /** Name of the attribute of the Input element holding the format of the file. */
+    public static final String FORMAT = "format";
+
+    /** Largest word a file can hold, since a word is stored in a single array. */
+    public static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final Format format;
+
+    /**
+     * Creates a reference to an input file
+     * @param path the file holding the word
+     * @param format how the word is stored
+     */
+    public InputFile(Path path, Format format){
+        this.path = path;
+        this.format = format;
+    }
+
+    public Path getPath(){
+        return path;
+    }
+
+    public Format getFormat(){
+        return format;
+    }
+
+    /**
+     * Returns the input file referred to by an Input element
+     * @param config path to the config xml file holding the element
+     * @param element the Input element
+     * @return the input file, or null if the element holds the word itself
+     * @throws MachineFormatException if the format is unknown
+     */
+    public static InputFile fromElement(String config, StartElement element) throws MachineFormatException{
+        Attribute file = element.getAttributeByName(new QName(FILE));
+        if(file == null)
+            return null;
+        Attribute format = element.getAttributeByName(new QName(FORMAT));
+        Path path = Paths.get(file.getValue());
+        Path parent = Paths.get(config).toAbsolutePath().getParent();
+        if(!path.isAbsolute() && parent != null)
+            path = parent.resolve(path);
+        return new InputFile(path, format == null ? Format.TEXT : parseFormat(format.getValue()));
+    }
+
+    /**
+     * Returns the input file referred to by the Input element of a config file
+     * @param config path to the config xml file
+     * @return the input file, or null if the config file holds the word itself
+     * @throws MachineFormatException if the config file cannot be read or the format is unknown
+     */
+    public static InputFile find(String config) throws MachineFormatException{
+        try(InputStream in = new FileInputStream(config)){
+            XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(in);
+            while(reader.hasNext()){
+                XMLEvent event = reader.nextEvent();
+                if(event.isStartElement() && event.asStartElement().getName().getLocalPart().equals(Machine.INPUT))
+                    return fromElement(config, event.asStartElement());
+            }
+        }catch(FileNotFoundException e){
+            throw new MachineFormatException("Given config file is not found: " + config, e);
+        }catch(XMLStreamException | IOException e){
+            throw new MachineFormatException("Invalid xml file: " + config, e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the format of given name
+     * @param name name of the format, in any case
+     * @return the format of given name
+     * @throws MachineFormatException if no format has that name
+     */
+    public static Format parseFormat(String name) throws MachineFormatException{
+        for(Format format : Format.values()){
+            if(format.name().equalsIgnoreCase(name))
+                return format;
+        }
+        throw new MachineFormatException("Unknown input format: " + name);
+    }
+
+    /**
+     * Reads the word as symbol indices of given symbol table
+     * @param symbols the symbols of the machine, the index of a symbol being its value
+     * @return the word as symbol indices
+     * @throws MachineFormatException if the file is missing, too large or holds a symbol of another machine
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] read(char[] symbols) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long size = channel.size();
+            if(size > MAX_LENGTH)
+                throw new MachineFormatException("Input file is too large: " + path + " holds " + size + " bytes");
+            if(format == Format.PACKED)
+                return readPacked(channel, (int) size, symbols.length);
+            return isAscii(symbols) ? readAscii(channel, (int) size, symbols) : readText(channel, (int) size, symbols);
+        }catch(NoSuchFileException e){
+            throw new MachineFormatException("Given input file is not found: " + path, e);
+        }
+    }
+
+    /**
+     * Reads symbol indices straight into the word
+     */
+    private byte[] readPacked(FileChannel channel, int size, int numSymbols) throws IOException{
+        byte[] word = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(word);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer) < 0)
+                throw new MachineFormatException("Input file was truncated while reading: " + path);
+        }
+        for(int i = 0; i < size; i++){
+            if((word[i] & 0xFF) >= numSymbols)
+                throw new MachineFormatException("Input file " + path + " uses undefined symbol index "
+                        + (word[i] & 0xFF) + " at " + i);
+        }
+        return word;
+    }
+
+    private static boolean isAscii(char[] symbols){
+        for(char symbol : symbols){
+            if(symbol >= 0x80)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads text of ASCII symbols a buffer at a time, looking every byte up in a table. Any other UTF-8 character
+     * starts with a byte outside of ASCII, which is not a symbol either, so the text needs no decoding.
+     */
+    private byte[] readAscii(FileChannel channel, int size, char[] symbols) throws IOException{
+        byte[] table = new byte[256];
+        Arrays.fill(table, (byte) -1);
+        for(int i = 0; i < symbols.length; i++)
+            table[symbols[i]] = (byte) i;
+        table['\n'] = -2;
+        table['\r'] = -2;
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] chunk = buffer.array();
+        byte[] word = new byte[size];
+        int length = 0;
+        int read;
+        while((read = channel.read(buffer)) >= 0){
+            for(int i = 0; i < read; i++){
+                byte index = table[chunk[i] & 0xFF];
+                if(index >= 0){
+                    word[length++] = index;
+                }else if(index == -1){
+                    throw new MachineFormatException("Input file " + path + " uses undefined symbol '"
+                            + (chunk[i] >= 0 ? String.valueOf((char) chunk[i]) : "\\x" + Integer.toHexString(chunk[i] & 0xFF))
+                            + "' at " + length);
+                }
+            }
+            buffer.clear();
+        }
+        return length == size ? word : Arrays.copyOf(word, length);
+    }
+
+    /**
+     * Decodes the text a buffer at a time, looking every symbol up in a table indexed by character. A UTF-8 file
+     * holds at least as many bytes as characters, so the word fits in an array of the size of the file.
+     */
+    private byte[] readText(FileChannel channel, int size, char[] symbols) throws IOException{
+        short[] table = new short[Character.MAX_VALUE + 1];
+        Arrays.fill(table, (short) -1);
+        for(int i = 0; i < symbols.length; i++)
+            table[symbols[i]] = (short) i;
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        byte[] word = new byte[size];
+        int length = 0;
+        boolean end = false;
+        while(!end){
+            end = channel.read(bytes) < 0;
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, end);
+            if(end && !result.isError())
+                result = decoder.flush(chars);
+            if(result.isError())
+                throw new MachineFormatException("Input file is not valid UTF-8 text: " + path);
+            bytes.compact();
+
+            chars.flip();
+            while(chars.hasRemaining()){
+                char symbol = chars.get();
+                if(symbol == '\n' || symbol == '\r')
+                    continue;
+                short index = table[symbol];
+                if(index < 0)
+                    throw new MachineFormatException("Input file " + path + " uses undefined symbol '" + symbol
+                            + "' at " + length);
+                word[length++] = (byte) index;
+            }
+            chars.clear();
+        }
+        return length == size ? word : Arrays.copyOf(word, length);
+    }
+}
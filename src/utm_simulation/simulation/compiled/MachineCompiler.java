@@ -0,0 +1,211 @@
+package utm_simulation.simulation.compiled;
+
+import utm_simulation.simulation.automata.Machine;
+import utm_simulation.simulation.automata.TagSystem;
+import utm_simulation.simulation.automata.TagSystem.TagSystemTransition;
+import utm_simulation.simulation.automata.TuringMachine;
+import utm_simulation.simulation.automata.TuringMachine.TuringTransition;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Converts machines defined by xml config files into {@link CompiledMachine}s.
+ *
+ * <p>Usage: MachineCompiler &lt;config.xml&gt; &lt;output file&gt; [&lt;input file&gt; [text|packed]]</p>
+ *
+ * <p>An input file given on the command line replaces the input of the config file. Words of {@link InputFile}s are
+ * streamed straight into the compiled machine, without going through the tape of a {@link Machine}.</p>
+ */
+public final class MachineCompiler {
+
+    private MachineCompiler(){}
+
+    public static void main(String[] args){
+        if(args.length < 2 || args.length > 4){
+            System.err.println("Usage: MachineCompiler <config.xml> <output file> [<input file> [text|packed]]");
+            System.exit(-1);
+        }
+        try{
+            InputFile input = null;
+            if(args.length > 2)
+                input = new InputFile(Paths.get(args[2]),
+                        args.length > 3 ? InputFile.parseFormat(args[3]) : InputFile.Format.TEXT);
+            CompiledMachine machine = compile(args[0], input);
+            MachineFile.write(machine, Paths.get(args[1]));
+        }catch(IOException e){
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Compiles the machine defined by given xml config file.
+     * @param config path to the config xml file
+     * @return the compiled machine
+     * @throws MachineFormatException if the class of the machine cannot be determined or it cannot be compiled
+     */
+    public static CompiledMachine compile(String config) throws MachineFormatException{
+        try{
+            return compile(config, null);
+        }catch(MachineFormatException e){
+            throw e;
+        }catch(IOException e){
+            throw new MachineFormatException("Cannot read the input file of " + config + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compiles the machine defined by given xml config file with the word of an input file, streamed straight into
+     * the compiled machine.
+     * @param config path to the config xml file
+     * @param input the input file, or null for the input of the config file
+     * @return the compiled machine
+     * @throws MachineFormatException if the machine cannot be compiled or the input file holds undefined symbols
+     * @throws IOException if the input file cannot be read
+     */
+    public static CompiledMachine compile(String config, InputFile input) throws IOException{
+        String machineClass = readClass(config);
+        if(input == null)
+            input = InputFile.find(config);
+        switch(machineClass){
+            case "TuringMachine":
+                CompiledTuringMachine tm = compile(TuringMachine.parseMachine(config, input == null));
+                return input == null ? tm : tm.withInput(input.read(tm.getSymbols()), 0);
+            case "TagSystem":
+                CompiledTagSystem tag = compile(TagSystem.parseMachine(config, input == null));
+                return input == null ? tag : tag.withInput(input.read(tag.getSymbols()));
+            default:
+                throw new MachineFormatException("Unsupported machine class: " + machineClass);
+        }
+    }
+
+    /**
+     * Compiles given Turing machine with its current tape as the input.
+     * @param machine machine to compile
+     * @return the compiled machine
+     * @throws MachineFormatException if the machine is non-deterministic or uses undefined symbols
+     */
+    public static CompiledTuringMachine compile(TuringMachine machine) throws MachineFormatException{
+        char[] symbols = machine.getSymbols();
+        int numStates = machine.getNumStates();
+        int size = numStates * symbols.length;
+        int[] nextStates = new int[size];
+        byte[] nextSymbols = new byte[size];
+        byte[] shifts = new byte[size];
+
+        for(int state = 1; state <= numStates; state++){
+            for(int s = 0; s < symbols.length; s++){
+                int entry = (state - 1) * symbols.length + s;
+                ArrayList<TuringTransition> transitions = machine.getTransition(state, symbols[s]);
+                if(transitions.isEmpty()){
+                    nextStates[entry] = CompiledTuringMachine.UNDEFINED;
+                    continue;
+                }else if(transitions.size() > 1){
+                    throw new MachineFormatException(String.format("Non-deterministic transition at (%d, %s)", state, symbols[s]));
+                }
+                TuringTransition t = transitions.get(0);
+                if(t.getType() == Machine.TransitionType.HALT){
+                    nextStates[entry] = CompiledTuringMachine.HALT;
+                }else{
+                    int symbol = indexOf(symbols, t.getNextSymbol());
+                    if(symbol < 0)
+                        throw new MachineFormatException("Undefined symbol used in transition: " + t.getNextSymbol());
+                    nextStates[entry] = t.getNextState();
+                    nextSymbols[entry] = (byte) symbol;
+                    shifts[entry] = (byte) t.getShift();
+                }
+            }
+        }
+
+        try{
+            byte[] input = encode(symbols, machine.getInput_tape().toString());
+            return new CompiledTuringMachine(symbols, machine.getInput_tape().getBLANK(), numStates, nextStates,
+                    nextSymbols, shifts, input, machine.getInput_tape().headIndex());
+        }catch(IllegalArgumentException e){
+            throw new MachineFormatException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compiles given tag system with its current word as the input.
+     * @param machine tag system to compile
+     * @return the compiled tag system
+     * @throws MachineFormatException if the tag system is non-deterministic or uses undefined symbols
+     */
+    public static CompiledTagSystem compile(TagSystem machine) throws MachineFormatException{
+        char[] symbols = machine.getSymbols();
+        byte[] types = new byte[symbols.length];
+        int[] offsets = new int[symbols.length + 1];
+        StringBuilder productions = new StringBuilder();
+
+        for(int s = 0; s < symbols.length; s++){
+            ArrayList<TagSystemTransition> transitions = machine.getTransition(symbols[s]);
+            if(transitions.isEmpty()){
+                types[s] = CompiledTagSystem.UNDEFINED;
+            }else if(transitions.size() > 1){
+                throw new MachineFormatException("Non-deterministic transition for symbol " + symbols[s]);
+            }else if(transitions.get(0).getType() == Machine.TransitionType.HALT){
+                types[s] = CompiledTagSystem.HALT;
+            }else{
+                types[s] = CompiledTagSystem.APPEND;
+                productions.append(transitions.get(0).getAppend());
+            }
+            offsets[s + 1] = productions.length();
+        }
+
+        try{
+            byte[] input = encode(symbols, machine.getInput_tape().toString().substring(machine.getInput_tape().headIndex()));
+            return new CompiledTagSystem(symbols, machine.getInput_tape().getBLANK(), machine.getDeletionNumber(),
+                    types, offsets, encode(symbols, productions.toString()), input);
+        }catch(IllegalArgumentException e){
+            throw new MachineFormatException(e.getMessage(), e);
+        }
+    }
+
+    private static byte[] encode(char[] symbols, String word) throws MachineFormatException{
+        byte[] result = new byte[word.length()];
+        for(int i = 0; i < word.length(); i++){
+            int index = indexOf(symbols, word.charAt(i));
+            if(index < 0)
+                throw new MachineFormatException("Undefined symbol used: " + word.charAt(i));
+            result[i] = (byte) index;
+        }
+        return result;
+    }
+
+    private static int indexOf(char[] symbols, char symbol){
+        for(int i = 0; i < symbols.length; i++){
+            if(symbols[i] == symbol)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the value of the Class element of given config file
+     */
+    private static String readClass(String config) throws MachineFormatException{
+        try(InputStream in = new FileInputStream(config)){
+            XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(in);
+            while(reader.hasNext()){
+                XMLEvent event = reader.nextEvent();
+                if(event.isStartElement() && event.asStartElement().getName().getLocalPart().equals(Machine.CLASS))
+                    return reader.getElementText().trim();
+            }
+        }catch(FileNotFoundException e){
+            throw new MachineFormatException("Given config file is not found: " + config, e);
+        }catch(XMLStreamException | IOException e){
+            throw new MachineFormatException("Invalid xml file: " + config, e);
+        }
+        throw new MachineFormatException("Config file does not define a machine class: " + config);
+    }
+}
@@ -0,0 +1,238 @@
+package utm_simulation.simulation.compiled;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the binary format of compiled machines.
+ *
+ * <p>A compiled file consists of a header and a payload, all in big endian order.</p>
+ * <pre>
+ * header : magic "UTMC" (int), version (short), kind (byte), reserved (byte), payload length (int), crc32 of payload (int)
+ * payload: number of symbols (byte), symbols (char each), blank (char),
+ *          input length (int), head index (int, at most the input length), input (byte each),
+ *          turing machine: number of states (short), per entry next state (short), next symbol (byte),
+ *                          shift (byte, -1 or 1, 0 for halting and undefined entries)
+ *          tag system    : deletion number (short), per symbol rule type (byte), production length (int), production (byte each)
+ * </pre>
+ */
+public final class MachineFile {
+
+    public static final int MAGIC = 0x55544D43; // "UTMC"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private MachineFile(){}
+
+    /**
+     * Serializes a compiled machine
+     * @param machine machine to serialize
+     * @return the binary form of the machine including the header
+     */
+    public static byte[] toBytes(CompiledMachine machine){
+        byte[] body = payload(machine);
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        file.put(header(machine, body));
+        file.put(body);
+        return file.array();
+    }
+
+    private static ByteBuffer header(CompiledMachine machine, byte[] body){
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.put((byte) machine.getKind().getCode());
+        header.put((byte) 0);
+        header.putInt(body.length);
+        header.putInt((int) crc.getValue());
+        header.flip();
+        return header;
+    }
+
+    private static byte[] payload(CompiledMachine machine){
+        ByteBuffer payload = ByteBuffer.allocate(payloadSize(machine));
+        payload.put((byte) machine.getNumSymbols());
+        for(int i = 0; i < machine.getNumSymbols(); i++)
+            payload.putChar(machine.getSymbol(i));
+        payload.putChar(machine.getBlank());
+        payload.putInt(machine.getInputLength());
+        payload.putInt(machine.getHeadIndex());
+        payload.put(machine.getInputBuffer());
+
+        if(machine instanceof CompiledTuringMachine){
+            CompiledTuringMachine tm = (CompiledTuringMachine) machine;
+            payload.putShort((short) tm.getNumStates());
+            int entries = tm.getNumStates() * tm.getNumSymbols();
+            for(int e = 0; e < entries; e++){
+                payload.putShort((short) tm.getNextState(e));
+                payload.put((byte) tm.getNextSymbol(e));
+                payload.put((byte) tm.getShift(e));
+            }
+        }else{
+            CompiledTagSystem tag = (CompiledTagSystem) machine;
+            payload.putShort((short) tag.getDeletionNumber());
+            for(int s = 0; s < tag.getNumSymbols(); s++){
+                payload.put(tag.getType(s));
+                payload.putInt(tag.getProductionLength(s));
+                payload.put(tag.getProduction(s));
+            }
+        }
+
+        return payload.array();
+    }
+
+    private static int payloadSize(CompiledMachine machine){
+        int size = 1 + 2 * machine.getNumSymbols() + 2 + 4 + 4 + machine.getInputLength();
+        if(machine instanceof CompiledTuringMachine){
+            CompiledTuringMachine tm = (CompiledTuringMachine) machine;
+            size += 2 + 4 * tm.getNumStates() * tm.getNumSymbols();
+        }else{
+            CompiledTagSystem tag = (CompiledTagSystem) machine;
+            size += 2 + 5 * tag.getNumSymbols() + tag.getProductions().length;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a compiled machine to given file, replacing any existing content.
+     * The header and the payload are written with a single gathering write, without joining them first.
+     * @param machine machine to write
+     * @param path destination file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(CompiledMachine machine, Path path) throws IOException{
+        byte[] body = payload(machine);
+        ByteBuffer[] buffers = {header(machine, body), ByteBuffer.wrap(body)};
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            while(buffers[1].hasRemaining())
+                channel.write(buffers);
+        }
+    }
+
+    /**
+     * Loads a compiled machine by memory mapping given file.
+     * @param path compiled machine file
+     * @return the compiled machine stored in the file
+     * @throws MachineFormatException if the file is missing, corrupted or not a compiled machine
+     * @throws IOException if the file cannot be read
+     */
+    public static CompiledMachine load(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long size = channel.size();
+            if(size < HEADER_SIZE || size > Integer.MAX_VALUE)
+                throw new MachineFormatException("Invalid compiled machine size: " + size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return read(buffer);
+        }catch(NoSuchFileException e){
+            throw new MachineFormatException("Given compiled machine is not found: " + path, e);
+        }
+    }
+
+    /**
+     * Reads a compiled machine from given buffer, starting at its current position.
+     * @param buffer buffer holding a compiled machine
+     * @return the compiled machine stored in the buffer
+     * @throws MachineFormatException if the content is corrupted or not a compiled machine
+     */
+    public static CompiledMachine read(ByteBuffer buffer) throws MachineFormatException{
+        try{
+            if(buffer.getInt() != MAGIC)
+                throw new MachineFormatException("Not a compiled machine");
+            short version = buffer.getShort();
+            if(version != VERSION)
+                throw new MachineFormatException("Unsupported compiled machine version: " + version);
+            CompiledMachine.Kind kind = CompiledMachine.Kind.fromCode(buffer.get());
+            if(kind == null)
+                throw new MachineFormatException("Unknown machine kind");
+            buffer.get();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if(length < 0 || length != buffer.remaining())
+                throw new MachineFormatException("Payload length does not match the file size");
+
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if((int) crc.getValue() != checksum)
+                throw new MachineFormatException("Checksum mismatch");
+
+            return readPayload(kind, payload);
+        }catch(BufferUnderflowException e){
+            throw new MachineFormatException("Truncated compiled machine", e);
+        }catch(IllegalArgumentException e){
+            throw new MachineFormatException("Inconsistent compiled machine: " + e.getMessage(), e);
+        }
+    }
+
+    private static CompiledMachine readPayload(CompiledMachine.Kind kind, ByteBuffer payload) throws MachineFormatException{
+        int numSymbols = payload.get() & 0xFF;
+        char[] symbols = new char[numSymbols];
+        for(int i = 0; i < numSymbols; i++)
+            symbols[i] = payload.getChar();
+        char blank = payload.getChar();
+        int inputLength = payload.getInt();
+        int headIndex = payload.getInt();
+        if(inputLength < 0 || inputLength > payload.remaining())
+            throw new MachineFormatException("Invalid input length: " + inputLength);
+        if(headIndex < 0 || headIndex > inputLength)
+            throw new MachineFormatException("Head index out of the input: " + headIndex);
+        byte[] input = new byte[inputLength];
+        payload.get(input);
+
+        CompiledMachine machine;
+        if(kind == CompiledMachine.Kind.TURING_MACHINE){
+            int numStates = payload.getShort();
+            int entries = numStates * numSymbols;
+            if(numStates <= 0 || 4L * entries > payload.remaining())
+                throw new MachineFormatException("Invalid number of states: " + numStates);
+            int[] nextStates = new int[entries];
+            byte[] nextSymbols = new byte[entries];
+            byte[] shifts = new byte[entries];
+            for(int e = 0; e < entries; e++){
+                nextStates[e] = payload.getShort();
+                nextSymbols[e] = payload.get();
+                shifts[e] = payload.get();
+                // moving entries shift by one cell, halting and undefined ones are written with no shift
+                int expected = nextStates[e] > 0 ? 1 : 0;
+                if(Math.abs(shifts[e]) != expected)
+                    throw new MachineFormatException("Invalid shift " + shifts[e] + " of transition " + e);
+            }
+            machine = new CompiledTuringMachine(symbols, blank, numStates, nextStates, nextSymbols, shifts, new byte[0], 0)
+                    .withInput(input, headIndex);
+        }else{
+            int deletionNumber = payload.getShort();
+            byte[] types = new byte[numSymbols];
+            int[] offsets = new int[numSymbols + 1];
+            ByteBuffer productions = ByteBuffer.allocate(payload.remaining());
+            for(int s = 0; s < numSymbols; s++){
+                types[s] = payload.get();
+                int length = payload.getInt();
+                if(length < 0 || length > payload.remaining())
+                    throw new MachineFormatException("Invalid production length: " + length);
+                offsets[s + 1] = offsets[s] + length;
+                productions.put(payload.slice().limit(length));
+                payload.position(payload.position() + length);
+            }
+            byte[] data = new byte[offsets[numSymbols]];
+            productions.flip();
+            productions.get(data);
+            machine = new CompiledTagSystem(symbols, blank, deletionNumber, types, offsets, data, new byte[0])
+                    .withInput(input);
+        }
+
+        if(payload.hasRemaining())
+            throw new MachineFormatException("Unexpected trailing data in compiled machine");
+        return machine;
+    }
+}
@@ -0,0 +1,21 @@
+package utm_simulation.simulation.compiled;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a compiled machine file or a machine to compile is malformed.
+ * Unlike the xml parsers, the compiled format never terminates the virtual machine,
+ * so that a batch driver can report the failure and continue with the next job.
+ */
+public class MachineFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MachineFormatException(String message){
+        super(message);
+    }
+
+    public MachineFormatException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
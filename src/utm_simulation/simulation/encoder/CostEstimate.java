@@ -0,0 +1,96 @@
+package utm_simulation.simulation.encoder;
+
+/**
+ * The cost predicted for a universal Turing machine to simulate a tag system on an input: the number of steps of the
+ * Turing machine and the number of cells its tape spans.
+ */
+public final class CostEstimate {
+
+    /**
+     * Represents how the predicted run ends.
+     * <ul>
+     *     <li>HALTS: the machine halts after {@link #getSteps()} steps.</li>
+     *     <li>RUNS_AWAY: the machine never halts, its tape growing forever.</li>
+     *     <li>UNKNOWN: the prediction stopped at its limit of tag steps before the machine halted.</li>
+     * </ul>
+     */
+    public enum Outcome{HALTS, RUNS_AWAY, UNKNOWN}
+
+    private final Outcome outcome;
+    private final long steps;
+    private final long tapeLength;
+    private final long tagSteps;
+    private final boolean exact;
+
+    /**
+     * Creates an estimate
+     * @param outcome how the predicted run ends
+     * @param steps number of steps of the Turing machine, up to the end of the prediction
+     * @param tapeLength number of cells spanned by the tape, up to the end of the prediction
+     * @param tagSteps number of tag steps simulated by the prediction
+     * @param exact whether steps and tapeLength are exact rather than estimated
+     */
+    public CostEstimate(Outcome outcome, long steps, long tapeLength, long tagSteps, boolean exact){
+        this.outcome = outcome;
+        this.steps = steps;
+        this.tapeLength = tapeLength;
+        this.tagSteps = tagSteps;
+        this.exact = exact;
+    }
+
+    public Outcome getOutcome(){
+        return outcome;
+    }
+
+    /**
+     * Returns the number of steps of the Turing machine, including the halting step if it halts
+     * @return the number of steps
+     */
+    public long getSteps(){
+        return steps;
+    }
+
+    /**
+     * Returns the number of cells spanned by the tape of the Turing machine
+     * @return the length of the tape
+     */
+    public long getTapeLength(){
+        return tapeLength;
+    }
+
+    public long getTagSteps(){
+        return tagSteps;
+    }
+
+    public boolean isExact(){
+        return exact;
+    }
+
+    /**
+     * Returns whether this run is cheaper than another one. A run known to halt is cheaper than any other, then runs
+     * of fewer steps, then runs of a shorter tape.
+     * @param other the other estimate
+     * @return whether this run is cheaper
+     */
+    public boolean isCheaperThan(CostEstimate other){
+        if((outcome == Outcome.HALTS) != (other.outcome == Outcome.HALTS))
+            return outcome == Outcome.HALTS;
+        if(steps != other.steps)
+            return steps < other.steps;
+        return tapeLength < other.tapeLength;
+    }
+
+    @Override
+    public String toString(){
+        String prefix = exact ? "" : "~";
+        switch(outcome){
+            case HALTS:
+                return "halts after " + prefix + steps + " steps on " + prefix + tapeLength + " cells";
+            case RUNS_AWAY:
+                return "runs away after " + prefix + steps + " steps and " + tagSteps + " tag steps";
+            default:
+                return "still running after " + prefix + steps + " steps and " + tagSteps + " tag steps on "
+                        + prefix + tapeLength + " cells";
+        }
+    }
+}
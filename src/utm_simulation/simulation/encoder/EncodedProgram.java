@@ -0,0 +1,99 @@
+package utm_simulation.simulation.encoder;
+
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.util.Arrays;
+
+/**
+ * The part of a UTM tape which only depends on the simulated tag system, computed once and reused for every input.
+ *
+ * <p>The UTM(5,5) tape of a tag system is made of a block encoding its productions, which ends with "bbb", followed
+ * by the encoded input word, where a symbol with value N is written as N 1s and symbols are separated by c. Encoding
+ * an input therefore only copies the block and writes runs of 1s after it.</p>
+ */
+public final class EncodedProgram {
+
+    private final char[] block;
+    private final int[] values;
+
+    EncodedProgram(char[] block, int[] values){
+        this.block = block;
+        this.values = values;
+    }
+
+    /**
+     * Returns the N value of given symbol
+     * @param symbol a symbol of the tag system
+     * @return the N value of the symbol
+     * @throws IllegalArgumentException if the symbol does not belong to the tag system
+     */
+    public int getValue(char symbol){
+        int value = symbol < values.length ? values[symbol] : 0;
+        if(value <= 0)
+            throw new IllegalArgumentException("Undefined symbol: " + symbol);
+        return value;
+    }
+
+    /**
+     * Returns the length of the encoded productions, which is also the position of the head
+     * on the first symbol of the encoded input
+     * @return the length of the encoded productions
+     */
+    public int getHeadIndex(){
+        return block.length;
+    }
+
+    /**
+     * Returns the encoded productions, ending with "bbb"
+     * @return the encoded productions
+     */
+    public String getBlock(){
+        return new String(block);
+    }
+
+    /**
+     * Returns the length of the UTM tape encoding given input
+     * @param input the input word of the tag system
+     * @return the length of the UTM tape
+     * @throws IllegalArgumentException if the input contains a symbol which does not belong to the tag system
+     */
+    public int length(CharSequence input){
+        long length = block.length + Math.max(0, input.length() - 1);
+        for(int i = 0; i < input.length(); i++)
+            length += getValue(input.charAt(i));
+        if(length > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Encoded input is too long");
+        return (int) length;
+    }
+
+    /**
+     * Encodes the UTM tape of given input
+     * @param input the input word of the tag system
+     * @return the UTM tape
+     * @throws IllegalArgumentException if the input contains a symbol which does not belong to the tag system
+     */
+    public String encode(CharSequence input){
+        char[] tape = new char[length(input)];
+        System.arraycopy(block, 0, tape, 0, block.length);
+        int position = block.length;
+        for(int i = 0; i < input.length(); i++){
+            if(i > 0)
+                tape[position++] = 'c';
+            int value = values[input.charAt(i)];
+            Arrays.fill(tape, position, position + value, '1');
+            position += value;
+        }
+        return new String(tape);
+    }
+
+    /**
+     * Returns the compiled UTM with its tape encoding given input and its head on the first encoded symbol
+     * @param utm the compiled UTM(5,5)
+     * @param input the input word of the tag system
+     * @return the UTM ready to simulate the tag system on the input
+     * @throws IllegalArgumentException if the input contains a symbol which does not belong to the tag system
+     */
+    public CompiledTuringMachine prepare(CompiledTuringMachine utm, CharSequence input){
+        return utm.withInput(encode(input), getHeadIndex());
+    }
+}
@@ -3,13 +3,49 @@ package utm_simulation.simulation.encoder;
 import utm_simulation.simulation.automata.Machine;
 import utm_simulation.simulation.automata.TagSystem;
 import utm_simulation.simulation.automata.TagSystem.TagSystemTransition;
+import utm_simulation.simulation.monitor.PhaseEvent;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 
+/**
+ * Encodes tag systems into inputs of small universal Turing machines.
+ */
 public class Encoder {
 
+    /** Encoded programs of the tag systems encoded so far, dropped with their tag system. */
+    private static final Map<TagSystem, EncodedProgram> PROGRAMS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Encodes the tape of utm(5,5) simulating given tag system on its current tape
+     * @param machine the tag system to simulate
+     * @return the content of the utm(5,5) tape
+     */
     public static String utm5_5_encode(TagSystem machine){
+        EncodedProgram program = utm5_5_program(machine);
+        PhaseEvent phase = new PhaseEvent();
+        phase.begin();
+        String tape = program.encode(machine.getInput_tape().toString());
+        phase.commit("encodeInput", null, tape.length() - program.getHeadIndex());
+        return tape;
+    }
+
+    /**
+     * Returns the encoded productions of given tag system for utm(5,5). The result is computed once per tag system
+     * and reused, so that encoding many inputs of the same tag system only encodes the inputs.
+     * @param machine the tag system to simulate
+     * @return the encoded program of the tag system
+     */
+    public static EncodedProgram utm5_5_program(TagSystem machine){
+        return PROGRAMS.computeIfAbsent(machine, Encoder::utm5_5_compile);
+    }
+
+    private static EncodedProgram utm5_5_compile(TagSystem machine){
+        PhaseEvent phase = new PhaseEvent();
+        phase.begin();
 
         HashMap<Character, Integer> mapNs = utm5_5_generateNs(machine);
         StringBuilder builder = new StringBuilder("1b1b");
@@ -40,13 +76,17 @@ public class Encoder {
 
         builder.append("bbb");
 
-        for(i = 0; i < machine.getInput_tape().toString().length(); i++){
-            appendN1s(builder, mapNs.get(machine.getInput_tape().toString().charAt(i)));
-            if(i != machine.getInput_tape().toString().length() - 1)
-                builder.append('c');
-        }
-
-        return builder.toString();
+        int maxSymbol = 0;
+        for(char symbol : mapNs.keySet())
+            maxSymbol = Math.max(maxSymbol, symbol);
+        int[] values = new int[maxSymbol + 1];
+        for(Map.Entry<Character, Integer> entry : mapNs.entrySet())
+            values[entry.getKey()] = entry.getValue();
+
+        char[] block = new char[builder.length()];
+        builder.getChars(0, block.length, block, 0);
+        phase.commit("encodeProductions", null, block.length);
+        return new EncodedProgram(block, values);
     }
 
     private static void appendN1s(StringBuilder builder, int n){
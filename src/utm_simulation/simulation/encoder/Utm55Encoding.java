@@ -0,0 +1,88 @@
+package utm_simulation.simulation.encoder;
+
+import utm_simulation.simulation.automata.TagSystem;
+
+/**
+ * Rogozhin's utm(5,5) of config/utm_5_5.xml, simulating 2-tag systems with the encoding of
+ * {@link Encoder#utm5_5_program(TagSystem)}. Costs are predicted exactly by {@link Utm55Predictor}.
+ */
+public class Utm55Encoding implements UtmEncoding {
+
+    public static final String NAME = "utm5_5";
+    public static final String CONFIG = "config/utm_5_5.xml";
+
+    @Override
+    public String getName(){
+        return NAME;
+    }
+
+    @Override
+    public String getConfig(){
+        return CONFIG;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The tag system must have deletion number 2, and the symbols a and b besides the ones it encodes.
+     */
+    @Override
+    public boolean supports(TagSystem machine){
+        if(machine.getDeletionNumber() != 2)
+            return false;
+        boolean a = false;
+        boolean b = false;
+        int others = 0;
+        for(char symbol : machine.getSymbols()){
+            if(symbol == 'a')
+                a = true;
+            else if(symbol == 'b')
+                b = true;
+            else
+                others++;
+        }
+        return a && b && others > 0;
+    }
+
+    @Override
+    public String encode(TagSystem machine, CharSequence input) throws IllegalArgumentException {
+        return program(machine).encode(input);
+    }
+
+    @Override
+    public int getHeadIndex(TagSystem machine) throws IllegalArgumentException {
+        return program(machine).getHeadIndex();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The estimate is exact, and the tape length is the number of cells visited by the head.
+     */
+    @Override
+    public CostEstimate estimate(TagSystem machine, CharSequence input, long maxTagSteps) throws IllegalArgumentException {
+        program(machine);
+        Utm55Predictor predictor = new Utm55Predictor(machine, input);
+        try{
+            predictor.run(maxTagSteps);
+        }catch(ArithmeticException e){
+            return new CostEstimate(CostEstimate.Outcome.UNKNOWN, Long.MAX_VALUE, Long.MAX_VALUE,
+                    predictor.getTagSteps(), false);
+        }
+        CostEstimate.Outcome outcome;
+        switch(predictor.getOutcome()){
+            case HALTED:
+                outcome = CostEstimate.Outcome.HALTS;break;
+            case RUNAWAY:
+                outcome = CostEstimate.Outcome.RUNS_AWAY;break;
+            default:
+                outcome = CostEstimate.Outcome.UNKNOWN;
+        }
+        return new CostEstimate(outcome, predictor.getSteps(), predictor.getTapeLength(), predictor.getTagSteps(), true);
+    }
+
+    private EncodedProgram program(TagSystem machine){
+        if(!supports(machine))
+            throw new IllegalArgumentException(NAME + " does not simulate tag systems with deletion number "
+                    + machine.getDeletionNumber() + " or without the symbols a and b");
+        return Encoder.utm5_5_program(machine);
+    }
+}
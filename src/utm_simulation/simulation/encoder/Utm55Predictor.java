@@ -0,0 +1,478 @@
+package utm_simulation.simulation.encoder;
+
+import utm_simulation.simulation.automata.Machine;
+import utm_simulation.simulation.automata.TagSystem;
+import utm_simulation.simulation.automata.TagSystem.TagSystemTransition;
+import utm_simulation.simulation.automata.Tape;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Predicts the exact number of steps utm(5,5) of config/utm_5_5.xml takes on the tape encoded by
+ * {@link Encoder#utm5_5_encode(TagSystem)}, one tag step at a time and without running the Turing machine.
+ *
+ * <p>At the start of every cycle the tape holds the encoded productions, a run of g 1s left over from the symbols
+ * read so far, and the word as runs of 1s separated by c, usually ended by a 0. Each cycle of the machine reads the
+ * first symbol and goes through the same phases:</p>
+ * <ol>
+ *     <li>state 1 marks the N b's nearest to the left of the head, where N is the number of 1s of the first symbol;</li>
+ *     <li>states 2 and 4 bounce between the 1s on the left of the head and the end of the word, adding a cell to the
+ *     end for every 1 until they mark the next b, which selects the production;</li>
+ *     <li>states 3 and 4 copy the runs of 1s of the production to the end of the word, a c and one cell per 1;</li>
+ *     <li>state 5 restores the marked b's and starts the next cycle after the next c, or halts.</li>
+ * </ol>
+ * <p>Every phase moves the head over runs whose lengths are known, so its number of steps is a closed form of the
+ * positions of the b's of the productions, the value of the first symbol, g and the length of the word. A cycle is
+ * predicted in time proportional to the length of the copied production, whatever the length of the tape.</p>
+ *
+ * <p>The prediction follows the Turing machine rather than the tag system: the machine also adds the cells of the
+ * second phase to the last symbol of the word and copies a run as one 1 less than its N value, so the word it holds
+ * only stays the encoding of the tag system word for some tag systems. The tag system is stepped alongside and
+ * {@link #getDivergence()} reports the first tag step where they differ.</p>
+ */
+public class Utm55Predictor {
+
+    public enum Outcome {
+        /** The machine is at the start of a cycle. */
+        RUNNING,
+        /** The machine halted. */
+        HALTED,
+        /** The word is down to one symbol: state 1 reads past its end and writes d's to the right forever. */
+        RUNAWAY
+    }
+
+    private static final char BLANK = 'b';
+
+    private final char[] block;
+    /** Positions of the b's of the block relative to its end, from the nearest one. */
+    private final long[] bs;
+    /** Prefix sums of bs. */
+    private final long[] bSums;
+    /** Number of 1s of the block on the right of each b. */
+    private final long[] ones;
+    /** Sum of the positions of the 1s of the block on the right of each b. */
+    private final long[] oneSums;
+    /** Length of the run of 1s of the block ending at each cell. */
+    private final int[] runs;
+    private final long totalOnes;
+    private final long totalOneSum;
+
+    private final Values word = new Values();
+    private long g;
+    private boolean terminated;
+    /** Number of cells from the first symbol to the end of the word. */
+    private long width;
+
+    private long steps;
+    private long tagSteps;
+    private Outcome outcome = Outcome.RUNNING;
+    private long minPosition;
+    private long maxPosition;
+    private long headPosition;
+    /** Leftmost cell swept by state 3 when it ran past the end of the word, if the machine halted that way. */
+    private long sweepStart = Long.MIN_VALUE;
+
+    private final TagSystem tagsystem;
+    private final EncodedProgram program;
+    private final ArrayDeque<Character> tagWord;
+    private long divergence = -1;
+
+    /**
+     * Creates a predictor of utm(5,5) on the encoding of given tag system and its current input
+     * @param machine the tag system simulated by utm(5,5)
+     * @throws IllegalArgumentException if the input is empty or contains a symbol which does not belong to the
+     *                                  tag system
+     */
+    public Utm55Predictor(TagSystem machine){
+        this(machine, machine.getInput_tape().toString());
+    }
+
+    /**
+     * Creates a predictor of utm(5,5) on the encoding of given tag system and input
+     * @param machine the tag system simulated by utm(5,5)
+     * @param input the input word of the tag system
+     * @throws IllegalArgumentException if the input is empty or contains a symbol which does not belong to the
+     *                                  tag system
+     */
+    public Utm55Predictor(TagSystem machine, CharSequence input){
+        if(input.length() == 0)
+            throw new IllegalArgumentException("Empty input");
+        this.tagsystem = machine;
+        this.program = Encoder.utm5_5_program(machine);
+        this.block = program.getBlock().toCharArray();
+
+        int count = 0;
+        for(char symbol : block){
+            if(symbol == BLANK)
+                count++;
+        }
+        bs = new long[count + 1];
+        bSums = new long[count + 1];
+        ones = new long[count + 1];
+        oneSums = new long[count + 1];
+        runs = new int[block.length];
+        long oneCount = 0;
+        long oneSum = 0;
+        int j = 0;
+        for(int i = block.length - 1; i >= 0; i--){
+            long position = i - block.length;
+            if(block[i] == BLANK){
+                j++;
+                bs[j] = position;
+                bSums[j] = bSums[j - 1] + position;
+                ones[j] = oneCount;
+                oneSums[j] = oneSum;
+            }else{
+                oneCount++;
+                oneSum += position;
+            }
+        }
+        totalOnes = oneCount;
+        totalOneSum = oneSum;
+        for(int i = 0; i < block.length; i++){
+            if(block[i] != BLANK)
+                runs[i] = i > 0 ? runs[i - 1] + 1 : 1;
+        }
+
+        tagWord = new ArrayDeque<>();
+        for(int i = 0; i < input.length(); i++){
+            char symbol = input.charAt(i);
+            word.add(program.getValue(symbol));
+            tagWord.add(symbol);
+        }
+        width = add(word.sum(), word.size() - 1);
+        minPosition = -block.length;
+        maxPosition = width - 1;
+        if(machine.getDeletionNumber() != 2)
+            divergence = 1;
+    }
+
+    public Outcome getOutcome(){
+        return outcome;
+    }
+
+    /**
+     * Returns the number of steps of utm(5,5) so far. Once the machine halted this is the number of steps of the run,
+     * including the halting step. When the machine runs away this is the number of steps before the last cycle.
+     * @return the number of steps of utm(5,5)
+     */
+    public long getSteps(){
+        return steps;
+    }
+
+    /**
+     * Returns the number of cycles of utm(5,5) so far, including the last one when the machine halted
+     * @return the number of tag steps simulated by utm(5,5)
+     */
+    public long getTagSteps(){
+        return tagSteps;
+    }
+
+    /**
+     * Returns the number of symbols of the word held by utm(5,5) at the start of the current cycle
+     * @return the length of the word
+     */
+    public long getWordLength(){
+        return word.size();
+    }
+
+    /**
+     * Returns the number of cells visited by the head of utm(5,5) so far, which is the length of {@link #getTape()}
+     * @return the length of the tape
+     */
+    public long getTapeLength(){
+        return maxPosition - minPosition + 1;
+    }
+
+    /**
+     * Returns the first tag step after which the word held by utm(5,5) is no longer the encoding of the tag system
+     * word, or where only one of them halts
+     * @return the first diverging tag step, -1 if utm(5,5) followed the tag system so far
+     */
+    public long getDivergence(){
+        return divergence;
+    }
+
+    /**
+     * Predicts tag steps until utm(5,5) halts or runs away
+     * @return the outcome of the run
+     * @throws ArithmeticException if the number of steps or the tape overflows a long
+     */
+    public Outcome run(){
+        return run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Predicts at most given number of tag steps
+     * @param maxTagSteps maximum number of tag steps to predict
+     * @return the outcome of the run, {@link Outcome#RUNNING} if the limit was reached
+     * @throws ArithmeticException if the number of steps or the tape overflows a long
+     */
+    public Outcome run(long maxTagSteps){
+        for(long i = 0; i < maxTagSteps && step(); i++);
+        return outcome;
+    }
+
+    /**
+     * Predicts the next cycle of utm(5,5), which simulates one tag step
+     * @return whether the machine is still running after the cycle
+     * @throws ArithmeticException if the number of steps or the tape overflows a long
+     */
+    public boolean step(){
+        if(outcome != Outcome.RUNNING)
+            return false;
+        int length = word.size();
+        long v = word.get(0);
+        String production = tagStep();
+        if(length == 1){
+            outcome = Outcome.RUNAWAY;
+            diverge(false);
+            return false;
+        }
+
+        // Phase 1: the rounds of state 1 mark the v nearest b's
+        long cost = add(add(v + 1, mul(2 * v, g)), sub(mul(v, v - 1), mul(2, bSum(v))));
+
+        // Phase 2: states 2 and 4 bounce on every 1 between the next b and the head
+        long end = add(g, width);
+        long start = g + v + 1;
+        long selected = b(v + 1);
+        long bounces = add(add(v, g), v + 1 < bs.length ? ones[(int) (v + 1)] : totalOnes);
+        long positions = add(add(mul(v, 2 * g + v - 1) / 2, mul(g, g - 1) / 2),
+                v + 1 < bs.length ? oneSums[(int) (v + 1)] : totalOneSum);
+        cost = add(cost, end - start + 1);
+        cost = add(cost, add(mul(2 * bounces, end), mul(bounces, bounces)));
+        cost = sub(cost, mul(2, positions));
+        cost = add(cost, sub(add(end, bounces), selected));
+        minPosition = Math.min(minPosition, selected);
+
+        long terminal = add(end, bounces);
+        word.set(length - 1, add(word.get(length - 1), terminated ? bounces + 1 : bounces));
+        width = add(width, bounces + 1);
+        terminated = true;
+        maxPosition = Math.max(maxPosition, terminal);
+        boolean faithful = length == 2;
+
+        // Phase 3: states 3 and 4 copy the runs of 1s of the production
+        long firstC = -1;
+        long x = selected - 1;
+        int copied = 0;
+        while(x >= -block.length && block[(int) (x + block.length)] != BLANK){
+            int run = runs[(int) (x + block.length)];
+            if(!terminated){
+                // no 0 left to turn into c: state 3 sweeps to the blank after the word and state 5 halts there
+                long wordEnd = g + width - 1;
+                steps = add(steps, add(cost, wordEnd - x + 3));
+                sweepStart = x;
+                headPosition = wordEnd + 2;
+                maxPosition = Math.max(maxPosition, headPosition);
+                halt(false);
+                return false;
+            }
+            long distance = terminal - x;
+            cost = add(cost, distance + 1);
+            cost = add(cost, mul(run - 1, 2 * distance - 1));
+            cost = add(cost, 2L * run * (run - 1));
+            cost = add(cost, distance + 2L * run - 1);
+            if(firstC < 0)
+                firstC = terminal;
+            if(run > 1){
+                word.add(run - 2);
+                terminal += run - 1;
+                width += run - 1;
+            }else{
+                word.add(0);
+                terminated = false;
+            }
+            if(faithful)
+                faithful = production != null && copied < production.length()
+                        && program.getValue(production.charAt(copied)) == run - 2;
+            copied++;
+            maxPosition = Math.max(maxPosition, terminal);
+            x -= run;
+            minPosition = Math.min(minPosition, x);
+            x--;
+        }
+
+        // Phase 4: state 5 restores the b's up to the next c
+        minPosition = Math.min(minPosition, x);
+        long next;
+        if(length > 2)
+            next = g + word.get(0) + 1 + word.get(1);
+        else
+            next = firstC >= 0 ? firstC : terminal;
+        cost = add(cost, next - x + 1);
+        steps = add(steps, cost);
+        if(firstC < 0 && length == 2){
+            headPosition = next;
+            halt(production == null || production.isEmpty());
+            return false;
+        }
+
+        width -= next + 1 - g;
+        g = next + 1;
+        maxPosition = Math.max(maxPosition, g);
+        word.drop(2);
+        diverge(faithful && production != null && copied == production.length());
+        tagSteps++;
+        return true;
+    }
+
+    /**
+     * Builds the tape of utm(5,5) at the start of the current cycle, or when it halted. The tape spans every cell
+     * visited by the head, as a {@link Tape} grown by the head would.
+     * @return the tape of utm(5,5) with its head
+     * @throws IllegalStateException if the tape is too long to fit in a String
+     */
+    public Tape getTape(){
+        long length = maxPosition - minPosition + 1;
+        if(length > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Tape is too long: " + length);
+        char[] cells = new char[(int) length];
+        Arrays.fill(cells, BLANK);
+        System.arraycopy(block, 0, cells, (int) (-block.length - minPosition), block.length);
+
+        int position = (int) -minPosition;
+        if(outcome == Outcome.HALTED && sweepStart == Long.MIN_VALUE){
+            // halted on the 0 ending the word, after restoring every b
+            Arrays.fill(cells, position, (int) (headPosition - minPosition), '1');
+            cells[(int) (headPosition - minPosition)] = '0';
+            return new Tape(BLANK, (int) (headPosition - minPosition), new String(cells));
+        }
+
+        boolean swept = outcome == Outcome.HALTED;
+        char one = swept ? '0' : '1';
+        Arrays.fill(cells, position, position + (int) g, one);
+        position += g;
+        for(int i = 0; i < word.size(); i++){
+            if(i > 0)
+                cells[position++] = swept && i == 1 ? one : 'c';
+            Arrays.fill(cells, position, position + (int) word.get(i), one);
+            position += word.get(i);
+        }
+        if(terminated)
+            cells[position] = '0';
+        if(swept){
+            // state 3 left the b's it marked and turned the 1s into 0s up to the end of the word
+            for(int i = (int) (sweepStart - minPosition); i < -minPosition; i++)
+                cells[i] = cells[i] == BLANK ? 'd' : '0';
+            return new Tape(BLANK, (int) (headPosition - minPosition), new String(cells));
+        }
+        return new Tape(BLANK, (int) (g - minPosition), new String(cells));
+    }
+
+    /**
+     * Returns the state of utm(5,5) on the tape built by {@link #getTape()}
+     * @return 1 at the start of a cycle, -1 once the machine halted
+     */
+    public int getState(){
+        return outcome == Outcome.HALTED ? -1 : 1;
+    }
+
+    private void halt(boolean faithful){
+        outcome = Outcome.HALTED;
+        diverge(faithful);
+        tagSteps++;
+    }
+
+    /**
+     * Steps the tag system alongside and returns the production appended by the tag step
+     */
+    private String tagStep(){
+        if(divergence >= 0 || tagWord.isEmpty())
+            return null;
+        TagSystemTransition t = tagsystem.getTransition(tagWord.peekFirst()).get(0);
+        if(t.getType() != Machine.TransitionType.APPEND)
+            return null;
+        String production = t.getAppend();
+        tagWord.pollFirst();
+        tagWord.pollFirst();
+        for(int i = 0; i < production.length(); i++)
+            tagWord.add(production.charAt(i));
+        return production;
+    }
+
+    private void diverge(boolean faithful){
+        if(divergence < 0 && !faithful)
+            divergence = tagSteps + 1;
+        if(divergence >= 0)
+            tagWord.clear();
+    }
+
+    /**
+     * Returns the position of the j-th b on the left of the end of the encoded productions,
+     * counting the blank cells beyond the tape
+     */
+    private long b(long j){
+        if(j < bs.length)
+            return bs[(int) j];
+        return sub(-block.length, j - bs.length + 1);
+    }
+
+    /**
+     * Returns the sum of the positions of the j nearest b's
+     */
+    private long bSum(long j){
+        if(j < bs.length)
+            return bSums[(int) j];
+        long beyond = j - bs.length + 1;
+        return sub(sub(bSums[bs.length - 1], mul(beyond, block.length)), mul(beyond, beyond + 1) / 2);
+    }
+
+    private static long add(long a, long b){
+        return Math.addExact(a, b);
+    }
+
+    private static long sub(long a, long b){
+        return Math.subtractExact(a, b);
+    }
+
+    private static long mul(long a, long b){
+        return Math.multiplyExact(a, b);
+    }
+
+    /**
+     * The values of the symbols of the word held by utm(5,5), as a growable ring buffer
+     */
+    private static final class Values{
+        private long[] values = new long[16];
+        private int first;
+        private int size;
+
+        private int size(){
+            return size;
+        }
+
+        private long get(int index){
+            return values[(first + index) & (values.length - 1)];
+        }
+
+        private void set(int index, long value){
+            values[(first + index) & (values.length - 1)] = value;
+        }
+
+        private void add(long value){
+            if(size == values.length){
+                long[] grown = new long[values.length * 2];
+                for(int i = 0; i < size; i++)
+                    grown[i] = get(i);
+                values = grown;
+                first = 0;
+            }
+            values[(first + size++) & (values.length - 1)] = value;
+        }
+
+        private void drop(int count){
+            first = (first + count) & (values.length - 1);
+            size -= count;
+        }
+
+        private long sum(){
+            long sum = 0;
+            for(int i = 0; i < size; i++)
+                sum = Math.addExact(sum, get(i));
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package utm_simulation.simulation.encoder;
+
+import utm_simulation.simulation.automata.TagSystem;
+
+/**
+ * A universal Turing machine together with the encoding of tag systems into its tape. Encodings are registered in
+ * {@link Utms}, either built in or listed in META-INF/services/utm_simulation.simulation.encoder.UtmEncoding.
+ */
+public interface UtmEncoding {
+
+    /**
+     * Returns the name of the universal Turing machine, such as "utm5_5"
+     * @return the name of the machine
+     */
+    String getName();
+
+    /**
+     * Returns the path of the config xml file defining the universal Turing machine
+     * @return the path of the config file
+     */
+    String getConfig();
+
+    /**
+     * Returns whether the machine can simulate given tag system
+     * @param machine the tag system to simulate
+     * @return whether the tag system can be encoded
+     */
+    boolean supports(TagSystem machine);
+
+    /**
+     * Encodes the tape simulating given tag system on an input
+     * @param machine the tag system to simulate
+     * @param input the input word of the tag system
+     * @return the content of the tape
+     * @throws IllegalArgumentException if the tag system is not supported or the input holds an undefined symbol
+     */
+    String encode(TagSystem machine, CharSequence input) throws IllegalArgumentException;
+
+    /**
+     * Returns the initial position of the head on the tapes encoded for given tag system
+     * @param machine the tag system to simulate
+     * @return the initial position of the head
+     * @throws IllegalArgumentException if the tag system is not supported
+     */
+    int getHeadIndex(TagSystem machine) throws IllegalArgumentException;
+
+    /**
+     * Predicts the cost of simulating given tag system on an input, without running the universal Turing machine
+     * @param machine the tag system to simulate
+     * @param input the input word of the tag system
+     * @param maxTagSteps maximum number of tag steps to predict
+     * @return the predicted cost
+     * @throws IllegalArgumentException if the tag system is not supported or the input holds an undefined symbol
+     */
+    CostEstimate estimate(TagSystem machine, CharSequence input, long maxTagSteps) throws IllegalArgumentException;
+}
@@ -0,0 +1,141 @@
+package utm_simulation.simulation.encoder;
+
+import utm_simulation.simulation.automata.TagSystem;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the universal Turing machines tag systems can be encoded for, choosing the cheapest one for a job.
+ *
+ * <p>The built in machine is Rogozhin's "utm5_5". The other small machines of his paper, such as utm(4,6), utm(7,4)
+ * or utm(10,3), each with its own encoding, are added with {@link #register(UtmEncoding)} or discovered with
+ * {@link ServiceLoader}. {@link #select(TagSystem, CharSequence, long)} asks every machine supporting the tag system
+ * for the predicted cost of the job and picks the cheapest one.</p>
+ */
+public final class Utms {
+
+    /**
+     * A machine chosen for a job with its predicted cost
+     */
+    public static final class Choice{
+        private final UtmEncoding encoding;
+        private final CostEstimate estimate;
+
+        private Choice(UtmEncoding encoding, CostEstimate estimate){
+            this.encoding = encoding;
+            this.estimate = estimate;
+        }
+
+        public UtmEncoding getEncoding(){
+            return encoding;
+        }
+
+        public CostEstimate getEstimate(){
+            return estimate;
+        }
+
+        @Override
+        public String toString(){
+            return encoding.getName() + " " + estimate;
+        }
+    }
+
+    private static final List<UtmEncoding> ENCODINGS = new CopyOnWriteArrayList<>();
+
+    static{
+        ENCODINGS.add(new Utm55Encoding());
+        for(UtmEncoding encoding : ServiceLoader.load(UtmEncoding.class))
+            ENCODINGS.add(encoding);
+    }
+
+    private Utms(){}
+
+    /**
+     * Registers an additional machine
+     * @param encoding the machine with its encoding
+     */
+    public static void register(UtmEncoding encoding){
+        ENCODINGS.add(encoding);
+    }
+
+    /**
+     * Returns every registered machine
+     * @return every registered machine
+     */
+    public static List<UtmEncoding> encodings(){
+        return new ArrayList<>(ENCODINGS);
+    }
+
+    /**
+     * Returns the machine of given name
+     * @param name name of the machine
+     * @return the first machine registered with that name
+     * @throws IllegalArgumentException if no machine has that name
+     */
+    public static UtmEncoding get(String name){
+        for(UtmEncoding encoding : ENCODINGS){
+            if(encoding.getName().equals(name))
+                return encoding;
+        }
+        throw new IllegalArgumentException("No universal Turing machine named " + name);
+    }
+
+    /**
+     * Returns the machine defined by given config file
+     * @param config path of the config file of the machine
+     * @return the first machine registered with that config, as given by {@link UtmEncoding#getConfig()}
+     * @throws IllegalArgumentException if no machine has that config
+     */
+    public static UtmEncoding forConfig(String config){
+        Path path = Paths.get(config).toAbsolutePath().normalize();
+        for(UtmEncoding encoding : ENCODINGS){
+            if(Paths.get(encoding.getConfig()).toAbsolutePath().normalize().equals(path))
+                return encoding;
+        }
+        throw new IllegalArgumentException("No registered universal Turing machine is defined by " + config);
+    }
+
+    /**
+     * Predicts the cost of a job on every registered machine supporting the tag system
+     * @param machine the tag system to simulate
+     * @param input the input word of the tag system
+     * @param maxTagSteps maximum number of tag steps to predict
+     * @return the prediction of every machine supporting the tag system, in registration order
+     * @throws IllegalArgumentException if the input holds an undefined symbol
+     */
+    public static List<Choice> estimate(TagSystem machine, CharSequence input, long maxTagSteps){
+        List<Choice> result = new ArrayList<>();
+        for(UtmEncoding encoding : ENCODINGS){
+            if(encoding.supports(machine))
+                result.add(new Choice(encoding, encoding.estimate(machine, input, maxTagSteps)));
+        }
+        return result;
+    }
+
+    /**
+     * Chooses the machine predicted to simulate the tag system on given input the cheapest, as decided by
+     * {@link CostEstimate#isCheaperThan(CostEstimate)}
+     * @param machine the tag system to simulate
+     * @param input the input word of the tag system
+     * @param maxTagSteps maximum number of tag steps to predict
+     * @return the cheapest machine with its predicted cost
+     * @throws IllegalArgumentException if no registered machine supports the tag system, or the input holds an
+     *                                  undefined symbol
+     */
+    public static Choice select(TagSystem machine, CharSequence input, long maxTagSteps){
+        Choice best = null;
+        for(Choice choice : estimate(machine, input, maxTagSteps)){
+            if(best == null || choice.estimate.isCheaperThan(best.estimate))
+                best = choice;
+        }
+        if(best == null)
+            throw new IllegalArgumentException("No universal Turing machine supports a tag system with deletion number "
+                    + machine.getDeletionNumber());
+        return best;
+    }
+}
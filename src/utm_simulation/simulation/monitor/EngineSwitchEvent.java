@@ -0,0 +1,61 @@
+package utm_simulation.simulation.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event reporting that the "adaptive" engine migrated a run to another engine, with the statistics
+ * which triggered the migration.
+ */
+@Name("utm_simulation.EngineSwitch")
+@Label("Engine Switch")
+@Category("UTM Simulation")
+@StackTrace(false)
+public class EngineSwitchEvent extends Event {
+
+    @Label("Machine")
+    @Description("Digest of the transitions of the machine, as in the Simulation Run event")
+    String machine;
+
+    @Label("Total Steps")
+    @Description("Step count at which the run was migrated")
+    long totalSteps;
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Reason")
+    String reason;
+
+    @Label("Steps on Engine")
+    @Description("Steps executed on the engine left since the run last moved to it")
+    long engineSteps;
+
+    /**
+     * Commits the event if it is enabled
+     * @param machine digest of the machine, as returned by {@link RunRecording#digest}
+     * @param totalSteps step count at which the run was migrated
+     * @param from name of the engine left
+     * @param to name of the engine the run moves to
+     * @param reason the statistics which triggered the migration
+     * @param engineSteps steps executed on the engine left since the run last moved to it
+     */
+    public void commit(String machine, long totalSteps, String from, String to, String reason, long engineSteps){
+        if(shouldCommit()){
+            this.machine = machine;
+            this.totalSteps = totalSteps;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+            this.engineSteps = engineSteps;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package utm_simulation.simulation.monitor;
+
+/**
+ * A consistent view of a running machine: the step count, the state, the position of the head and the cells around it.
+ */
+public final class MachineSnapshot {
+
+    private final long version;
+    private final long step;
+    private final int state;
+    private final int head;
+    private final int offset;
+    private final String window;
+
+    MachineSnapshot(long version, long step, int state, int head, int offset, String window){
+        this.version = version;
+        this.step = step;
+        this.state = state;
+        this.head = head;
+        this.offset = offset;
+        this.window = window;
+    }
+
+    /**
+     * Returns the version of the snapshot, which increases with every published snapshot
+     * @return the version of the snapshot
+     */
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Returns the number of steps executed when the snapshot was taken
+     * @return the number of steps executed
+     */
+    public long getStep(){
+        return step;
+    }
+
+    /**
+     * Returns the state of the machine, -1 once halted. Tag systems are in state 0 while running.
+     * @return the state of the machine
+     */
+    public int getState(){
+        return state;
+    }
+
+    /**
+     * Returns the position of the head from the first cell of the tape
+     * @return the position of the head
+     */
+    public int getHead(){
+        return head;
+    }
+
+    /**
+     * Returns the index of the head in the window
+     * @return the index of the head in the window
+     */
+    public int getOffset(){
+        return offset;
+    }
+
+    /**
+     * Returns the cells around the head, starting {@link #getOffset()} cells on its left
+     * @return the cells around the head
+     */
+    public String getWindow(){
+        return window;
+    }
+
+    @Override
+    public String toString(){
+        return "step " + step + ", state " + state + ", head " + head + ": "
+                + window.substring(0, offset) + "[" + window.charAt(offset) + "]" + window.substring(offset + 1);
+    }
+}
@@ -0,0 +1,49 @@
+package utm_simulation.simulation.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning a preparation phase, such as parsing a machine or encoding a tag system.
+ *
+ * <pre>
+ *     PhaseEvent event = new PhaseEvent();
+ *     event.begin();
+ *     ...
+ *     event.commit("buildMachine", config, transitions);
+ * </pre>
+ */
+@Name("utm_simulation.Phase")
+@Label("Simulation Phase")
+@Category("UTM Simulation")
+public class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Subject")
+    String subject;
+
+    @Label("Size")
+    @Description("Number of transitions parsed or cells encoded")
+    long size;
+
+    /**
+     * Ends the phase and commits the event if it is enabled and long enough to be recorded
+     * @param phase name of the phase
+     * @param subject what the phase worked on, such as the path of a config file
+     * @param size number of transitions parsed or cells encoded
+     */
+    public void commit(String phase, String subject, long size){
+        end();
+        if(shouldCommit()){
+            this.phase = phase;
+            this.subject = subject;
+            this.size = size;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package utm_simulation.simulation.monitor;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the progress of a run whenever another interval of steps has been observed, with the rate since the last
+ * report.
+ */
+public class ProgressReporter implements StepObserver {
+
+    private final PrintStream out;
+    private final long interval;
+    private long nextReport;
+    private long lastStep;
+    private long lastTime = System.nanoTime();
+
+    /**
+     * Creates a progress reporter
+     * @param out destination of the reports
+     * @param interval number of steps between reports
+     * @throws IllegalArgumentException if interval is not positive
+     */
+    public ProgressReporter(PrintStream out, long interval){
+        if(interval <= 0)
+            throw new IllegalArgumentException("interval must be positive");
+        this.out = out;
+        this.interval = interval;
+        this.nextReport = interval;
+    }
+
+    @Override
+    public void onStep(long step, int state, char read, char written, int move){
+        if(step >= nextReport || state == -1){
+            long now = System.nanoTime();
+            double rate = (step - lastStep) * 1e9 / Math.max(1, now - lastTime);
+            out.printf("step %d, state %d, %.0f steps/s%n", step, state, rate);
+            lastStep = step;
+            lastTime = now;
+            nextReport = (step / interval + 1) * interval;
+        }
+    }
+}
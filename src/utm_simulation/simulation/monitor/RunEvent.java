@@ -0,0 +1,40 @@
+package utm_simulation.simulation.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning a simulation run, from the creation of its engine to its end.
+ */
+@Name("utm_simulation.Run")
+@Label("Simulation Run")
+@Category("UTM Simulation")
+@Description("A machine run from its input until it halts, fails or is abandoned")
+@StackTrace(false)
+public class RunEvent extends Event {
+
+    @Label("Machine")
+    @Description("Digest of the transitions of the machine, independent of its input")
+    String machine;
+
+    @Label("Kind")
+    String kind;
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Input Size")
+    @Description("Number of cells or symbols of the input")
+    long inputSize;
+
+    @Label("Steps")
+    long steps;
+
+    @Label("Outcome")
+    @Description("HALTED, STOPPED before halting, or UNDEFINED when no transition applied")
+    String outcome;
+}
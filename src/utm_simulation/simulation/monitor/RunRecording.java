@@ -0,0 +1,170 @@
+package utm_simulation.simulation.monitor;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Emits the flight recorder events of a single run: a {@link RunEvent} spanning the run, and throttled
+ * {@link ThroughputEvent} and {@link TapeGrowthEvent} samples.
+ *
+ * <p>Runs should only be recorded when {@link #isEnabled()} is true, so that nothing is added to a run while no
+ * recording is interested in these events. {@link #sample(long, long, long)} may be called as often as convenient,
+ * events are emitted at most once per period, {@value #DEFAULT_PERIOD} milliseconds by default.
+ * A recording is used by a single thread.</p>
+ */
+public class RunRecording {
+
+    /** System property setting the minimum time between two samples in milliseconds. */
+    public static final String PERIOD_PROPERTY = "utm.jfr.period";
+    public static final long DEFAULT_PERIOD = 1000;
+
+    public static final String HALTED = "HALTED";
+    public static final String STOPPED = "STOPPED";
+    public static final String UNDEFINED = "UNDEFINED";
+
+    private static final long PERIOD_NANOS = Long.getLong(PERIOD_PROPERTY, DEFAULT_PERIOD) * 1_000_000L;
+
+    private final RunEvent run = new RunEvent();
+    private final CompiledMachine program;
+    private final String engine;
+    private final long inputSize;
+
+    private long lastSample;
+    private long lastSteps;
+    private long lastCells = -1;
+    private boolean ended;
+
+    /**
+     * Starts recording a run
+     * @param program the machine run
+     * @param engine name of the engine running it
+     * @param inputSize number of cells or symbols of the input
+     */
+    public RunRecording(CompiledMachine program, String engine, long inputSize){
+        this.program = program;
+        this.engine = engine;
+        this.inputSize = inputSize;
+        this.lastSample = System.nanoTime();
+        run.begin();
+    }
+
+    /**
+     * Returns whether a flight recording is running with any of the run events enabled.
+     * The flight recorder is not started by this check.
+     * @return whether runs should be recorded
+     */
+    public static boolean isEnabled(){
+        if(!FlightRecorder.isInitialized())
+            return false;
+        return EventType.getEventType(RunEvent.class).isEnabled()
+                || EventType.getEventType(ThroughputEvent.class).isEnabled()
+                || EventType.getEventType(TapeGrowthEvent.class).isEnabled();
+    }
+
+    /**
+     * Emits samples if the period elapsed since the previous ones
+     * @param steps total number of steps executed
+     * @param cells number of cells of the tape, -1 if unknown
+     * @param bytes estimated memory held by the tape, -1 if unknown
+     */
+    public void sample(long steps, long cells, long bytes){
+        long now = System.nanoTime();
+        long elapsed = now - lastSample;
+        if(elapsed < PERIOD_NANOS)
+            return;
+
+        ThroughputEvent throughput = new ThroughputEvent();
+        if(throughput.shouldCommit()){
+            throughput.engine = engine;
+            throughput.steps = steps - lastSteps;
+            throughput.totalSteps = steps;
+            throughput.stepsPerSecond = (steps - lastSteps) * 1e9 / elapsed;
+            throughput.commit();
+        }
+
+        if(cells >= 0 && cells != lastCells){
+            TapeGrowthEvent growth = new TapeGrowthEvent();
+            if(growth.shouldCommit()){
+                growth.engine = engine;
+                growth.totalSteps = steps;
+                growth.cells = cells;
+                growth.growth = lastCells < 0 ? 0 : cells - lastCells;
+                growth.bytes = bytes;
+                growth.commit();
+            }
+            lastCells = cells;
+        }
+
+        lastSample = now;
+        lastSteps = steps;
+    }
+
+    /**
+     * Ends the run and commits its event. Later calls are ignored.
+     * @param steps total number of steps executed
+     * @param outcome how the run ended, {@link #HALTED}, {@link #STOPPED} or {@link #UNDEFINED}
+     */
+    public void end(long steps, String outcome){
+        if(ended)
+            return;
+        ended = true;
+        run.end();
+        if(run.shouldCommit()){
+            run.machine = digest(program);
+            run.kind = program.getKind().toString();
+            run.engine = engine;
+            run.inputSize = inputSize;
+            run.steps = steps;
+            run.outcome = outcome;
+            run.commit();
+        }
+    }
+
+    /**
+     * Returns a digest of the transitions of a machine, which does not depend on its input
+     * @param program the machine
+     * @return the first 8 bytes of the SHA-256 digest of the transitions, in hexadecimal
+     */
+    public static String digest(CompiledMachine program){
+        MessageDigest digest;
+        try{
+            digest = MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) program.getKind().getCode());
+        for(char symbol : program.getSymbols())
+            digest.update(ByteBuffer.allocate(Character.BYTES).putChar(0, symbol));
+        digest.update(ByteBuffer.allocate(Character.BYTES).putChar(0, program.getBlank()));
+        if(program instanceof CompiledTuringMachine){
+            CompiledTuringMachine tm = (CompiledTuringMachine) program;
+            update(digest, tm.getNextStates());
+            digest.update(tm.getNextSymbols());
+            digest.update(tm.getShifts());
+        }else if(program instanceof CompiledTagSystem){
+            CompiledTagSystem tag = (CompiledTagSystem) program;
+            digest.update((byte) tag.getDeletionNumber());
+            digest.update(tag.getTypes());
+            update(digest, tag.getOffsets());
+            digest.update(tag.getProductions());
+        }
+        byte[] hash = digest.digest();
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 8; i++)
+            builder.append(String.format("%02x", hash[i]));
+        return builder.toString();
+    }
+
+    private static void update(MessageDigest digest, int[] values){
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        digest.update(buffer);
+    }
+}
@@ -0,0 +1,111 @@
+package utm_simulation.simulation.monitor;
+
+import utm_simulation.simulation.automata.Machine;
+import utm_simulation.simulation.automata.TagSystem;
+import utm_simulation.simulation.automata.Tape;
+import utm_simulation.simulation.automata.TuringMachine;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes snapshots of a running machine which other threads can read without locking the simulation thread.
+ *
+ * <p>The monitor observes the machine and, every interval steps, copies the step count, the state, the head position
+ * and a fixed window of cells around the head into preallocated fields. Only the window is read from the tape, so
+ * publishing costs the same whatever the size of the tape. The fields are guarded by a sequence lock: the version is
+ * odd while the simulation thread writes them, and a reader retries until it reads the same even version before and
+ * after copying them.</p>
+ *
+ * <p>For a Turing machine the window is centered on the head. For a tag system it starts at the head, which is the
+ * first symbol of the word.</p>
+ */
+public class SnapshotMonitor implements StepObserver {
+
+    private final Machine machine;
+    private final long interval;
+    private final int offset;
+    private final AtomicLong version = new AtomicLong();
+
+    // Written by the simulation thread only, between an odd and an even version
+    private final char[] window;
+    private long step;
+    private int state;
+    private int head;
+
+    /**
+     * Creates a monitor and publishes the current configuration of the machine.
+     * The monitor still has to be attached with {@link Machine#setObserver}.
+     * @param machine the machine to monitor
+     * @param windowSize number of cells in the window
+     * @param interval number of steps between snapshots
+     * @throws IllegalArgumentException if windowSize or interval is not positive
+     */
+    public SnapshotMonitor(Machine machine, int windowSize, long interval){
+        if(windowSize <= 0 || interval <= 0)
+            throw new IllegalArgumentException("windowSize and interval must be positive");
+        this.machine = machine;
+        this.interval = interval;
+        this.window = new char[windowSize];
+        this.offset = machine instanceof TagSystem ? 0 : windowSize / 2;
+        int state;
+        if(machine instanceof TuringMachine)
+            state = ((TuringMachine) machine).getCurrentState();
+        else
+            state = ((TagSystem) machine).isHalted() ? -1 : 0;
+        publish(machine.getStepCount(), state);
+    }
+
+    /**
+     * Publishes a snapshot every interval steps and when the machine halts. Called on the simulation thread.
+     */
+    @Override
+    public void onStep(long step, int state, char read, char written, int move){
+        if(step % interval == 0 || state == -1)
+            publish(step, state);
+    }
+
+    private void publish(long step, int state){
+        long v = version.get();
+        version.setOpaque(v + 1);
+        VarHandle.storeStoreFence();
+        Tape tape = machine.getInput_tape();
+        this.step = step;
+        this.state = state;
+        this.head = tape.headIndex();
+        tape.readWindow(window, offset);
+        version.setRelease(v + 2);
+    }
+
+    /**
+     * Returns the version of the last published snapshot
+     * @return the version of the last published snapshot
+     */
+    public long getVersion(){
+        return version.get() & ~1L;
+    }
+
+    /**
+     * Returns the last published snapshot. May be called from any thread.
+     * @return the last published snapshot
+     */
+    public MachineSnapshot snapshot(){
+        char[] cells = new char[window.length];
+        for(int attempt = 0; ; attempt++){
+            long before = version.getAcquire();
+            if((before & 1) == 0){
+                long step = this.step;
+                int state = this.state;
+                int head = this.head;
+                System.arraycopy(window, 0, cells, 0, cells.length);
+                VarHandle.loadLoadFence();
+                if(version.getOpaque() == before)
+                    return new MachineSnapshot(before, step, state, head, offset, new String(cells));
+            }
+            if(attempt > 16)
+                Thread.yield();
+            else
+                Thread.onSpinWait();
+        }
+    }
+}
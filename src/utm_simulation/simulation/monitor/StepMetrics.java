@@ -0,0 +1,84 @@
+package utm_simulation.simulation.monitor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates observed steps: how often each state is entered, each symbol is read, and how the head moves.
+ * The counters are updated by a single consumer and can be read from any thread.
+ */
+public class StepMetrics implements StepObserver {
+
+    private final AtomicLongArray stateCounts;
+    private final AtomicLongArray symbolCounts;
+    private final AtomicLongArray totals = new AtomicLongArray(4);
+
+    private static final int EVENTS = 0;
+    private static final int LAST_STEP = 1;
+    private static final int LEFT = 2;
+    private static final int RIGHT = 3;
+
+    /**
+     * Creates metrics
+     * @param numStates number of states counted, higher states are not counted
+     */
+    public StepMetrics(int numStates){
+        this.stateCounts = new AtomicLongArray(numStates + 1);
+        this.symbolCounts = new AtomicLongArray(Character.MAX_VALUE + 1);
+    }
+
+    @Override
+    public void onStep(long step, int state, char read, char written, int move){
+        // Only one thread updates the counters, so plain increments of the atomic values are enough
+        totals.lazySet(EVENTS, totals.get(EVENTS) + 1);
+        totals.lazySet(LAST_STEP, step);
+        if(move < 0)
+            totals.lazySet(LEFT, totals.get(LEFT) + 1);
+        else if(move > 0)
+            totals.lazySet(RIGHT, totals.get(RIGHT) + 1);
+        if(state > 0 && state < stateCounts.length())
+            stateCounts.lazySet(state, stateCounts.get(state) + 1);
+        symbolCounts.lazySet(read, symbolCounts.get(read) + 1);
+    }
+
+    /**
+     * Returns the number of observed steps, which is lower than the step count if steps were dropped or sampled
+     * @return the number of observed steps
+     */
+    public long getEvents(){
+        return totals.get(EVENTS);
+    }
+
+    /**
+     * Returns the number of the last observed step
+     * @return the number of the last observed step
+     */
+    public long getLastStep(){
+        return totals.get(LAST_STEP);
+    }
+
+    public long getLeftMoves(){
+        return totals.get(LEFT);
+    }
+
+    public long getRightMoves(){
+        return totals.get(RIGHT);
+    }
+
+    /**
+     * Returns how many observed steps entered given state
+     * @param state the state, starting from 1
+     * @return the number of observed steps entering the state
+     */
+    public long getStateCount(int state){
+        return stateCounts.get(state);
+    }
+
+    /**
+     * Returns how many observed steps read given symbol
+     * @param symbol the symbol
+     * @return the number of observed steps reading the symbol
+     */
+    public long getSymbolCount(char symbol){
+        return symbolCounts.get(symbol);
+    }
+}
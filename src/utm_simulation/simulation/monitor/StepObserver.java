@@ -0,0 +1,65 @@
+package utm_simulation.simulation.monitor;
+
+/**
+ * Receives the steps of a machine as primitive values.
+ *
+ * <p>For a Turing machine, state is the state after the step (-1 once halted), read and written are the symbols under
+ * the head before and after the step, and move is the shift of the head. For a tag system, state is 0 while running
+ * and -1 once halted, read is the first symbol of the word, written is the blank and move is the number of appended
+ * symbols.</p>
+ *
+ * <p>An observer attached with {@code Machine.setObserver} runs on the simulation thread. Observers which are slow, or
+ * should not stall the simulation, are attached to a {@link StepRing} instead, which runs them on their own thread.</p>
+ */
+public interface StepObserver {
+
+    /**
+     * Called after every step
+     * @param step number of steps executed, including this one
+     * @param state state of the machine after the step
+     * @param read symbol read by the step
+     * @param written symbol written by the step
+     * @param move movement of the head, or number of appended symbols for a tag system
+     */
+    void onStep(long step, int state, char read, char written, int move);
+
+    /**
+     * Called by a {@link StepRing} after delivering a batch of steps, a good time to flush buffered output
+     */
+    default void onBatchEnd(){
+    }
+
+    /**
+     * Called by a {@link StepRing} once every published step has been delivered and the ring is closed
+     */
+    default void onClose(){
+    }
+
+    /**
+     * Returns an observer notifying this observer, then given one
+     * @param next the observer notified after this one
+     * @return the combined observer
+     */
+    default StepObserver andThen(StepObserver next){
+        StepObserver first = this;
+        return new StepObserver(){
+            @Override
+            public void onStep(long step, int state, char read, char written, int move){
+                first.onStep(step, state, read, written, move);
+                next.onStep(step, state, read, written, move);
+            }
+
+            @Override
+            public void onBatchEnd(){
+                first.onBatchEnd();
+                next.onBatchEnd();
+            }
+
+            @Override
+            public void onClose(){
+                first.onClose();
+                next.onClose();
+            }
+        };
+    }
+}
@@ -0,0 +1,231 @@
+package utm_simulation.simulation.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated single producer ring buffer moving steps from the simulation thread to observers on other threads.
+ *
+ * <p>The simulation thread publishes steps into parallel primitive arrays, so publishing neither allocates nor locks:
+ * it writes one slot and advances a sequence. Every consumer runs on its own thread, sees every published step in
+ * order, and delivers them to its observer in batches. A slot is reused once every consumer has moved past it.</p>
+ *
+ * <p>When the slowest consumer is a full buffer behind, the {@link Policy} decides what the simulation thread does.
+ * With {@link Policy#DROP} and {@link Policy#SAMPLE}, its throughput does not depend on the consumers.</p>
+ */
+public final class StepRing implements StepObserver, AutoCloseable {
+
+    /**
+     * Represents what the simulation thread does with a step when the buffer is full.
+     * <ul>
+     *     <li>BLOCK: waits for the slowest consumer, so that no step is lost.</li>
+     *     <li>DROP: discards the step and counts it.</li>
+     *     <li>SAMPLE: only publishes every n-th step in the first place, and drops like DROP if still full.</li>
+     * </ul>
+     */
+    public enum Policy{BLOCK, DROP, SAMPLE}
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    /**
+     * A consumer thread delivering published steps to an observer.
+     */
+    private final class Consumer implements Runnable{
+        private final StepObserver observer;
+        /** Number of steps delivered, read by the producer to know which slots are free. */
+        private final AtomicLong sequence = new AtomicLong();
+
+        private Consumer(StepObserver observer){
+            this.observer = observer;
+        }
+
+        @Override
+        public void run(){
+            long next = 0;
+            int idle = 0;
+            while(true){
+                long available = cursor.get();
+                if(next == available){
+                    if(closed && cursor.get() == next)
+                        break;
+                    idle = backOff(idle);
+                    continue;
+                }
+                idle = 0;
+                for(; next < available; next++){
+                    int slot = (int) next & mask;
+                    observer.onStep(steps[slot], states[slot], reads[slot], writes[slot], moves[slot]);
+                }
+                sequence.lazySet(next);
+                observer.onBatchEnd();
+            }
+            observer.onClose();
+        }
+    }
+
+    private final int mask;
+    private final long[] steps;
+    private final int[] states;
+    private final char[] reads;
+    private final char[] writes;
+    private final int[] moves;
+    private final Policy policy;
+    private final long sampleRate;
+
+    private final List<Consumer> consumers = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    /** Number of published steps. */
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /** Lowest consumer sequence seen by the producer, refreshed only when the buffer looks full. */
+    private long gate;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    /**
+     * Creates a ring blocking the simulation thread when full
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public StepRing(int capacity){
+        this(capacity, Policy.BLOCK, 1);
+    }
+
+    /**
+     * Creates a ring
+     * @param capacity number of slots, rounded up to a power of two
+     * @param policy what to do when the buffer is full
+     * @param sampleRate with {@link Policy#SAMPLE}, only steps which are a multiple of it are published
+     * @throws IllegalArgumentException if capacity or sampleRate is not positive
+     */
+    public StepRing(int capacity, Policy policy, long sampleRate){
+        if(capacity <= 0 || capacity > 1 << 30 || sampleRate <= 0)
+            throw new IllegalArgumentException("Invalid capacity or sample rate");
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity)
+            size <<= 1;
+        this.mask = size - 1;
+        this.steps = new long[size];
+        this.states = new int[size];
+        this.reads = new char[size];
+        this.writes = new char[size];
+        this.moves = new int[size];
+        this.policy = policy;
+        this.sampleRate = policy == Policy.SAMPLE ? sampleRate : 1;
+    }
+
+    /**
+     * Adds a consumer delivering every step to given observer on its own thread
+     * @param name name of the consumer thread
+     * @param observer the observer
+     * @throws IllegalStateException if the ring is already started
+     */
+    public synchronized void addConsumer(String name, StepObserver observer){
+        if(started)
+            throw new IllegalStateException("Consumers must be added before the ring is started");
+        Consumer consumer = new Consumer(observer);
+        consumers.add(consumer);
+        Thread thread = new Thread(consumer, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+    }
+
+    /**
+     * Starts the consumer threads
+     */
+    public synchronized void start(){
+        if(started)
+            return;
+        started = true;
+        for(Thread thread : threads)
+            thread.start();
+    }
+
+    /**
+     * Publishes a step. Must only be called from a single thread.
+     */
+    @Override
+    public void onStep(long step, int state, char read, char written, int move){
+        if(step % sampleRate != 0 && state != -1)
+            return;
+        long next = cursor.get();
+        if(next - gate >= steps.length){
+            gate = minSequence();
+            while(next - gate >= steps.length){
+                if(policy != Policy.BLOCK){
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+                gate = minSequence();
+            }
+        }
+        int slot = (int) next & mask;
+        steps[slot] = step;
+        states[slot] = state;
+        reads[slot] = read;
+        writes[slot] = written;
+        moves[slot] = move;
+        cursor.lazySet(next + 1);
+    }
+
+    private long minSequence(){
+        long min = cursor.get();
+        for(Consumer consumer : consumers)
+            min = Math.min(min, consumer.sequence.get());
+        return min;
+    }
+
+    private static int backOff(int idle){
+        if(idle < SPINS)
+            Thread.onSpinWait();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+        return idle + 1;
+    }
+
+    /**
+     * Returns the number of steps published so far
+     * @return the number of published steps
+     */
+    public long getPublished(){
+        return cursor.get();
+    }
+
+    /**
+     * Returns the number of steps dropped because the buffer was full
+     * @return the number of dropped steps
+     */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of steps the slowest consumer is behind
+     * @return the number of steps waiting to be delivered
+     */
+    public long getBacklog(){
+        return cursor.get() - minSequence();
+    }
+
+    /**
+     * Waits for the consumers to deliver every published step, then stops them.
+     * If interrupted while waiting, returns at once with the interrupt flag of the thread set, and the consumers
+     * finish delivering in the background.
+     */
+    @Override
+    public void close(){
+        closed = true;
+        start();
+        try{
+            for(Thread thread : threads)
+                thread.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package utm_simulation.simulation.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event reporting the size of the tape or word of a run whenever it changed since the previous sample.
+ */
+@Name("utm_simulation.TapeGrowth")
+@Label("Tape Growth")
+@Category("UTM Simulation")
+@StackTrace(false)
+public class TapeGrowthEvent extends Event {
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Total Steps")
+    long totalSteps;
+
+    @Label("Cells")
+    @Description("Cells of the tape or symbols of the word held by the engine")
+    long cells;
+
+    @Label("Growth")
+    @Description("Cells added since the previous sample, negative if the tape shrank")
+    long growth;
+
+    @Label("Footprint")
+    @Description("Estimated memory held by the tape or word")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+}
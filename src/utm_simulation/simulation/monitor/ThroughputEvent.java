@@ -0,0 +1,31 @@
+package utm_simulation.simulation.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event sampling the speed of a run since the previous sample.
+ */
+@Name("utm_simulation.Throughput")
+@Label("Simulation Throughput")
+@Category("UTM Simulation")
+@StackTrace(false)
+public class ThroughputEvent extends Event {
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Steps")
+    @Description("Steps executed since the previous sample")
+    long steps;
+
+    @Label("Total Steps")
+    long totalSteps;
+
+    @Label("Steps per Second")
+    double stepsPerSecond;
+}
@@ -0,0 +1,53 @@
+package utm_simulation.simulation.monitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes every observed step as a line "step state read written move".
+ * Output is flushed at the end of every batch and closed with the ring.
+ */
+public class TraceWriter implements StepObserver {
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Creates a trace writer
+     * @param writer destination of the trace, preferably buffered
+     */
+    public TraceWriter(Writer writer){
+        this.writer = writer;
+    }
+
+    @Override
+    public void onStep(long step, int state, char read, char written, int move){
+        line.setLength(0);
+        line.append(step).append(' ').append(state).append(' ').append(read).append(' ').append(written).append(' ')
+                .append(move).append('\n');
+        try{
+            writer.append(line);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onBatchEnd(){
+        try{
+            writer.flush();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onClose(){
+        try{
+            writer.close();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package utm_simulation.simulation.server;
+
+import utm_simulation.simulation.automata.engine.Engine;
+import utm_simulation.simulation.automata.engine.Engines;
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.CompiledTagSystem;
+import utm_simulation.simulation.compiled.CompiledTuringMachine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves one client connection of a {@link SimulationService}.
+ *
+ * <p>Requests are read line by line, and every line sent back goes through a bounded queue drained by a writer task.
+ * A line takes one of {@value #OUTBOUND_CAPACITY} credits, given back by the writer once it took the line off the
+ * queue. Jobs reserve the credits of a whole slice up front and never wait for them: without enough credits they are
+ * parked until the client has read enough, so a client which stops reading never holds up a scheduler worker. The
+ * reader waits for credits instead, so it stops reading requests, and a slow client only slows itself down.
+ * Once the client stops sending, the connection is closed as soon as its jobs are done. If the connection breaks,
+ * its jobs are cancelled.</p>
+ */
+final class ClientSession implements Runnable {
+
+    /** Maximum number of lines waiting to be sent to the client. */
+    static final int OUTBOUND_CAPACITY = 4096;
+
+    private final Socket socket;
+    private final SimulationService service;
+    private final ExecutorService threads;
+    private final BlockingQueue<String> outbound = new ArrayBlockingQueue<>(OUTBOUND_CAPACITY);
+    private final Map<String, Job> jobs = new HashMap<>();
+    private final List<Job> parked = new ArrayList<>();
+    /** Lines which can be queued without exceeding the capacity of the queue. */
+    private int credits = OUTBOUND_CAPACITY;
+    private volatile boolean closed;
+    private boolean draining;
+
+    ClientSession(Socket socket, SimulationService service, ExecutorService threads){
+        this.socket = socket;
+        this.service = service;
+        this.threads = threads;
+    }
+
+    @Override
+    public void run(){
+        threads.execute(this::write);
+        try{
+            // Closing the reader would close the socket, which is left to the writer
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while(!closed && (line = reader.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty())
+                    continue;
+                if(line.equals("QUIT"))
+                    break;
+                handle(line);
+            }
+        }catch(IOException e){
+            close();
+            return;
+        }
+        synchronized(this){
+            draining = true;
+            if(!jobs.isEmpty())
+                return;
+        }
+        close();
+    }
+
+    private void handle(String line){
+        String[] words = line.split("\\s+");
+        try{
+            switch(words[0]){
+                case "LOAD":
+                    if(words.length != 3)
+                        throw new IllegalArgumentException("Usage: LOAD <id> <path>");
+                    CompiledMachine machine = service.getCache().pin(words[1], words[2]);
+                    send("LOADED " + words[1] + " " + machine.getKind() + " " + new String(machine.getSymbols()));
+                    break;
+                case "UNLOAD":
+                    if(words.length != 2)
+                        throw new IllegalArgumentException("Usage: UNLOAD <id>");
+                    send(service.getCache().unpin(words[1]) ? "UNLOADED " + words[1] : "ERROR unknown machine " + words[1]);
+                    break;
+                case "SUBMIT":
+                    submit(words);
+                    break;
+                case "CANCEL":
+                    if(words.length != 2)
+                        throw new IllegalArgumentException("Usage: CANCEL <job>");
+                    Job job;
+                    synchronized(this){
+                        job = jobs.get(words[1]);
+                    }
+                    if(job == null)
+                        send("ERROR unknown job " + words[1]);
+                    else
+                        job.cancel();
+                    break;
+                case "STATS":
+                    send("STATS jobs=" + service.getScheduler().getJobs()
+                            + " cached=" + service.getCache().size()
+                            + " hits=" + service.getCache().getHits()
+                            + " misses=" + service.getCache().getMisses());
+                    break;
+                default:
+                    send("ERROR unknown command " + words[0]);
+            }
+        }catch(IOException | RuntimeException e){
+            send("ERROR " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles SUBMIT &lt;job&gt; machine=&lt;path or @id&gt; [input=&lt;word&gt;] [head=&lt;index&gt;] [budget=&lt;steps&gt;]
+     * [engine=&lt;name&gt;] [progress=&lt;steps&gt;] [trace] [final]
+     */
+    private void submit(String[] words) throws IOException{
+        if(words.length < 3)
+            throw new IllegalArgumentException("Usage: SUBMIT <job> machine=<path or @id> [options]");
+        String id = words[1];
+        Map<String, String> options = new HashMap<>();
+        for(int i = 2; i < words.length; i++){
+            int equals = words[i].indexOf('=');
+            if(equals < 0)
+                options.put(words[i], "");
+            else
+                options.put(words[i].substring(0, equals), words[i].substring(equals + 1));
+        }
+        synchronized(this){
+            if(jobs.containsKey(id)){
+                send("REJECTED " + id + " duplicate job id");
+                return;
+            }
+        }
+
+        String name = options.get("machine");
+        if(name == null)
+            throw new IllegalArgumentException("machine is required");
+        CompiledMachine machine;
+        if(name.startsWith("@")){
+            machine = service.getCache().pinned(name.substring(1));
+            if(machine == null)
+                throw new IllegalArgumentException("unknown machine " + name);
+        }else{
+            machine = service.getCache().get(name);
+        }
+        if(options.containsKey("input")){
+            String input = options.get("input");
+            if(machine instanceof CompiledTuringMachine)
+                machine = ((CompiledTuringMachine) machine).withInput(input, Integer.parseInt(options.getOrDefault("head", "0")));
+            else
+                machine = ((CompiledTagSystem) machine).withInput(input);
+        }
+        long budget = Long.parseLong(options.getOrDefault("budget", String.valueOf(Long.MAX_VALUE)));
+        long progress = Long.parseLong(options.getOrDefault("progress", "0"));
+        if(budget <= 0 || progress < 0)
+            throw new IllegalArgumentException("budget must be positive and progress not negative");
+
+        Engine engine = Engines.create(options.getOrDefault("engine", Engines.defaultName()), machine);
+        if(!service.getScheduler().admit(this)){
+            engine.close();
+            send("REJECTED " + id + " too many jobs");
+            return;
+        }
+        Job job = new Job(id, this, service.getScheduler(), engine, budget, progress,
+                options.containsKey("trace"), options.containsKey("final"));
+        synchronized(this){
+            jobs.put(id, job);
+        }
+        // the job is only queued once ACCEPTED is, so that it comes before any line of the job
+        send("ACCEPTED " + id);
+        service.getScheduler().yield(this, job);
+    }
+
+    /**
+     * Takes credits for the lines a job may send during a slice, without waiting
+     * @param min number of credits the slice cannot do without
+     * @param max number of credits the slice can use
+     * @return the number of credits taken, at least min and at most max, or 0 if fewer than min are available.
+     *         Once the session is closed lines are dropped, and max is returned.
+     */
+    synchronized int reserve(int min, int max){
+        if(closed)
+            return max;
+        if(credits < min)
+            return 0;
+        int granted = Math.min(max, credits);
+        credits -= granted;
+        return granted;
+    }
+
+    /**
+     * Gives back credits taken by {@link #reserve} or by the writer for a line it took off the queue
+     * @param count number of credits given back
+     */
+    synchronized void release(int count){
+        credits += count;
+        notifyAll();
+    }
+
+    private synchronized int getCredits(){
+        return credits;
+    }
+
+    boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     * Queues a line for the client, waiting for a credit unless the session is closed. Only the reader waits this way,
+     * jobs send with {@link #sendReserved(String)}.
+     * @param line the line to send
+     */
+    private void send(String line){
+        synchronized(this){
+            try{
+                while(!closed && credits == 0)
+                    wait(100);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if(closed)
+                return;
+            credits--;
+        }
+        outbound.offer(line);
+    }
+
+    /**
+     * Queues a line for the client with a credit taken by {@link #reserve}, never waiting
+     * @param line the line to send
+     */
+    void sendReserved(String line){
+        if(!closed)
+            outbound.offer(line);
+    }
+
+    /**
+     * Keeps a job aside until the client has read enough of the output
+     * @param job the job waiting for credits
+     */
+    void park(Job job){
+        synchronized(this){
+            if(!closed){
+                parked.add(job);
+                return;
+            }
+        }
+        service.getScheduler().yield(this, job);
+    }
+
+    void finished(Job job){
+        synchronized(this){
+            jobs.remove(job.getId());
+            if(!draining || !jobs.isEmpty())
+                return;
+        }
+        close();
+    }
+
+    /**
+     * Sends the queued lines, flushing whenever the queue runs empty, and resumes parked jobs once half of the credits
+     * are available.
+     */
+    private void write(){
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))){
+            while(!closed || !outbound.isEmpty()){
+                String line = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if(line != null){
+                    release(1);
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                if(outbound.isEmpty())
+                    writer.flush();
+                if(getCredits() >= OUTBOUND_CAPACITY / 2)
+                    resume();
+            }
+        }catch(IOException e){
+            // the client went away
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }finally{
+            close();
+            outbound.clear();
+        }
+    }
+
+    private void resume(){
+        List<Job> resumed;
+        synchronized(this){
+            if(parked.isEmpty())
+                return;
+            resumed = new ArrayList<>(parked);
+            parked.clear();
+        }
+        for(Job job : resumed)
+            service.getScheduler().yield(this, job);
+    }
+
+    /**
+     * Cancels the jobs of the session and releases the connection once every line is sent
+     */
+    private void close(){
+        List<Job> cancelled;
+        synchronized(this){
+            if(closed)
+                return;
+            closed = true;
+            cancelled = new ArrayList<>(jobs.values());
+        }
+        for(Job job : cancelled)
+            job.cancel();
+        resume();
+        try{
+            socket.shutdownInput();
+        }catch(IOException e){
+            // already closed
+        }
+    }
+}
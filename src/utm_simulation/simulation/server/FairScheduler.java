@@ -0,0 +1,158 @@
+package utm_simulation.simulation.server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded executor serving its owners round robin.
+ *
+ * <p>Tasks are queued per owner, and the workers take the next task of the next owner with pending tasks, so a client
+ * submitting many jobs does not delay the others. Long tasks are expected to run in slices and {@link #yield} their
+ * continuation, which puts it behind the tasks of the other owners.</p>
+ *
+ * <p>Admission is bounded both in total and per owner: {@link #submit} and {@link #admit} refuse new jobs beyond the
+ * limits until {@link #complete} is called for earlier ones.</p>
+ */
+public class FairScheduler implements AutoCloseable {
+
+    private final Map<Object, ArrayDeque<Runnable>> queues = new HashMap<>();
+    private final ArrayDeque<Object> ready = new ArrayDeque<>();
+    private final Map<Object, Integer> active = new HashMap<>();
+    private final int maxJobs;
+    private final int maxJobsPerOwner;
+    private final Thread[] workers;
+    private int jobs;
+    private boolean closed;
+
+    /**
+     * Creates a scheduler and starts its workers
+     * @param numWorkers number of worker threads
+     * @param maxJobs maximum number of admitted jobs
+     * @param maxJobsPerOwner maximum number of admitted jobs of a single owner
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public FairScheduler(int numWorkers, int maxJobs, int maxJobsPerOwner){
+        if(numWorkers <= 0 || maxJobs <= 0 || maxJobsPerOwner <= 0)
+            throw new IllegalArgumentException("Limits must be positive");
+        this.maxJobs = maxJobs;
+        this.maxJobsPerOwner = maxJobsPerOwner;
+        this.workers = new Thread[numWorkers];
+        for(int i = 0; i < numWorkers; i++){
+            workers[i] = new Thread(this::work, "scheduler-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Admits a new job and queues its first task
+     * @param owner the owner of the job
+     * @param task the first task of the job
+     * @return false if the job is refused because too many jobs are admitted
+     */
+    public synchronized boolean submit(Object owner, Runnable task){
+        if(!admit(owner))
+            return false;
+        enqueue(owner, task);
+        return true;
+    }
+
+    /**
+     * Admits a new job without queuing any task, so that the owner can act on the admission before the job runs.
+     * Its first task is queued with {@link #yield}.
+     * @param owner the owner of the job
+     * @return false if the job is refused because too many jobs are admitted
+     */
+    public synchronized boolean admit(Object owner){
+        int owned = active.getOrDefault(owner, 0);
+        if(closed || jobs >= maxJobs || owned >= maxJobsPerOwner)
+            return false;
+        jobs++;
+        active.put(owner, owned + 1);
+        return true;
+    }
+
+    /**
+     * Queues the continuation of an admitted job behind the tasks of the other owners
+     * @param owner the owner of the job
+     * @param task the continuation of the job
+     */
+    public synchronized void yield(Object owner, Runnable task){
+        enqueue(owner, task);
+    }
+
+    /**
+     * Releases the admission of a finished job
+     * @param owner the owner of the job
+     */
+    public synchronized void complete(Object owner){
+        jobs--;
+        int owned = active.get(owner) - 1;
+        if(owned == 0)
+            active.remove(owner);
+        else
+            active.put(owner, owned);
+    }
+
+    private void enqueue(Object owner, Runnable task){
+        ArrayDeque<Runnable> queue = queues.get(owner);
+        if(queue == null){
+            queue = new ArrayDeque<>();
+            queues.put(owner, queue);
+            ready.addLast(owner);
+        }
+        queue.addLast(task);
+        notify();
+    }
+
+    private synchronized Runnable take() throws InterruptedException{
+        while(!closed && ready.isEmpty())
+            wait();
+        if(closed)
+            return null;
+        Object owner = ready.pollFirst();
+        ArrayDeque<Runnable> queue = queues.get(owner);
+        Runnable task = queue.pollFirst();
+        if(queue.isEmpty())
+            queues.remove(owner);
+        else
+            ready.addLast(owner);
+        return task;
+    }
+
+    private void work(){
+        try{
+            Runnable task;
+            while((task = take()) != null)
+                task.run();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of admitted jobs which are not complete yet
+     * @return the number of admitted jobs
+     */
+    public synchronized int getJobs(){
+        return jobs;
+    }
+
+    /**
+     * Returns the number of owners with queued tasks
+     * @return the number of owners with queued tasks
+     */
+    public synchronized int getReadyOwners(){
+        return ready.size();
+    }
+
+    /**
+     * Stops the workers once their current task is done. Queued tasks are dropped.
+     */
+    @Override
+    public synchronized void close(){
+        closed = true;
+        notifyAll();
+    }
+}
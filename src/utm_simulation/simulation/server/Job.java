@@ -0,0 +1,125 @@
+package utm_simulation.simulation.server;
+
+import utm_simulation.simulation.automata.engine.Engine;
+
+/**
+ * A simulation submitted by a client, run one slice at a time on a {@link FairScheduler}.
+ *
+ * <p>A slice first reserves the output credits of the session for the lines it may send, including the final RESULT
+ * line, and gives back those it did not use. Without enough credits the job is parked on the session and resumed once
+ * the client has read enough, so a slice never waits for the client.</p>
+ */
+final class Job implements Runnable {
+
+    /** Maximum number of steps of a slice. */
+    static final long SLICE_STEPS = 1 << 20;
+    /** Maximum number of TRACE lines of a slice, so that the traces of a session share its output. */
+    static final int SLICE_TRACES = ClientSession.OUTBOUND_CAPACITY / 8;
+
+    private final String id;
+    private final ClientSession session;
+    private final FairScheduler scheduler;
+    private final Engine engine;
+    private final long budget;
+    private final long progressInterval;
+    private final boolean trace;
+    private final boolean configuration;
+    private volatile boolean cancelled;
+    private boolean started;
+    /** Credits of the current slice not used yet. */
+    private int reserved;
+
+    Job(String id, ClientSession session, FairScheduler scheduler, Engine engine, long budget, long progressInterval,
+        boolean trace, boolean configuration){
+        this.id = id;
+        this.session = session;
+        this.scheduler = scheduler;
+        this.engine = engine;
+        this.budget = budget;
+        this.progressInterval = progressInterval;
+        this.trace = trace;
+        this.configuration = configuration;
+    }
+
+    String getId(){
+        return id;
+    }
+
+    void cancel(){
+        cancelled = true;
+    }
+
+    @Override
+    public void run(){
+        boolean stop = cancelled || session.isClosed();
+        // a slice sends a single line, a PROGRESS or a RESULT one, unless it traces the steps
+        reserved = stop || !trace ? session.reserve(1, 1) : session.reserve(2, SLICE_TRACES + 1);
+        if(reserved == 0){
+            session.park(this);
+            return;
+        }
+        try{
+            slice(stop);
+        }finally{
+            session.release(reserved);
+            reserved = 0;
+        }
+    }
+
+    private void slice(boolean stop){
+        if(stop){
+            finish("CANCELLED");
+            return;
+        }
+        try{
+            if(trace){
+                if(!started)
+                    send("TRACE " + id + " 0 " + engine.inspect());
+                started = true;
+                while(reserved > 1 && !engine.isHalted() && engine.getStepCount() < budget){
+                    engine.step();
+                    send("TRACE " + id + " " + engine.getStepCount() + " " + engine.inspect());
+                }
+            }else{
+                long slice = Math.min(SLICE_STEPS, budget - engine.getStepCount());
+                if(progressInterval > 0)
+                    slice = Math.min(slice, progressInterval - engine.getStepCount() % progressInterval);
+                engine.run(slice);
+                if(progressInterval > 0 && !engine.isHalted() && engine.getStepCount() % progressInterval == 0
+                        && engine.getStepCount() < budget)
+                    send("PROGRESS " + id + " " + engine.getStepCount());
+            }
+        }catch(UnsupportedOperationException e){
+            finish("STUCK");
+            return;
+        }catch(RuntimeException e){
+            finish("FAILED");
+            return;
+        }
+        if(engine.isHalted())
+            finish("HALTED");
+        else if(engine.getStepCount() >= budget)
+            finish("BUDGET");
+        else
+            scheduler.yield(session, this);
+    }
+
+    private void finish(String status){
+        try{
+            send("RESULT " + id + " " + status + " " + engine.getStepCount()
+                    + (configuration ? " " + engine.inspect() : ""));
+        }finally{
+            engine.close();
+            session.finished(this);
+            scheduler.complete(session);
+        }
+    }
+
+    /**
+     * Sends a line with one of the credits reserved for the slice
+     */
+    private void send(String line){
+        reserved--;
+        session.sendReserved(line);
+    }
+}
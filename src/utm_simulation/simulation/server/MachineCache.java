@@ -0,0 +1,145 @@
+package utm_simulation.simulation.server;
+
+import utm_simulation.simulation.compiled.CompiledMachine;
+import utm_simulation.simulation.compiled.MachineCompiler;
+import utm_simulation.simulation.compiled.MachineFile;
+import utm_simulation.simulation.compiled.MachineFormatException;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the machines used by jobs compiled, so that repeated jobs skip parsing the xml config.
+ *
+ * <p>Machines are looked up by path. Both xml configs and compiled machine files are accepted, and an entry is
+ * reloaded when its file is modified. The least recently used entries are evicted beyond the capacity. Machines can
+ * also be pinned under an id, in which case they are kept until unloaded. A malformed file fails only the lookup with
+ * a {@link MachineFormatException}, never the process.</p>
+ */
+public class MachineCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int MAX_PINNED = 256;
+
+    private static final class Entry{
+        private final long modified;
+        private final CompiledMachine machine;
+
+        private Entry(long modified, CompiledMachine machine){
+            this.modified = modified;
+            this.machine = machine;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> machines;
+    private final Map<String, CompiledMachine> pinned = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    public MachineCache(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache
+     * @param capacity maximum number of machines kept by path
+     */
+    public MachineCache(int capacity){
+        this.machines = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the machine defined by given file, compiling it if it is not cached or was modified
+     * @param path path to an xml config or a compiled machine file
+     * @return the compiled machine
+     * @throws MachineFormatException if the file is missing or does not define a machine
+     * @throws IOException if the file cannot be read
+     */
+    public CompiledMachine get(String path) throws IOException{
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        if(!Files.isRegularFile(file))
+            throw new MachineFormatException("Given machine is not found: " + path);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        String key = file.toString();
+        synchronized(this){
+            Entry entry = machines.get(key);
+            if(entry != null && entry.modified == modified){
+                hits++;
+                return entry.machine;
+            }
+            misses++;
+        }
+        CompiledMachine machine = isCompiled(file) ? MachineFile.load(file) : MachineCompiler.compile(key);
+        synchronized(this){
+            machines.put(key, new Entry(modified, machine));
+        }
+        return machine;
+    }
+
+    private static boolean isCompiled(Path file) throws IOException{
+        try(InputStream in = Files.newInputStream(file)){
+            return Files.size(file) >= 4 && new DataInputStream(in).readInt() == MachineFile.MAGIC;
+        }
+    }
+
+    /**
+     * Loads the machine defined by given file and keeps it under given id
+     * @param id id the machine is kept under
+     * @param path path to an xml config or a compiled machine file
+     * @return the compiled machine
+     * @throws MachineFormatException if the file is missing or does not define a machine
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if too many machines are pinned
+     */
+    public CompiledMachine pin(String id, String path) throws IOException, IllegalStateException{
+        CompiledMachine machine = get(path);
+        synchronized(this){
+            if(!pinned.containsKey(id) && pinned.size() >= MAX_PINNED)
+                throw new IllegalStateException("Too many machines are loaded");
+            pinned.put(id, machine);
+        }
+        return machine;
+    }
+
+    /**
+     * Returns the machine kept under given id
+     * @param id the id of the machine
+     * @return the machine, or null if no machine is kept under that id
+     */
+    public synchronized CompiledMachine pinned(String id){
+        return pinned.get(id);
+    }
+
+    /**
+     * Releases the machine kept under given id
+     * @param id the id of the machine
+     * @return whether a machine was kept under that id
+     */
+    public synchronized boolean unpin(String id){
+        return pinned.remove(id) != null;
+    }
+
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    public synchronized int size(){
+        return machines.size();
+    }
+}
@@ -0,0 +1,132 @@
+package utm_simulation.simulation.server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs simulation jobs for clients connecting to a loopback socket.
+ *
+ * <p>The protocol is line based. Every request is a line, and replies are streamed back as lines prefixed with the
+ * job they belong to, in the order they are produced:</p>
+ * <pre>
+ * LOAD &lt;id&gt; &lt;path&gt;            keeps a machine compiled under an id       LOADED &lt;id&gt; &lt;kind&gt; &lt;symbols&gt;
+ * UNLOAD &lt;id&gt;                   releases a loaded machine                 UNLOADED &lt;id&gt;
+ * SUBMIT &lt;job&gt; machine=&lt;path or @id&gt; [input=&lt;word&gt;] [head=&lt;index&gt;] [budget=&lt;steps&gt;]
+ *        [engine=&lt;name&gt;] [progress=&lt;steps&gt;] [trace] [final]
+ *                                 runs a machine                            ACCEPTED &lt;job&gt; or REJECTED &lt;job&gt; &lt;reason&gt;,
+ *                                                                           then PROGRESS &lt;job&gt; &lt;steps&gt; every progress steps,
+ *                                                                           TRACE &lt;job&gt; &lt;step&gt; &lt;configuration&gt; for every step if traced,
+ *                                                                           RESULT &lt;job&gt; &lt;HALTED|BUDGET|STUCK|CANCELLED|FAILED&gt; &lt;steps&gt;
+ *                                                                           followed by the configuration if final is given
+ * CANCEL &lt;job&gt;                   stops a job                               RESULT &lt;job&gt; CANCELLED ...
+ * STATS                          reports the load of the server            STATS ...
+ * QUIT                           closes the connection once its jobs are done
+ * </pre>
+ *
+ * <p>Jobs are run in slices on a {@link FairScheduler}, which serves the connections round robin and refuses jobs
+ * beyond its limits. Every connection is served by its own thread, a virtual thread when the runtime supports them.</p>
+ */
+public class SimulationService implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 5318;
+    public static final int DEFAULT_MAX_JOBS = 1024;
+    public static final int DEFAULT_MAX_JOBS_PER_CLIENT = 64;
+
+    private final ServerSocket server;
+    private final MachineCache cache;
+    private final FairScheduler scheduler;
+    private final ExecutorService threads;
+
+    /**
+     * Creates a service listening on the loopback interface
+     * @param port the port to listen on, 0 for any free port
+     * @param numWorkers number of threads running jobs
+     * @throws IOException if the socket cannot be bound
+     */
+    public SimulationService(int port, int numWorkers) throws IOException{
+        this(port, numWorkers, DEFAULT_MAX_JOBS, DEFAULT_MAX_JOBS_PER_CLIENT, new MachineCache());
+    }
+
+    /**
+     * Creates a service listening on the loopback interface
+     * @param port the port to listen on, 0 for any free port
+     * @param numWorkers number of threads running jobs
+     * @param maxJobs maximum number of jobs admitted at once
+     * @param maxJobsPerClient maximum number of jobs of a single connection admitted at once
+     * @param cache cache of the machines used by the jobs
+     * @throws IOException if the socket cannot be bound
+     */
+    public SimulationService(int port, int numWorkers, int maxJobs, int maxJobsPerClient, MachineCache cache)
+            throws IOException{
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.cache = cache;
+        this.scheduler = new FairScheduler(numWorkers, maxJobs, maxJobsPerClient);
+        this.threads = newConnectionExecutor();
+    }
+
+    /**
+     * Returns an executor starting a virtual thread per task if the runtime supports them,
+     * and a cached pool of daemon threads otherwise.
+     */
+    private static ExecutorService newConnectionExecutor(){
+        try{
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }catch(ReflectiveOperationException e){
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getPort(){
+        return server.getLocalPort();
+    }
+
+    public MachineCache getCache(){
+        return cache;
+    }
+
+    public FairScheduler getScheduler(){
+        return scheduler;
+    }
+
+    /**
+     * Accepts connections until the service is closed
+     * @throws IOException if accepting a connection fails
+     */
+    public void serve() throws IOException{
+        while(true){
+            Socket socket;
+            try{
+                socket = server.accept();
+            }catch(SocketException e){
+                if(server.isClosed())
+                    return;
+                throw e;
+            }
+            threads.execute(new ClientSession(socket, this, threads));
+        }
+    }
+
+    /**
+     * Stops accepting connections and running jobs
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException{
+        server.close();
+        scheduler.close();
+        threads.shutdownNow();
+    }
+}